@@ -0,0 +1,67 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording call relationships of a trace (with a share of executions merged into earlier ones, as done for duplicates)
+ * and of walking the children of every execution, as passes like hasUsageAsCallee do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CallGraphBenchmark {
+    @Param({"100000"})
+    public int executions;
+    @Param({"8"})
+    public int width;
+    @Param({"0.2"})
+    public double mergeRate;
+
+    private ExecutionTrace builtTrace;
+    private boolean[] merged;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        merged = new boolean[executions + 1];
+        builtTrace = build();
+    }
+
+    @Benchmark
+    public ExecutionTrace buildAndMerge() {
+        return build();
+    }
+
+    @Benchmark
+    public long walkChildren() {
+        long sum = 0;
+        for (int father = 1; father <= executions; father++) {
+            if (merged[father]) continue;
+            for (int child : builtTrace.getChildren(father)) sum += child;
+        }
+        return sum;
+    }
+
+    /**
+     * Executions form a tree where execution i is called by (i - 1) / width, and every execution merged is a leaf whose content duplicates an earlier leaf.
+     */
+    private ExecutionTrace build() {
+        ExecutionTrace trace = new ExecutionTrace();
+        int mergeEvery = mergeRate <= 0 ? Integer.MAX_VALUE : (int) Math.round(1 / mergeRate);
+        int[] childOrder = new int[executions + 1];
+        for (int i = 2; i <= executions; i++) {
+            int father = (i - 2) / width + 1;
+            trace.addMethodRelationship(father, i, childOrder[father]++);
+            if (i > executions / width && i % mergeEvery == 0) {
+                trace.changeVertex(i, i - 1);
+                merged[i] = true;
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,118 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.application.AutoBoost;
+import kwyyeung.autoboost.application.PROGRAM_STATE;
+import kwyyeung.autoboost.benchmarks.synthetic.GraphFactory;
+import kwyyeung.autoboost.benchmarks.synthetic.Node;
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.execution.ExecutionLogger;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.MethodExecution;
+import kwyyeung.autoboost.program.execution.variable.VarDetail;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.openjdk.jmh.annotations.*;
+import soot.RefType;
+import soot.SootClass;
+import soot.VoidType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the call tree queries run by ExecutionProcessor per candidate target and var (containsFaultyDef, hasFieldAccess, hasUsageAsCallee),
+ * on a trace of recursive PUT calls over object graphs, with the trace sealed or not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CallTreeQueryBenchmark {
+    private static final int GRAPH_COUNT = 200;
+    private static final int TARGET_COUNT = 64;
+    private static final int VAR_COUNT = 16;
+
+    @Param({"false", "true"})
+    public boolean sealed;
+    @Param({"4"})
+    public int depth;
+    @Param({"0.0"})
+    public double duplicationRate;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private MethodDetails visit;
+    private MethodDetails label;
+    private MethodDetails check;
+    private final List<MethodExecution> targets = new ArrayList<>();
+    private final List<VarDetail> vars = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        Properties.getSingleton().setPUT(Node.class.getPackage().getName());
+        RefType nodeType = RefType.v(Node.class.getName());
+        SootClass nodeClass = new SootClass(Node.class.getName());
+        visit = new MethodDetails(Collections.singletonList(nodeType), 1, "visit", nodeType, ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("synthetic.Synthetic"), "<synthetic.Synthetic: " + Node.class.getName() + " visit(" + Node.class.getName() + ")>", Node.class.getName() + " visit(" + Node.class.getName() + ")", false);
+        label = new MethodDetails(Collections.emptyList(), 0, "label", RefType.v(String.class.getName()), ACCESS.PUBLIC, METHOD_TYPE.MEMBER, nodeClass, "<" + Node.class.getName() + ": java.lang.String label>", "java.lang.String label", true);
+        check = new MethodDetails(Collections.emptyList(), 0, "check", VoidType.v(), ACCESS.PUBLIC, METHOD_TYPE.MEMBER, nodeClass, "<" + Node.class.getName() + ": void check()>", "void check()", false);
+        InstrumentResult.getSingleton().addMethod(visit);
+        InstrumentResult.getSingleton().addMethod(label);
+        InstrumentResult.getSingleton().addMethod(check);
+        Properties.getSingleton().setFaultyFuncIds(Collections.singletonList(check.getId()));
+
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.TEST_EXECUTION);
+        long threadID = Thread.currentThread().getId();
+        List<Integer> visitIDs = new ArrayList<>();
+        for (Node graph : GraphFactory.build(GRAPH_COUNT, depth, 4, duplicationRate, 42L))
+            visitIDs.add(walk(graph, threadID));
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.PROCESSING);
+
+        Random random = new Random(42L);
+        Collections.shuffle(visitIDs, random);
+        for (int exeID : visitIDs) {
+            if (targets.size() == TARGET_COUNT) break;
+            if (executionTrace.getAllMethodExecs().containsKey(exeID)) targets.add(executionTrace.getMethodExecutionByID(exeID));
+        }
+        // vars accessed by some of the targets, so that queries hit as well as miss
+        targets.stream().limit(VAR_COUNT).map(t -> executionTrace.getMethodExecutionByID(executionTrace.getChildIDs(t.getID())[0]).getCallee()).forEach(vars::add);
+        if (sealed) executionTrace.seal();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ExecutionLogger.clearExecutingStack();
+        executionTrace.clear();
+    }
+
+    private int walk(Node node, long threadID) throws ClassNotFoundException {
+        int exeID = ExecutionLogger.logStart(visit.getId(), null, new Object[]{node}, threadID);
+        ExecutionLogger.logFieldAccess(label.getId(), node, node.label, threadID);
+        if (node.id % 7 == 0) {
+            int checkID = ExecutionLogger.logStart(check.getId(), node, null, threadID);
+            ExecutionLogger.logEnd(checkID, node, null, threadID);
+        }
+        for (Node child : node.children)
+            walk(child, threadID);
+        ExecutionLogger.logEnd(exeID, null, node, threadID);
+        return exeID;
+    }
+
+    @Benchmark
+    public int queries() {
+        int count = 0;
+        for (MethodExecution target : targets) {
+            if (executionTrace.containsFaultyDef(target, false)) count++;
+            for (VarDetail var : vars) {
+                if (executionTrace.hasFieldAccess(target, var)) count++;
+                if (executionTrace.hasUsageAsCallee(target, Collections.singleton(var.getID()))) count++;
+            }
+        }
+        return count;
+    }
+}
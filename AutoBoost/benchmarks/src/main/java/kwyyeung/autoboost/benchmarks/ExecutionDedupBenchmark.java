@@ -0,0 +1,63 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.execution.ExecutionLogger;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.MethodExecution;
+import org.openjdk.jmh.annotations.*;
+import soot.IntType;
+import soot.SootClass;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of looking up a duplicate of a finished MethodExecution (as done when a method ends logging) against traces of different sizes.
+ * The indexed lookup should stay flat as the trace grows while the full scan grows linearly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionDedupBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int traceSize;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private MethodDetails details;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        details = new MethodDetails(Collections.singletonList(IntType.v()), 1, "synthetic", IntType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("synthetic.Synthetic"), "<synthetic.Synthetic: int synthetic(int)>", "int synthetic(int)", false);
+        for (int i = 0; i < traceSize; i++)
+            executionTrace.updateFinishedMethodExecution(newExecution(i));
+    }
+
+    private MethodExecution newExecution(int i) {
+        MethodExecution execution = new MethodExecution(ExecutionLogger.getNewExeID(), details);
+        execution.addParam(i);
+        execution.setReturnValId(i);
+        return execution;
+    }
+
+    private MethodExecution nextExecution() {
+        next = (next + 7919) % (traceSize * 2); // half of the lookups hit, half miss
+        return newExecution(next);
+    }
+
+    @Benchmark
+    public MethodExecution indexedLookup() {
+        return executionTrace.getSameContentExecution(nextExecution());
+    }
+
+    @Benchmark
+    public MethodExecution fullScan() {
+        MethodExecution execution = nextExecution();
+        return executionTrace.getAllMethodExecs().values().stream().filter(execution::sameContent).findFirst().orElse(null);
+    }
+}
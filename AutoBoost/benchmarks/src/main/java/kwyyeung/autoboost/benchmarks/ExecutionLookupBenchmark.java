@@ -0,0 +1,74 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.application.AutoBoost;
+import kwyyeung.autoboost.application.PROGRAM_STATE;
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.execution.ExecutionLogger;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.MethodExecution;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.openjdk.jmh.annotations.*;
+import soot.IntType;
+import soot.SootClass;
+import soot.VoidType;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of looking up finished executions and executions still being logged by ID, as done by graph walks during generation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionLookupBenchmark {
+    @Param({"10000"})
+    public int finished;
+    @Param({"64"})
+    public int stackDepth;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private int[] finishedIDs;
+    private int[] inFlightIDs;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        MethodDetails details = new MethodDetails(Collections.singletonList(IntType.v()), 1, "call", VoidType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("synthetic.Synthetic"), "<synthetic.Synthetic: void call(int)>", "void call(int)", false);
+        InstrumentResult.getSingleton().addMethod(details);
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.TEST_EXECUTION);
+        long threadID = Thread.currentThread().getId();
+        finishedIDs = new int[finished];
+        for (int i = 0; i < finished; i++) {
+            finishedIDs[i] = ExecutionLogger.logStart(details.getId(), null, new Object[]{i}, threadID);
+            ExecutionLogger.logEnd(finishedIDs[i], null, null, threadID);
+        }
+        inFlightIDs = new int[stackDepth];
+        for (int i = 0; i < stackDepth; i++)
+            inFlightIDs[i] = ExecutionLogger.logStart(details.getId(), null, new Object[]{finished + i}, threadID);
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.PROCESSING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ExecutionLogger.clearExecutingStack();
+        executionTrace.clear();
+    }
+
+    @Benchmark
+    public MethodExecution lookupFinished() {
+        next = (next + 1) % finished;
+        return executionTrace.getMethodExecutionByID(finishedIDs[next]);
+    }
+
+    @Benchmark
+    public MethodExecution lookupInFlight() {
+        next = (next + 1) % stackDepth;
+        return executionTrace.getMethodExecutionByID(inFlightIDs[next]);
+    }
+}
@@ -0,0 +1,94 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.benchmarks.synthetic.GraphFactory;
+import kwyyeung.autoboost.benchmarks.synthetic.Node;
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.variable.VarDetail;
+import kwyyeung.autoboost.program.instrumentation.AccessorPlan;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading every field of a deep object graph by looking up and reading fields reflectively on each object (as capture did before accessor plans)
+ * and through the cached AccessorPlan, and of capturing a deep graph as a whole.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FieldAccessBenchmark {
+    private static final int GRAPH_COUNT = 64;
+
+    @Param({"5"})
+    public int depth;
+    @Param({"3"})
+    public int width;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private Node[] graphs;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties.getSingleton().setPUT(Node.class.getPackage().getName());
+        graphs = GraphFactory.build(GRAPH_COUNT, depth, width, 0.0, 42L);
+    }
+
+    @Benchmark
+    public int reflectiveWalk() throws IllegalAccessException {
+        next = (next + 1) % GRAPH_COUNT;
+        return reflectiveWalk(graphs[next]);
+    }
+
+    @Benchmark
+    public int planWalk() {
+        next = (next + 1) % GRAPH_COUNT;
+        return planWalk(graphs[next]);
+    }
+
+    @Benchmark
+    public VarDetail captureCopy() {
+        next = (next + 1) % GRAPH_COUNT;
+        return executionTrace.getVarDetail(null, Node.class, GraphFactory.copy(graphs[next]), LOG_ITEM.CALL_PARAM, true);
+    }
+
+    private static int reflectiveWalk(Object obj) throws IllegalAccessException {
+        int count = 1;
+        for (Field f : obj.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers())) continue;
+            f.setAccessible(true);
+            count += visit(f.get(obj), true);
+        }
+        return count;
+    }
+
+    private static int planWalk(Object obj) {
+        AccessorPlan plan = InstrumentResult.getSingleton().getAccessorPlan(obj.getClass());
+        int count = 1;
+        for (int i = 0; i < plan.getFields().size(); i++)
+            count += visit(plan.get(i, obj), false);
+        return count;
+    }
+
+    private static int visit(Object value, boolean reflective) {
+        if (!(value instanceof Node[])) return 0;
+        int count = 0;
+        for (Node child : (Node[]) value) {
+            if (child == null) continue;
+            try {
+                count += reflective ? reflectiveWalk(child) : planWalk(child);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,56 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.application.AutoBoost;
+import kwyyeung.autoboost.application.PROGRAM_STATE;
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.execution.ExecutionLogger;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.openjdk.jmh.annotations.*;
+import soot.SootClass;
+import soot.VoidType;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of an instrumented no-op static method, i.e. the logStart/logEnd pair inserted by Instrumenter around an empty body,
+ * with logging off (PROCESSING / TEST_LOG) and on (TEST_EXECUTION).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingGuardBenchmark {
+    @Param({"PROCESSING", "TEST_LOG", "TEST_EXECUTION"})
+    public PROGRAM_STATE programState;
+
+    private int methodId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MethodDetails details = new MethodDetails(Collections.emptyList(), 0, "noOp", VoidType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("synthetic.Synthetic"), "<synthetic.Synthetic: void noOp()>", "void noOp()", false);
+        InstrumentResult.getSingleton().addMethod(details);
+        methodId = details.getId();
+        AutoBoost.setCurrentProgramState(programState);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.PROCESSING);
+    }
+
+    @Benchmark
+    public void uninstrumentedNoOp() {
+    }
+
+    @Benchmark
+    public void instrumentedNoOp() throws ClassNotFoundException {
+        long threadID = Thread.currentThread().getId();
+        int exeID = ExecutionLogger.logStart(methodId, null, null, threadID);
+        ExecutionLogger.logEnd(exeID, null, null, threadID);
+    }
+}
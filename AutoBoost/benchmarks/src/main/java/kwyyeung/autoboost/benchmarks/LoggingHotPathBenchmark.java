@@ -0,0 +1,76 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.application.AutoBoost;
+import kwyyeung.autoboost.application.PROGRAM_STATE;
+import kwyyeung.autoboost.benchmarks.synthetic.GraphFactory;
+import kwyyeung.autoboost.benchmarks.synthetic.Node;
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.execution.ExecutionLogger;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.openjdk.jmh.annotations.*;
+import soot.RefType;
+import soot.SootClass;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of logging a static PUT method taking and returning an object graph, i.e. the logStart/logEnd pair run on every instrumented call during test replay.
+ * Run with the gc profiler (see BenchmarkMain) for the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingHotPathBenchmark {
+    private static final int GRAPH_COUNT = 256;
+
+    @Param({"1", "3"})
+    public int depth;
+    @Param({"2", "4"})
+    public int width;
+    @Param({"0.0", "0.5"})
+    public double duplicationRate;
+
+    private Node[] graphs;
+    private int methodId;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties.getSingleton().setPUT(Node.class.getPackage().getName());
+        RefType nodeType = RefType.v(Node.class.getName());
+        MethodDetails details = new MethodDetails(Collections.singletonList(nodeType), 1, "visit", nodeType, ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("synthetic.Synthetic"), "<synthetic.Synthetic: " + Node.class.getName() + " visit(" + Node.class.getName() + ")>", Node.class.getName() + " visit(" + Node.class.getName() + ")", false);
+        InstrumentResult.getSingleton().addMethod(details);
+        methodId = details.getId();
+        graphs = GraphFactory.build(GRAPH_COUNT, depth, width, duplicationRate, 42L);
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.TEST_EXECUTION);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearTrace() {
+        ExecutionLogger.clearExecutingStack();
+        ExecutionTrace.getSingleton().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AutoBoost.setCurrentProgramState(PROGRAM_STATE.PROCESSING);
+    }
+
+    @Benchmark
+    public int logStartEnd() throws ClassNotFoundException {
+        Node graph = graphs[next];
+        next = (next + 1) % GRAPH_COUNT;
+        long threadID = Thread.currentThread().getId();
+        int exeID = ExecutionLogger.logStart(methodId, null, new Object[]{graph}, threadID);
+        ExecutionLogger.logEnd(exeID, null, graph.children.length > 0 ? graph.children[0] : graph, threadID);
+        return exeID;
+    }
+}
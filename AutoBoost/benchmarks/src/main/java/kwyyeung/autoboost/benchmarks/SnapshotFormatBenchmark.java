@@ -0,0 +1,61 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.benchmarks.synthetic.GraphFactory;
+import kwyyeung.autoboost.benchmarks.synthetic.Node;
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.entity.SNAPSHOT_FORMAT;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.variable.ObjVarDetails;
+import kwyyeung.autoboost.program.execution.variable.VarDetail;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of capturing an object graph and decoding the fields of its snapshot, in binary and XML formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotFormatBenchmark {
+    private static final int GRAPH_COUNT = 256;
+
+    @Param({"BINARY", "XML"})
+    public SNAPSHOT_FORMAT snapshotFormat;
+    @Param({"4"})
+    public int width;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private Node[] graphs;
+    private ObjVarDetails[] captured;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties.getSingleton().setPUT(Node.class.getPackage().getName());
+        Properties.getSingleton().setSnapshotFormat(snapshotFormat);
+        graphs = GraphFactory.build(GRAPH_COUNT, 3, width, 0.0, 42L);
+        captured = new ObjVarDetails[GRAPH_COUNT];
+        for (int i = 0; i < GRAPH_COUNT; i++)
+            captured[i] = (ObjVarDetails) executionTrace.getVarDetail(null, Node.class, graphs[i], LOG_ITEM.CALL_PARAM, true);
+    }
+
+    @Benchmark
+    public VarDetail captureCopy() {
+        next = (next + 1) % GRAPH_COUNT;
+        return executionTrace.getVarDetail(null, Node.class, GraphFactory.copy(graphs[next]), LOG_ITEM.CALL_PARAM, true);
+    }
+
+    @Benchmark
+    public Map<Map.Entry<String, String>, VarDetail> decodeFields() {
+        next = (next + 1) % GRAPH_COUNT;
+        SnapshotParser.clearCache();
+        return SnapshotParser.toContentMap(captured[next], captured[next].getValue());
+    }
+}
@@ -0,0 +1,49 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.benchmarks.synthetic.GraphFactory;
+import kwyyeung.autoboost.benchmarks.synthetic.Node;
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.variable.VarDetail;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of capturing an object graph as a VarDetail, including the snapshot of its content and the lookup of an existing VarDetail with the same content.
+ * Run with the gc profiler (see BenchmarkMain) for the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VarDetailCaptureBenchmark {
+    private static final int GRAPH_COUNT = 256;
+
+    @Param({"1", "3"})
+    public int depth;
+    @Param({"2", "4"})
+    public int width;
+    @Param({"0.0", "0.5"})
+    public double duplicationRate;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private Node[] graphs;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties.getSingleton().setPUT(Node.class.getPackage().getName());
+        graphs = GraphFactory.build(GRAPH_COUNT, depth, width, duplicationRate, 42L);
+    }
+
+    @Benchmark
+    public VarDetail getVarDetail() {
+        Node graph = graphs[next];
+        next = (next + 1) % GRAPH_COUNT;
+        return executionTrace.getVarDetail(null, Node.class, graph, LOG_ITEM.CALL_PARAM, true);
+    }
+}
@@ -0,0 +1,44 @@
+package kwyyeung.autoboost.benchmarks;
+
+import kwyyeung.autoboost.benchmarks.synthetic.GraphFactory;
+import kwyyeung.autoboost.benchmarks.synthetic.Node;
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.variable.VarDetail;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of capturing a new object with the same content as one of the VarDetails already stored for its class, i.e. the lookup by value done when identity hash codes do not match.
+ * The lookup should stay flat as the number of VarDetails of the class grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VarDetailDedupBenchmark {
+    @Param({"1000", "10000"})
+    public int varsOfClass;
+
+    private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
+    private Node[] graphs;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties.getSingleton().setPUT(Node.class.getPackage().getName());
+        graphs = GraphFactory.build(varsOfClass, 2, 2, 0.0, 42L);
+        for (Node graph : graphs)
+            executionTrace.getVarDetail(null, Node.class, graph, LOG_ITEM.CALL_PARAM, true);
+    }
+
+    @Benchmark
+    public VarDetail captureCopy() {
+        next = (next + 7919) % varsOfClass;
+        return executionTrace.getVarDetail(null, Node.class, GraphFactory.copy(graphs[next]), LOG_ITEM.CALL_PARAM, true);
+    }
+}
@@ -0,0 +1,55 @@
+package kwyyeung.autoboost.benchmarks.synthetic;
+
+import java.util.Random;
+
+/**
+ * Builds synthetic object graphs for benchmarks.
+ * Graphs are trees of Node with the depth and width provided. A share of graphs (the duplication rate) are copies of earlier ones,
+ * i.e. distinct objects with the same content, as commonly seen when tests create equal objects repeatedly.
+ */
+public class GraphFactory {
+    private static final String[] LABELS = {"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta"};
+
+    private GraphFactory() {
+    }
+
+    /**
+     * @param count           number of graphs to build
+     * @param depth           levels of nodes in each graph, 1 for a single node
+     * @param width           children of each non-leaf node
+     * @param duplicationRate probability that a graph copies the content of an earlier one
+     * @param seed            seed of random values, same seed gives same graphs
+     * @return roots of graphs built
+     */
+    public static Node[] build(int count, int depth, int width, double duplicationRate, long seed) {
+        if (depth < 1 || width < 0 || count < 1)
+            throw new IllegalArgumentException("Illegal graph shape: count " + count + ", depth " + depth + ", width " + width);
+        Random random = new Random(seed);
+        Node[] roots = new Node[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && random.nextDouble() < duplicationRate)
+                roots[i] = copy(roots[random.nextInt(i)]);
+            else
+                roots[i] = create(random, depth, width);
+        }
+        return roots;
+    }
+
+    private static Node create(Random random, int depth, int width) {
+        Node node = new Node(random.nextInt(), LABELS[random.nextInt(LABELS.length)], depth > 1 ? width : 0);
+        for (int i = 0; i < node.children.length; i++)
+            node.children[i] = create(random, depth - 1, width);
+        return node;
+    }
+
+    /**
+     * @param original root of graph to copy
+     * @return root of a new graph with the same content
+     */
+    public static Node copy(Node original) {
+        Node node = new Node(original.id, original.label, original.children.length);
+        for (int i = 0; i < node.children.length; i++)
+            node.children[i] = copy(original.children[i]);
+        return node;
+    }
+}
@@ -0,0 +1,16 @@
+package kwyyeung.autoboost.benchmarks.synthetic;
+
+/**
+ * Node of a synthetic object graph, with fields of the kinds commonly captured (primitive, String, array of objects)
+ */
+public class Node {
+    public int id;
+    public String label;
+    public Node[] children;
+
+    public Node(int id, String label, int width) {
+        this.id = id;
+        this.label = label;
+        this.children = new Node[width];
+    }
+}
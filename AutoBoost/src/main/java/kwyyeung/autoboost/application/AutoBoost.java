@@ -1,13 +1,17 @@
 package kwyyeung.autoboost.application;
 
+import kwyyeung.autoboost.entity.INSTRUMENT_SCOPE;
 import kwyyeung.autoboost.helper.CommandLineParameter;
 import kwyyeung.autoboost.helper.Help;
+import kwyyeung.autoboost.helper.Helper;
 import kwyyeung.autoboost.helper.Properties;
 import kwyyeung.autoboost.program.execution.ExecutionLogger;
 import kwyyeung.autoboost.program.execution.ExecutionTrace;
 import kwyyeung.autoboost.program.execution.MethodExecution;
+import kwyyeung.autoboost.program.execution.TraceStore;
 import kwyyeung.autoboost.program.generation.TestGenerator;
 import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import kwyyeung.autoboost.program.instrumentation.InstrumentationCache;
 import kwyyeung.autoboost.program.instrumentation.Instrumenter;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -24,11 +28,13 @@ import org.junit.runner.notification.RunListener;
 import soot.Pack;
 import soot.PackManager;
 import soot.Scene;
+import soot.SootClass;
 import soot.Transform;
 import soot.options.Options;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -36,24 +42,36 @@ public class AutoBoost {
     private static final Logger logger = LogManager.getLogger(AutoBoost.class);
     private static final kwyyeung.autoboost.helper.Properties properties = kwyyeung.autoboost.helper.Properties.getSingleton();
     private static String executingTest = null;
-    private static PROGRAM_STATE currentProgramState = PROGRAM_STATE.PROCESSING;
+    private static String[] commandArgs = new String[0]; // passed on to replay shards
+    private static volatile PROGRAM_STATE currentProgramState = PROGRAM_STATE.PROCESSING;
+    private static final ThreadLocal<PROGRAM_STATE> threadProgramState = new ThreadLocal<>(); // overrides currentProgramState on its thread
+    private static int threadStateOverrides = 0; // threads with program state overridden, guarded by AutoBoost.class
+    private static final int LOGGING_OFF = 0, LOGGING_ON = 1, LOGGING_PER_THREAD = 2;
+    private static volatile int loggingMode = LOGGING_OFF; // derived from currentProgramState and overrides, checked first by every logger entry
 
     public static void main(String... args) throws ParseException, IOException {
         AutoBoost autoBoost = new AutoBoost();
         autoBoost.processCommand(args);
+        if (properties.getTraceInput() != null) {
+            TraceStore.load(new File(properties.getTraceInput()));
+            setCurrentProgramState(PROGRAM_STATE.TEST_GENERATION);
+            autoBoost.generateTestCases();
+            return;
+        }
         autoBoost.setUpSoot();
         logger.info("Faulty methods: " + properties.getFaultyFuncIds().stream().map(id -> InstrumentResult.getSingleton().getMethodDetailByID(id).toString()).collect(Collectors.joining(",")));
         autoBoost.executeTests();
 //        autoBoost.clearRuntimeOnlyInfo();
 
 //        ExecutionTrace.getSingleton().checkTestabilityOfExecutions();
-        currentProgramState = PROGRAM_STATE.TEST_GENERATION;
+        setCurrentProgramState(PROGRAM_STATE.TEST_GENERATION);
         autoBoost.generateTestCases();
 
     }
 
     public void processCommand(String... args) throws ParseException {
         CommandLineParser parser = new DefaultParser();
+        commandArgs = args;
         try {
             CommandLine line = parser.parse(CommandLineParameter.getCommandLineOptions(), args);
             if (line.hasOption(Help.getOption()))
@@ -65,7 +83,10 @@ public class AutoBoost {
         }
     }
 
-    public void setUpSoot() {
+    public void setUpSoot() throws IOException {
+        InstrumentationCache cache = properties.getInstrumentCache() == null ? null : new InstrumentationCache(new File(properties.getInstrumentCache()), new File(properties.getInsBinPath()));
+        if (cache != null && cache.restore())
+            return;
         Options.v().set_soot_classpath(Scene.v().defaultClassPath() + File.pathSeparator + properties.getInsBinPath() + File.pathSeparator + System.getProperty("java.class.path"));
         Options.v().set_process_dir(Collections.singletonList(properties.getInsBinPath()));
         Options.v().set_output_dir(properties.getInsBinPath());
@@ -77,12 +98,26 @@ public class AutoBoost {
         Instrumenter instrumenter = new Instrumenter();
         jtp.add(new Transform("jtp.instrumenter", instrumenter));
         logger.info("Instrumentation begins");
-        soot.Main.main(Scene.v().getBasicClasses().toArray(new String[0]));
+        String[] classes = Scene.v().getBasicClasses().toArray(new String[0]);
+        if (properties.getInstrumentScope() == INSTRUMENT_SCOPE.REACHABLE) // load bodies of test classes for reachability analysis, without processing them
+            Arrays.stream(properties.getTestCases()).map(t -> t.split(Properties.getClassMethSep())[0]).distinct().forEach(c -> Scene.v().addBasicClass(c, SootClass.BODIES));
+        soot.Main.main(classes);
+        if (cache != null)
+            cache.store();
 //        logger.debug(InstrumentResult.getSingleton().getClassAnalysis().toString());
     }
 
-    public void executeTests() {
+    public void executeTests() throws IOException {
         logger.info("Execute tests");
+        int shards = Math.min(properties.getReplayShards(), properties.getTestCases().length);
+        if (shards > 1) replayInShards(shards);
+        else runTests(properties.getTestCases());
+    }
+
+    /**
+     * Run the test cases provided within AutoBoost, logging them into the trace
+     */
+    public void runTests(String[] testCases) {
         JUnitCore junit = new JUnitCore();
         junit.addListener(new RunListener() {
             @Override
@@ -99,7 +134,7 @@ public class AutoBoost {
                 executingTest = description.getDisplayName();
                 logger.info("Test " + description.getDisplayName() + " started ");
                 ExecutionLogger.clearExecutingStack();
-                currentProgramState = PROGRAM_STATE.TEST_EXECUTION;
+                setCurrentProgramState(PROGRAM_STATE.TEST_EXECUTION);
             }
 
             @Override
@@ -109,13 +144,14 @@ public class AutoBoost {
 
             @Override
             public void testFinished(Description description) throws Exception {
+                ExecutionLogger.flush(); // values queued in async capture mode belong to the test finishing
                 executingTest = null;
                 ExecutionLogger.clearExecutingStack();
-                currentProgramState = PROGRAM_STATE.TEST_LOG;
+                setCurrentProgramState(PROGRAM_STATE.TEST_LOG);
 
             }
         });
-        Arrays.stream(properties.getTestCases()).map(t -> {
+        Arrays.stream(testCases).map(t -> {
             String[] test = t.split(Properties.getClassMethSep());
             try {
                 if (test.length != 2)
@@ -128,10 +164,68 @@ public class AutoBoost {
         }).filter(Objects::nonNull).forEach(junit::run);
     }
 
+    /**
+     * Run the test cases in forked JVMs, each running a share of them and storing its trace, then merge the traces stored into the trace here.
+     * Test cases of a JVM failing to store its trace are run within AutoBoost instead.
+     */
+    private void replayInShards(int shards) throws IOException {
+        String[] testCases = properties.getTestCases();
+        File replayDir = Files.createTempDirectory("autoboost-replay").toFile();
+        try {
+            File instrumentResultDir = new File(replayDir, "instrumentation");
+            TraceStore.writeInstrumentResult(instrumentResultDir);
+            List<List<String>> shares = new ArrayList<>();
+            for (int i = 0; i < shards; i++)
+                shares.add(new ArrayList<>());
+            for (int i = 0; i < testCases.length; i++)
+                shares.get(i % shards).add(testCases[i]);
+            String classPath = properties.getInsBinPath() + File.pathSeparator + System.getProperty("java.class.path");
+            File[] shardDirs = new File[shards];
+            Process[] processes = new Process[shards];
+            for (int i = 0; i < shards; i++) {
+                shardDirs[i] = new File(replayDir, "shard" + i);
+                List<String> command = new ArrayList<>(Arrays.asList(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java", "-cp", classPath, ReplayShard.class.getName(),
+                        instrumentResultDir.getAbsolutePath(), shardDirs[i].getAbsolutePath(), String.join(Properties.getClassSep(), shares.get(i))));
+                command.addAll(Arrays.asList(commandArgs));
+                processes[i] = new ProcessBuilder(command).inheritIO().start();
+            }
+            logger.info("Tests replayed in " + shards + " JVMs");
+            List<String> notReplayed = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                int exitValue;
+                try {
+                    exitValue = processes[i].waitFor();
+                } catch (InterruptedException e) {
+                    Arrays.stream(processes).forEach(Process::destroyForcibly);
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Replay of tests interrupted");
+                }
+                if (exitValue == 0 && shardDirs[i].isDirectory())
+                    TraceStore.merge(shardDirs[i]);
+                else {
+                    logger.error("Replay shard " + i + " exited with " + exitValue + ", its tests are run within AutoBoost");
+                    notReplayed.addAll(shares.get(i));
+                }
+            }
+            if (!notReplayed.isEmpty())
+                runTests(notReplayed.toArray(new String[0]));
+        } finally {
+            Helper.deleteRecursively(replayDir.toPath());
+        }
+    }
+
     public void generateTestCases() throws IOException {
         TestGenerator testGenerator = TestGenerator.getSingleton();
         logger.info("Test generation starting");
         List<MethodExecution> snapshot = ExecutionTrace.getSingleton().getAllMethodExecs().values().stream().filter(e -> e.getTest()!=null).collect(Collectors.toList());
+        ExecutionTrace.getSingleton().seal();
+        if (properties.getTraceOutput() != null) {
+            try {
+                TraceStore.write(new File(properties.getTraceOutput()));
+            } catch (IOException e) {
+                logger.error("Trace cannot be stored: " + e.getMessage());
+            }
+        }
         try {
             testGenerator.generateTestCases(snapshot);
 //            testGenerator.generateResultCheckingTests(snapshot);
@@ -155,11 +249,60 @@ public class AutoBoost {
         ExecutionLogger.clearExecutingStack();
     }
 
+    /**
+     * @return program state of the current thread, i.e. its override if set, or else the program state
+     */
     public static PROGRAM_STATE getCurrentProgramState() {
+        if (loggingMode == LOGGING_PER_THREAD) {
+            PROGRAM_STATE state = threadProgramState.get();
+            if (state != null) return state;
+        }
         return currentProgramState;
     }
 
-    public static void setCurrentProgramState(PROGRAM_STATE currentProgramState) {
+    public static synchronized void setCurrentProgramState(PROGRAM_STATE currentProgramState) {
         AutoBoost.currentProgramState = currentProgramState;
+        updateLoggingMode();
+    }
+
+    /**
+     * Override the program state on the current thread only, e.g. for a worker generating tests to search for constructors while others do not
+     *
+     * @param state program state of the thread, null to follow the program state again
+     */
+    public static void setThreadProgramState(PROGRAM_STATE state) {
+        PROGRAM_STATE old = threadProgramState.get();
+        if (state == null) threadProgramState.remove();
+        else threadProgramState.set(state);
+        if ((old == null) == (state == null)) return;
+        synchronized (AutoBoost.class) {
+            threadStateOverrides += state == null ? -1 : 1;
+            updateLoggingMode();
+        }
+    }
+
+    /**
+     * @return program state set for the current thread only, null if there is none
+     */
+    public static PROGRAM_STATE getThreadProgramState() {
+        return threadProgramState.get();
+    }
+
+    private static void updateLoggingMode() {
+        if (threadStateOverrides > 0) loggingMode = LOGGING_PER_THREAD;
+        else loggingMode = isLoggingState(currentProgramState) ? LOGGING_ON : LOGGING_OFF;
+    }
+
+    private static boolean isLoggingState(PROGRAM_STATE state) {
+        return !state.equals(PROGRAM_STATE.PROCESSING) && !state.equals(PROGRAM_STATE.TEST_LOG);
+    }
+
+    /**
+     * @return if method executions should be logged under the current program state
+     */
+    public static boolean isLoggingEnabled() {
+        int mode = loggingMode;
+        if (mode != LOGGING_PER_THREAD) return mode == LOGGING_ON;
+        return isLoggingState(getCurrentProgramState());
     }
 }
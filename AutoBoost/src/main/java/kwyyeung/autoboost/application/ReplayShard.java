@@ -0,0 +1,28 @@
+package kwyyeung.autoboost.application;
+
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.execution.TraceStore;
+import org.apache.commons.cli.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Entry of a JVM forked by AutoBoost to run a share of the test cases against the instrumented classes and store the trace logged, see AutoBoost#executeTests.
+ * Arguments: directory of instrumentation results stored by AutoBoost, directory to store the trace, test cases to run, then the command line arguments of AutoBoost.
+ */
+public class ReplayShard {
+    public static void main(String... args) throws ParseException, IOException {
+        if (args.length < 3)
+            throw new IllegalArgumentException("Illegal arguments for replay shard");
+        AutoBoost autoBoost = new AutoBoost();
+        autoBoost.processCommand(Arrays.copyOfRange(args, 3, args.length));
+        Properties properties = Properties.getSingleton();
+        properties.setTestCases(args[2].split(Properties.getClassSep()));
+        TraceStore.loadInstrumentResult(new File(args[0]));
+        autoBoost.runTests(properties.getTestCases());
+        TraceStore.write(new File(args[1]));
+        System.exit(0); // threads left by tests should not keep the JVM running
+    }
+}
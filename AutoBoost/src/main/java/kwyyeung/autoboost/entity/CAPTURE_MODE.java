@@ -0,0 +1,6 @@
+package kwyyeung.autoboost.entity;
+
+public enum CAPTURE_MODE {
+    SYNC, // values are captured on the instrumented thread when methods are called
+    ASYNC // events are queued by the instrumented thread and captured by a background consumer
+}
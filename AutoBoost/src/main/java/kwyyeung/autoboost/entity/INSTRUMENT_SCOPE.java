@@ -0,0 +1,6 @@
+package kwyyeung.autoboost.entity;
+
+public enum INSTRUMENT_SCOPE {
+    ALL, // all methods of the PUT
+    REACHABLE // methods of the PUT reachable from the test cases, see ReachabilityAnalysis
+}
@@ -0,0 +1,8 @@
+package kwyyeung.autoboost.entity;
+
+public enum INVOCATION_OUTCOME {
+    RETURNED, // the call returned a value (null for void methods)
+    THREW, // the call threw
+    REJECTED, // the callee or params did not match the method, hence it was not called
+    TIMED_OUT // the call ran over its budget and was abandoned
+}
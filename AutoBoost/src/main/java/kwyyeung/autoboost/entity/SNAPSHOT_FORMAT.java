@@ -0,0 +1,6 @@
+package kwyyeung.autoboost.entity;
+
+public enum SNAPSHOT_FORMAT {
+    BINARY, // compact byte encoding, see ObjectSnapshot
+    XML // readable XML strings, for debugging
+}
@@ -1,5 +1,8 @@
 package kwyyeung.autoboost.helper;
 
+import kwyyeung.autoboost.entity.CAPTURE_MODE;
+import kwyyeung.autoboost.entity.INSTRUMENT_SCOPE;
+import kwyyeung.autoboost.entity.SNAPSHOT_FORMAT;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.MissingArgumentException;
 import org.apache.commons.cli.Options;
@@ -25,6 +28,22 @@ public class CommandLineParameter {
         options.addOption("junitVer", true, "Optional. Expected JUnit Version: 3/4. Default: 4");
         options.addOption("casePerClass", true, "Optional. Number of test cases per class");
         options.addOption("PUT", true, "Package under test generation ");
+        options.addOption("captureMode", true, "Optional. sync/async. In async mode, values are captured by a background thread instead of the thread running the tests, objects are snapshotted when the queued event is processed. Default: sync");
+        options.addOption("captureBufferSize", true, "Optional. Number of events buffered in async capture mode before test threads are blocked. Default: 65536");
+        options.addOption("snapshotFormat", true, "Optional. binary/xml. Format of snapshots of objects, arrays and maps. xml is readable but takes more memory and time, for debugging. Default: binary");
+        options.addOption("replayShards", true, "Optional. Number of forked JVMs running testCases in parallel, each logging a share of the tests into a partial trace merged afterwards. Default: 1, tests are run within AutoBoost");
+        options.addOption("generationThreads", true, "Optional. Number of workers generating test cases in parallel. Generated tests are output in the same order regardless. Default: 1");
+        options.addOption("putWorkers", true, "Optional. Number of forked JVMs re-executing PUT methods when checking exceptions of generated tests, so that runaway calls can be killed. 0 to run them within AutoBoost. Default: 0");
+        options.addOption("putWorkerCalls", true, "Optional. Number of calls a PUT worker JVM handles before it is replaced. Default: 1000");
+        options.addOption("putTimeoutFloor", true, "Optional. Min time limit in ms of running a PUT method again for test generation. Limits are putTimeoutFactor times the 99th percentile of its latencies observed. Default: 100");
+        options.addOption("putTimeoutCeiling", true, "Optional. Max time limit in ms of running a PUT method again for test generation, also the limit of methods without latencies observed. Default: 5000");
+        options.addOption("putTimeoutFactor", true, "Optional. Multiple of the 99th percentile of latencies observed of a PUT method taken as its time limit. Default: 10");
+        options.addOption("putTimeoutsToBreak", true, "Optional. Number of times in a row a PUT method times out before it is not run again for test generation. 0 to always run it. Default: 3");
+        options.addOption("traceOutput", true, "Optional. Directory to store the trace logged from tests, for generating tests again with generateFromTrace");
+        options.addOption("generateFromTrace", true, "Optional. Directory of a trace stored with traceOutput. Tests are generated from it without instrumenting and running tests again, testCases and faultyFunc are not needed. instrumentedBinPath should hold the instrumented classes of the run storing the trace");
+        options.addOption("instrumentCache", true, "Optional. Directory caching instrumented classes. Instrumentation is skipped if the classes in instrumentedBinPath were instrumented with the same PUT before");
+        options.addOption("instrumentThreads", true, "Optional. Number of threads analysing methods for logging before they are instrumented (Soot instruments classes on all processors). Instrumented classes are the same regardless. Default: number of processors");
+        options.addOption("instrumentScope", true, "Optional. all/reachable. With reachable, only methods reachable from testCases by class hierarchy analysis are instrumented, with constructors of PUT classes they use and overriding methods of classes instantiated. Test classes should be on the class path. Default: all");
         options.addOption(Help.getOption());
         return options;
     }
@@ -44,6 +63,25 @@ public class CommandLineParameter {
         if (dir.exists() && dir.isDirectory() && dir.canRead())
             properties.setInsBinPath(dir.getAbsolutePath());
         else throw new IllegalArgumentException("Illegal argument for instrumentedBinPath");
+        if (line.hasOption("instrumentCache")) {
+            File cacheDir = new File(line.getOptionValue("instrumentCache"));
+            if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+                throw new IllegalArgumentException("Illegal argument for instrumentCache");
+            properties.setInstrumentCache(cacheDir.getAbsolutePath());
+        }
+        if (line.hasOption("instrumentThreads")) {
+            int instrumentThreads = Integer.parseInt(line.getOptionValue("instrumentThreads"));
+            if (instrumentThreads <= 0)
+                throw new IllegalArgumentException("Illegal argument for instrumentThreads");
+            properties.setInstrumentThreads(instrumentThreads);
+        }
+        if (line.hasOption("instrumentScope")) {
+            try {
+                properties.setInstrumentScope(INSTRUMENT_SCOPE.valueOf(line.getOptionValue("instrumentScope").toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Illegal argument for instrumentScope");
+            }
+        }
 
         // process CUTs option
 //        if(!line.hasOption("CUTs"))
@@ -54,12 +92,47 @@ public class CommandLineParameter {
     }
 
     private static void processTestingCommand(CommandLine line) throws MissingArgumentException {
+        if (line.hasOption("generateFromTrace")) {
+            File dir = new File(line.getOptionValue("generateFromTrace"));
+            if (!dir.isDirectory() || !dir.canRead())
+                throw new IllegalArgumentException("Illegal argument for generateFromTrace");
+            properties.setTraceInput(dir.getAbsolutePath());
+            return;
+        }
+        if (line.hasOption("traceOutput"))
+            properties.setTraceOutput(new File(line.getOptionValue("traceOutput")).getAbsolutePath());
         if (!line.hasOption("testCases"))
             throw new MissingArgumentException("Missing argument for testCases");
         properties.setTestCases(line.getOptionValue("testCases").split(Properties.getClassSep()));
         if (!line.hasOption("faultyFunc"))
             throw new MissingArgumentException("Missing argument for faultyFunc");
         properties.setFaultyFunc(Arrays.asList(line.getOptionValue("faultyFunc").split(Properties.getClassMethSep())));
+        if (line.hasOption("captureMode")) {
+            try {
+                properties.setCaptureMode(CAPTURE_MODE.valueOf(line.getOptionValue("captureMode").toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Illegal argument for captureMode");
+            }
+        }
+        if (line.hasOption("captureBufferSize")) {
+            int captureBufferSize = Integer.parseInt(line.getOptionValue("captureBufferSize"));
+            if (captureBufferSize <= 0)
+                throw new IllegalArgumentException("Illegal argument for captureBufferSize");
+            properties.setCaptureBufferSize(captureBufferSize);
+        }
+        if (line.hasOption("snapshotFormat")) {
+            try {
+                properties.setSnapshotFormat(SNAPSHOT_FORMAT.valueOf(line.getOptionValue("snapshotFormat").toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Illegal argument for snapshotFormat");
+            }
+        }
+        if (line.hasOption("replayShards")) {
+            int replayShards = Integer.parseInt(line.getOptionValue("replayShards"));
+            if (replayShards <= 0)
+                throw new IllegalArgumentException("Illegal argument for replayShards");
+            properties.setReplayShards(replayShards);
+        }
     }
 
     private static void processGenerationCommand(CommandLine line) throws MissingArgumentException {
@@ -77,6 +150,57 @@ public class CommandLineParameter {
         if (line.hasOption("casePerClass"))
             properties.setCasePerClass(Integer.parseInt(line.getOptionValue("casePerClass")));
 
+        if (line.hasOption("generationThreads")) {
+            int generationThreads = Integer.parseInt(line.getOptionValue("generationThreads"));
+            if (generationThreads <= 0)
+                throw new IllegalArgumentException("Illegal argument for generationThreads");
+            properties.setGenerationThreads(generationThreads);
+        }
+
+        if (line.hasOption("putWorkers")) {
+            int putWorkers = Integer.parseInt(line.getOptionValue("putWorkers"));
+            if (putWorkers < 0)
+                throw new IllegalArgumentException("Illegal argument for putWorkers");
+            properties.setPutWorkers(putWorkers);
+        }
+
+        if (line.hasOption("putWorkerCalls")) {
+            int putWorkerCalls = Integer.parseInt(line.getOptionValue("putWorkerCalls"));
+            if (putWorkerCalls <= 0)
+                throw new IllegalArgumentException("Illegal argument for putWorkerCalls");
+            properties.setPutWorkerCalls(putWorkerCalls);
+        }
+
+        if (line.hasOption("putTimeoutFloor")) {
+            int putTimeoutFloor = Integer.parseInt(line.getOptionValue("putTimeoutFloor"));
+            if (putTimeoutFloor <= 0)
+                throw new IllegalArgumentException("Illegal argument for putTimeoutFloor");
+            properties.setPutTimeoutFloor(putTimeoutFloor);
+        }
+
+        if (line.hasOption("putTimeoutCeiling")) {
+            int putTimeoutCeiling = Integer.parseInt(line.getOptionValue("putTimeoutCeiling"));
+            if (putTimeoutCeiling <= 0)
+                throw new IllegalArgumentException("Illegal argument for putTimeoutCeiling");
+            properties.setPutTimeoutCeiling(putTimeoutCeiling);
+        }
+        if (properties.getPutTimeoutFloor() > properties.getPutTimeoutCeiling())
+            throw new IllegalArgumentException("Illegal argument for putTimeoutFloor, greater than putTimeoutCeiling");
+
+        if (line.hasOption("putTimeoutFactor")) {
+            int putTimeoutFactor = Integer.parseInt(line.getOptionValue("putTimeoutFactor"));
+            if (putTimeoutFactor <= 0)
+                throw new IllegalArgumentException("Illegal argument for putTimeoutFactor");
+            properties.setPutTimeoutFactor(putTimeoutFactor);
+        }
+
+        if (line.hasOption("putTimeoutsToBreak")) {
+            int putTimeoutsToBreak = Integer.parseInt(line.getOptionValue("putTimeoutsToBreak"));
+            if (putTimeoutsToBreak < 0)
+                throw new IllegalArgumentException("Illegal argument for putTimeoutsToBreak");
+            properties.setPutTimeoutsToBreak(putTimeoutsToBreak);
+        }
+
         if (!line.hasOption("PUT"))
             throw new MissingArgumentException("Missing argument for PUT");
         properties.setPUT(line.getOptionValue("PUT"));
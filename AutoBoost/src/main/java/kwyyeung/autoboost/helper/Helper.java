@@ -7,7 +7,11 @@ import soot.Modifier;
 import soot.RefType;
 import soot.Type;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -133,4 +137,15 @@ public class Helper {
         Class<?> parent  = c.getEnclosingClass();
         return getClassNameToOutput(fullCNameNeeded, parent) + "." + c.getSimpleName().replace("$", ".");
     }
+
+    /**
+     * Delete the file or directory provided with everything inside, if it exists
+     */
+    public static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(file);
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package kwyyeung.autoboost.helper;
+
+import kwyyeung.autoboost.entity.INVOCATION_OUTCOME;
+
+/**
+ * Outcome of a PUT call run via PUTExecutor: the value returned, what the call threw, why the call was rejected, or that it timed out
+ */
+public class InvocationResult {
+    private static final InvocationResult TIMED_OUT = new InvocationResult(INVOCATION_OUTCOME.TIMED_OUT, null, null);
+    private final INVOCATION_OUTCOME outcome;
+    private final Object value;
+    private final Throwable thrown;
+
+    private InvocationResult(INVOCATION_OUTCOME outcome, Object value, Throwable thrown) {
+        this.outcome = outcome;
+        this.value = value;
+        this.thrown = thrown;
+    }
+
+    public static InvocationResult returned(Object value) {
+        return new InvocationResult(INVOCATION_OUTCOME.RETURNED, value, null);
+    }
+
+    public static InvocationResult threw(Throwable thrown) {
+        return new InvocationResult(INVOCATION_OUTCOME.THREW, null, thrown);
+    }
+
+    /**
+     * @param reason error of the callee or params not matching the method, e.g. IllegalArgumentException
+     */
+    public static InvocationResult rejected(Throwable reason) {
+        return new InvocationResult(INVOCATION_OUTCOME.REJECTED, null, reason);
+    }
+
+    public static InvocationResult timedOut() {
+        return TIMED_OUT;
+    }
+
+    public INVOCATION_OUTCOME getOutcome() {
+        return outcome;
+    }
+
+    public boolean isReturned() {
+        return outcome == INVOCATION_OUTCOME.RETURNED;
+    }
+
+    /**
+     * @return value returned, null if the call did not return
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return what the call threw, or why it was rejected, null otherwise
+     */
+    public Throwable getThrown() {
+        return thrown;
+    }
+
+    @Override
+    public String toString() {
+        return "InvocationResult{" +
+                "outcome=" + outcome +
+                ", value=" + value +
+                ", thrown=" + thrown +
+                '}';
+    }
+}
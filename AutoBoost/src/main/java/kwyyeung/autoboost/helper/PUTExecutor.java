@@ -1,33 +1,245 @@
 package kwyyeung.autoboost.helper;
 
+import kwyyeung.autoboost.application.AutoBoost;
+import kwyyeung.autoboost.application.PROGRAM_STATE;
+import kwyyeung.autoboost.entity.INVOCATION_OUTCOME;
+import kwyyeung.autoboost.helper.worker.PUTWorkerPool;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.analysis.TimingProfile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import java.lang.reflect.InvocationTargetException;
-import java.util.concurrent.*;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Runs PUT constructors / methods with a time limit. Each calling thread hands its calls to a dedicated runner thread and watches it until the deadline,
+ * instead of submitting a task to an executor per call. A runner whose call runs over its budget is interrupted and abandoned, and the caller gets a new one for its next call.
+ * <p>
+ * Budgets of PUT methods are derived from their latencies observed (see {@link TimingProfile}), and a method timing out too many times in a row is not run again.
+ */
 public class PUTExecutor {
+    private static final Logger logger = LogManager.getLogger(PUTExecutor.class);
     private static final PUTExecutor singleton = new PUTExecutor();
-    private final ExecutorService executor = Executors.newCachedThreadPool();;
+    private static final double BUDGET_PERCENTILE = 0.99;
+    private final ThreadLocal<Runner> runners = new ThreadLocal<>();
+    private final Set<Runner> liveRunners = ConcurrentHashMap.newKeySet();
+    private volatile PUTWorkerPool workerPool = null;
+    private volatile boolean shutdown = false;
 
     public static PUTExecutor getSingleton() {
         return singleton;
     }
 
+    /**
+     * Run the constructor / method under the budget derived from its latencies observed
+     *
+     * @see #invoke(MethodDetails, Object, Object[], Duration)
+     */
+    public InvocationResult invoke(MethodDetails method, Object callee, Object[] args) throws NoSuchMethodException {
+        return invoke(method, callee, args, getBudget(method));
+    }
+
+    /**
+     * Run the constructor / method via its cached method handle, under the state of the calling thread.
+     * The latency of the call is added to the timing profile of the method
+     *
+     * @param callee null for constructors and static methods
+     * @param budget time limit of the call
+     * @return outcome of the call, timed out without running it if the method timed out too many times in a row
+     * @throws NoSuchMethodException if the constructor / method cannot be found
+     */
+    public InvocationResult invoke(MethodDetails method, Object callee, Object[] args, Duration budget) throws NoSuchMethodException {
+        method.getExecutable(); // resolved by the caller, so that a missing method is not taken as a failed call
+        if (isBroken(method)) return InvocationResult.timedOut();
+        long start = System.nanoTime();
+        InvocationResult result = run(() -> method.invoke(callee, args), budget);
+        record(method, result, System.nanoTime() - start, budget);
+        return result;
+    }
+
+    /**
+     * @return time limit of running the method again, putTimeoutFactor times the 99th percentile of its latencies observed within the floor and ceiling set,
+     * the ceiling if nothing is observed
+     */
+    public Duration getBudget(MethodDetails method) {
+        Properties properties = Properties.getSingleton();
+        long floor = Duration.ofMillis(properties.getPutTimeoutFloor()).toNanos(), ceiling = Duration.ofMillis(properties.getPutTimeoutCeiling()).toNanos();
+        long percentile = method.hasTimingProfile() ? method.getTimingProfile().getPercentile(BUDGET_PERCENTILE) : -1;
+        if (percentile == -1) return Duration.ofNanos(ceiling);
+        long budget = percentile > ceiling / properties.getPutTimeoutFactor() ? ceiling : percentile * properties.getPutTimeoutFactor();
+        return Duration.ofNanos(Math.max(floor, Math.min(ceiling, budget)));
+    }
+
+    private boolean isBroken(MethodDetails method) {
+        int timeoutsToBreak = Properties.getSingleton().getPutTimeoutsToBreak();
+        return timeoutsToBreak > 0 && method.hasTimingProfile() && method.getTimingProfile().getTimeoutsInRow() >= timeoutsToBreak;
+    }
+
+    private void record(MethodDetails method, InvocationResult result, long nanos, Duration budget) {
+        if (shutdown) return; // not run
+        TimingProfile profile = method.getTimingProfile();
+        if (result.getOutcome() == INVOCATION_OUTCOME.REJECTED) return; // not run
+        if (result.getOutcome() != INVOCATION_OUTCOME.TIMED_OUT) {
+            profile.recordCompleted(nanos);
+            return;
+        }
+        profile.recordTimeout(budget.toNanos());
+        if (profile.getTimeoutsInRow() == Properties.getSingleton().getPutTimeoutsToBreak())
+            logger.warn(method.getSignature() + " timed out " + profile.getTimeoutsInRow() + " times in a row, not run again");
+    }
+
     public Object callMethodWithTimeout(Callable<Object> task) throws InvocationTargetException {
-        Future<Object> future = executor.submit(task);
-        try {
-            Object result = future.get(5, TimeUnit.SECONDS);
-            return result;
-        } catch (Exception ex) {
-            // handle the timeout
-            throw new InvocationTargetException(ex, "Method timeout");
-        } finally {
-            future.cancel(true); // may or may not desire this
+        InvocationResult result = run(task, Duration.ofMillis(Properties.getSingleton().getPutTimeoutCeiling()));
+        switch (result.getOutcome()) {
+            case RETURNED:
+                return result.getValue();
+            case THREW:
+            case REJECTED:
+                throw new InvocationTargetException(result.getThrown());
+            default:
+                throw new InvocationTargetException(new TimeoutException(), "Method timeout");
+        }
+    }
+
+    /**
+     * Run the constructor / method for its outcome only, in a PUT worker JVM if workers are enabled and the args can be sent to one,
+     * otherwise the same as {@link #invoke(MethodDetails, Object, Object[])}. Calls run in workers are not logged, and their values returned are dropped.
+     *
+     * @throws NoSuchMethodException if the constructor / method cannot be found
+     */
+    public InvocationResult callIsolated(MethodDetails method, Object callee, Object[] params) throws NoSuchMethodException {
+        Duration budget = getBudget(method);
+        PUTWorkerPool pool = getWorkerPool();
+        if (pool != null && !isBroken(method)) {
+            long start = System.nanoTime();
+            InvocationResult result = pool.call(method.getExecutable(), callee, params, budget);
+            if (result != null) {
+                record(method, result, System.nanoTime() - start, budget);
+                return result;
+            }
         }
+        return invoke(method, callee, params, budget);
     }
 
+    private InvocationResult run(Callable<Object> task, Duration budget) {
+        if (shutdown) return InvocationResult.threw(new IllegalStateException("PUT executor is shut down"));
+        Runner runner = runners.get();
+        if (runner == null) {
+            runner = new Runner();
+            runners.set(runner);
+            liveRunners.add(runner);
+            runner.start();
+        }
+        InvocationResult result = runner.call(task, AutoBoost.getThreadProgramState(), budget.toNanos());
+        if (runner.abandoned) runners.remove(); // timed out / interrupted, a new runner is used for the next call
+        return result;
+    }
+
+    private PUTWorkerPool getWorkerPool() {
+        if (workerPool == null) {
+            Properties properties = Properties.getSingleton();
+            if (properties.getPutWorkers() == 0) return null;
+            synchronized (this) {
+                if (workerPool == null)
+                    workerPool = new PUTWorkerPool(properties.getPutWorkers(), properties.getPutWorkerCalls());
+            }
+        }
+        return workerPool;
+    }
 
     public void shutdown() {
-        executor.shutdownNow();
-        if(!executor.isShutdown())
-            executor.shutdownNow();
+        shutdown = true;
+        liveRunners.forEach(Runner::abandon);
+        if (workerPool != null)
+            workerPool.shutdown();
+    }
+
+    /**
+     * Daemon thread running the calls of one caller thread, one at a time
+     */
+    private class Runner extends Thread {
+        private Callable<Object> task = null;
+        private PROGRAM_STATE state = null;
+        private InvocationResult result = null;
+        private volatile boolean abandoned = false;
+
+        private Runner() {
+            super("PUT runner");
+            setDaemon(true);
+        }
+
+        private synchronized InvocationResult call(Callable<Object> task, PROGRAM_STATE state, long budgetNanos) {
+            this.task = task;
+            this.state = state;
+            this.result = null;
+            notifyAll();
+            long deadline = System.nanoTime() + budgetNanos;
+            try {
+                while (result == null) {
+                    if (abandoned) return InvocationResult.threw(new IllegalStateException("PUT executor is shut down"));
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        abandon();
+                        return InvocationResult.timedOut();
+                    }
+                    wait(remaining / 1000000, (int) (remaining % 1000000));
+                }
+            } catch (InterruptedException e) {
+                abandon();
+                Thread.currentThread().interrupt();
+                return InvocationResult.threw(e);
+            }
+            return result;
+        }
+
+        private synchronized void abandon() {
+            abandoned = true;
+            liveRunners.remove(this);
+            interrupt();
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Callable<Object> current;
+                PROGRAM_STATE currentState;
+                synchronized (this) {
+                    while (task == null && !abandoned) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    if (abandoned) return;
+                    current = task;
+                    currentState = state;
+                    task = null;
+                }
+                AutoBoost.setThreadProgramState(currentState);
+                InvocationResult outcome;
+                try {
+                    outcome = InvocationResult.returned(current.call());
+                } catch (InvocationTargetException e) {
+                    outcome = InvocationResult.threw(e.getCause() == null ? e : e.getCause());
+                } catch (IllegalArgumentException e) { // not thrown by the PUT, which is wrapped above
+                    outcome = InvocationResult.rejected(e);
+                } catch (Throwable t) {
+                    outcome = InvocationResult.threw(t);
+                } finally {
+                    AutoBoost.setThreadProgramState(null);
+                }
+                synchronized (this) {
+                    if (abandoned) return;
+                    result = outcome;
+                    notifyAll();
+                }
+            }
+        }
     }
 }
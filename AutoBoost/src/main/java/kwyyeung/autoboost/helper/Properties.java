@@ -1,5 +1,8 @@
 package kwyyeung.autoboost.helper;
 
+import kwyyeung.autoboost.entity.CAPTURE_MODE;
+import kwyyeung.autoboost.entity.INSTRUMENT_SCOPE;
+import kwyyeung.autoboost.entity.SNAPSHOT_FORMAT;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,6 +21,22 @@ public class Properties {
     private int casePerClass = 200;
     private int junitVer = 4;
     private String PUT;
+    private CAPTURE_MODE captureMode = CAPTURE_MODE.SYNC;
+    private int captureBufferSize = 65536;
+    private SNAPSHOT_FORMAT snapshotFormat = SNAPSHOT_FORMAT.BINARY;
+    private int generationThreads = 1;
+    private int putWorkers = 0;
+    private int putWorkerCalls = 1000;
+    private int putTimeoutFloor = 100; // in ms
+    private int putTimeoutCeiling = 5000; // in ms
+    private int putTimeoutFactor = 10;
+    private int putTimeoutsToBreak = 3;
+    private String traceOutput = null;
+    private String traceInput = null;
+    private String instrumentCache = null;
+    private int instrumentThreads = Runtime.getRuntime().availableProcessors();
+    private INSTRUMENT_SCOPE instrumentScope = INSTRUMENT_SCOPE.ALL;
+    private int replayShards = 1;
     private static final String classMethSep = "::";
     private static final String classSep = ",";
     private static final String NEW_LINE = "\n";
@@ -110,6 +129,21 @@ public class Properties {
         logProperty("faultyFunc", String.join(",", this.faultyFunc));
         logProperty("testSourceDir", this.testSourceDir);
         logProperty("testClassPrefix", this.testSuitePrefix);
+        logProperty("captureMode", this.captureMode);
+        logProperty("snapshotFormat", this.snapshotFormat);
+        logProperty("generationThreads", this.generationThreads);
+        logProperty("putWorkers", this.putWorkers);
+        logProperty("putWorkerCalls", this.putWorkerCalls);
+        logProperty("putTimeoutFloor", this.putTimeoutFloor);
+        logProperty("putTimeoutCeiling", this.putTimeoutCeiling);
+        logProperty("putTimeoutFactor", this.putTimeoutFactor);
+        logProperty("putTimeoutsToBreak", this.putTimeoutsToBreak);
+        logProperty("traceOutput", this.traceOutput);
+        logProperty("traceInput", this.traceInput);
+        logProperty("instrumentCache", this.instrumentCache);
+        logProperty("instrumentThreads", this.instrumentThreads);
+        logProperty("instrumentScope", this.instrumentScope);
+        logProperty("replayShards", this.replayShards);
     }
 
     public void logFaultyFunc() {
@@ -143,4 +177,132 @@ public class Properties {
     public void setPUT(String PUT) {
         this.PUT = PUT;
     }
+
+    public CAPTURE_MODE getCaptureMode() {
+        return captureMode;
+    }
+
+    public void setCaptureMode(CAPTURE_MODE captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    public int getCaptureBufferSize() {
+        return captureBufferSize;
+    }
+
+    public void setCaptureBufferSize(int captureBufferSize) {
+        this.captureBufferSize = captureBufferSize;
+    }
+
+    public SNAPSHOT_FORMAT getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    public void setSnapshotFormat(SNAPSHOT_FORMAT snapshotFormat) {
+        this.snapshotFormat = snapshotFormat;
+    }
+
+    public int getGenerationThreads() {
+        return generationThreads;
+    }
+
+    public void setGenerationThreads(int generationThreads) {
+        this.generationThreads = generationThreads;
+    }
+
+    public int getPutWorkers() {
+        return putWorkers;
+    }
+
+    public void setPutWorkers(int putWorkers) {
+        this.putWorkers = putWorkers;
+    }
+
+    public int getPutWorkerCalls() {
+        return putWorkerCalls;
+    }
+
+    public void setPutWorkerCalls(int putWorkerCalls) {
+        this.putWorkerCalls = putWorkerCalls;
+    }
+
+    public int getPutTimeoutFloor() {
+        return putTimeoutFloor;
+    }
+
+    public void setPutTimeoutFloor(int putTimeoutFloor) {
+        this.putTimeoutFloor = putTimeoutFloor;
+    }
+
+    public int getPutTimeoutCeiling() {
+        return putTimeoutCeiling;
+    }
+
+    public void setPutTimeoutCeiling(int putTimeoutCeiling) {
+        this.putTimeoutCeiling = putTimeoutCeiling;
+    }
+
+    public int getPutTimeoutFactor() {
+        return putTimeoutFactor;
+    }
+
+    public void setPutTimeoutFactor(int putTimeoutFactor) {
+        this.putTimeoutFactor = putTimeoutFactor;
+    }
+
+    public int getPutTimeoutsToBreak() {
+        return putTimeoutsToBreak;
+    }
+
+    public void setPutTimeoutsToBreak(int putTimeoutsToBreak) {
+        this.putTimeoutsToBreak = putTimeoutsToBreak;
+    }
+
+    public String getTraceOutput() {
+        return traceOutput;
+    }
+
+    public void setTraceOutput(String traceOutput) {
+        this.traceOutput = traceOutput;
+    }
+
+    public String getTraceInput() {
+        return traceInput;
+    }
+
+    public void setTraceInput(String traceInput) {
+        this.traceInput = traceInput;
+    }
+
+    public String getInstrumentCache() {
+        return instrumentCache;
+    }
+
+    public void setInstrumentCache(String instrumentCache) {
+        this.instrumentCache = instrumentCache;
+    }
+
+    public int getInstrumentThreads() {
+        return instrumentThreads;
+    }
+
+    public void setInstrumentThreads(int instrumentThreads) {
+        this.instrumentThreads = instrumentThreads;
+    }
+
+    public INSTRUMENT_SCOPE getInstrumentScope() {
+        return instrumentScope;
+    }
+
+    public void setInstrumentScope(INSTRUMENT_SCOPE instrumentScope) {
+        this.instrumentScope = instrumentScope;
+    }
+
+    public int getReplayShards() {
+        return replayShards;
+    }
+
+    public void setReplayShards(int replayShards) {
+        this.replayShards = replayShards;
+    }
 }
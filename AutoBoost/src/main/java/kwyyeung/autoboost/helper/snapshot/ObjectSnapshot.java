@@ -0,0 +1,78 @@
+package kwyyeung.autoboost.helper.snapshot;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of the content of an object, array or map, encoded by SnapshotParser.
+ * Snapshots of same content have the same bytes, hence equality and hash are defined on bytes.
+ */
+public final class ObjectSnapshot {
+    private final byte[] bytes;
+    private final long hash64;
+
+    ObjectSnapshot(byte[] bytes) {
+        this.bytes = bytes;
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        this.hash64 = h;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Write the bytes of the snapshot, led by their length
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a snapshot written by writeTo
+     */
+    public static ObjectSnapshot readFrom(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new ObjectSnapshot(bytes);
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * @return 64-bit hash of bytes, for indexing snapshots with few collisions
+     */
+    public long hash64() {
+        return hash64;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ObjectSnapshot that = (ObjectSnapshot) o;
+        return hash64 == that.hash64 && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash64);
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectSnapshot{" +
+                "size=" + bytes.length +
+                ", hash=" + Long.toHexString(hash64) +
+                '}';
+    }
+}
@@ -0,0 +1,57 @@
+package kwyyeung.autoboost.helper.snapshot;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of bytes of an ObjectSnapshot, reverse of SnapshotOutput
+ */
+class SnapshotInput {
+    private final byte[] bytes;
+    private int position = 0;
+
+    SnapshotInput(ObjectSnapshot snapshot) {
+        this.bytes = snapshot.getBytes();
+    }
+
+    int readByte() {
+        if (position >= bytes.length) throw new IllegalStateException("Unexpected end of snapshot");
+        return bytes[position++] & 0xFF;
+    }
+
+    int readVarint() {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    long readVarlong() {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    long readSignedVarlong() {
+        long value = readVarlong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+        int length = readVarint();
+        if (position + length > bytes.length) throw new IllegalStateException("Unexpected end of snapshot");
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+}
@@ -0,0 +1,58 @@
+package kwyyeung.autoboost.helper.snapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte buffer used to encode an ObjectSnapshot
+ */
+class SnapshotOutput {
+    private byte[] buffer = new byte[64];
+    private int size = 0;
+
+    void writeByte(int b) {
+        if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+        buffer[size++] = (byte) b;
+    }
+
+    /**
+     * Write an unsigned varint, 7 bits per byte
+     */
+    void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    void writeVarlong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    /**
+     * Write a signed value, zigzag encoded so that small negative values stay short
+     */
+    void writeSignedVarlong(long value) {
+        writeVarlong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write a string as its length followed by its UTF-8 bytes
+     */
+    void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        if (size + bytes.length > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(size * 2, size + bytes.length));
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    ObjectSnapshot toSnapshot() {
+        return new ObjectSnapshot(Arrays.copyOf(buffer, size));
+    }
+}
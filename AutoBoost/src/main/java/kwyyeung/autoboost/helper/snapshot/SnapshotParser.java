@@ -0,0 +1,443 @@
+package kwyyeung.autoboost.helper.snapshot;
+
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.entity.SNAPSHOT_FORMAT;
+import kwyyeung.autoboost.helper.Helper;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.helper.xml.XMLParser;
+import kwyyeung.autoboost.helper.xml.XML_ATTRIBUTE;
+import kwyyeung.autoboost.helper.xml.XML_ELEMENT;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.MethodExecution;
+import kwyyeung.autoboost.program.execution.variable.*;
+import kwyyeung.autoboost.program.instrumentation.AccessorPlan;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Encoder and decoder of object, array and map snapshots.
+ * Snapshots are ObjectSnapshot in binary format, or XML strings produced by XMLParser when the XML format is chosen for debugging.
+ * <p>
+ * Binary layout: kind of root, class of root, then elements (fields, array components or map keys and values) each led by ENTRY, ended by END.
+ * Classes and fields are written as their symbols in InstrumentResult.
+ * Elements are numbered implicitly in the order written, with the root as -1, so that repeated objects are written as back-references to the element first holding them.
+ * Values are either the ID of a VarDetail, a back-reference, or inline primitive, enum, wrapper and short string values.
+ */
+public class SnapshotParser {
+    private static final Logger logger = LogManager.getLogger(SnapshotParser.class);
+    private static final InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+    private static final Map<Integer, Map<Map.Entry<String, String>, VarDetail>> contentMapCache = new ConcurrentHashMap<>();
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+    private static final int KIND_OBJ = 0, KIND_ARR = 1, KIND_MAP = 2;
+    private static final int END = 0, ENTRY = 1;
+    private static final int VALUE_NONE = 0, VALUE_VAR = 1, VALUE_BACK_REF = 2, VALUE_INLINE = 3;
+    private static final List<Class<? extends VarDetail>> INLINE_VARDETAIL_CLASSES = Arrays.asList(PrimitiveVarDetails.class, EnumVarDetails.class, WrapperVarDetails.class, StringVarDetails.class);
+    private static final List<Class<?>> INLINE_VALUE_TYPES = Arrays.asList(String.class, Integer.class, Long.class, Short.class, Byte.class, Boolean.class, Character.class, Float.class, Double.class);
+    private static final ThreadLocal<Map<Object, Object[]>> capturedElementsMap = new ThreadLocal<>();
+    private final XMLParser xmlParser = new XMLParser();
+
+    /**
+     * @return snapshot of the object provided, in the format set in Properties
+     */
+    public Object getSnapshot(MethodExecution execution, Object obj, LOG_ITEM process, int depth, Map<Integer, Integer> processedHashToVarIDMap) {
+        if (Properties.getSingleton().getSnapshotFormat().equals(SNAPSHOT_FORMAT.XML))
+            return xmlParser.getXML(execution, obj, process, depth, processedHashToVarIDMap);
+        SnapshotOutput output = new SnapshotOutput();
+        int kind = ArrVarDetails.availableTypeCheck(obj.getClass()) ? KIND_ARR : MapVarDetails.availableTypeCheck(obj.getClass()) ? KIND_MAP : KIND_OBJ;
+        output.writeByte(kind);
+        output.writeVarint(instrumentResult.getClassSymbol(obj.getClass()));
+        Map<Integer, Integer> hashCodeToElementMap = new HashMap<>();
+        hashCodeToElementMap.put(System.identityHashCode(obj), -1);
+        if (depth > 1) {
+            Object[] elements = getElements(obj, kind);
+            int[] fieldSymbols = kind == KIND_OBJ ? instrumentResult.getAccessorPlan(obj.getClass()).getFieldSymbols() : null;
+            for (int i = 0; i < elements.length; i++) {
+                if (kind != KIND_MAP || i % 2 == 0) output.writeByte(ENTRY); // value following key in the same entry
+                if (kind == KIND_OBJ) output.writeVarint(fieldSymbols[i]);
+                writeValue(execution, elements[i], process, output, hashCodeToElementMap, i, depth - 1, processedHashToVarIDMap);
+            }
+        }
+        output.writeByte(END);
+        return output.toSnapshot();
+    }
+
+    /**
+     * Read the elements written in the snapshot of the value: fields in the order of its accessor plan, components, or keys each followed by its value.
+     * Elements of nested values are not read, hence the capture is shallow.
+     *
+     * @return elements of the value, null if the value is not snapshotted (e.g. string, wrapper, enum) or snapshots are in the XML format
+     */
+    public static Object[] captureElements(Object obj) {
+        if (obj == null || Properties.getSingleton().getSnapshotFormat().equals(SNAPSHOT_FORMAT.XML)) return null;
+        Class<?> type = obj.getClass();
+        if (type.isEnum() || type.equals(Class.class) || type.equals(String.class) || ClassUtils.isPrimitiveWrapper(type) || StringBVarDetails.availableTypeCheck(type))
+            return null;
+        return readElements(obj, ArrVarDetails.availableTypeCheck(type) ? KIND_ARR : MapVarDetails.availableTypeCheck(type) ? KIND_MAP : KIND_OBJ);
+    }
+
+    /**
+     * Use the elements captured earlier, keyed by identity of values, for snapshots taken on the current thread instead of reading the values again, until cleared with null
+     */
+    public static void useCapturedElements(Map<Object, Object[]> capturedElements) {
+        if (capturedElements == null) capturedElementsMap.remove();
+        else capturedElementsMap.set(capturedElements);
+    }
+
+    private static Object[] getElements(Object obj, int kind) {
+        Map<Object, Object[]> capturedElements = capturedElementsMap.get();
+        Object[] elements = capturedElements == null ? null : capturedElements.get(obj);
+        return elements != null ? elements : readElements(obj, kind);
+    }
+
+    private static Object[] readElements(Object obj, int kind) {
+        switch (kind) {
+            case KIND_OBJ:
+                AccessorPlan plan = instrumentResult.getAccessorPlan(obj.getClass());
+                Object[] fieldVals = new Object[plan.getFieldSymbols().length];
+                for (int i = 0; i < fieldVals.length; i++)
+                    fieldVals[i] = plan.get(i, obj);
+                return fieldVals;
+            case KIND_ARR:
+                if (!obj.getClass().isArray()) return ((Collection<?>) obj).toArray();
+                Object[] components = new Object[Array.getLength(obj)];
+                for (int i = 0; i < components.length; i++)
+                    components[i] = Helper.getArrayElement(obj, i);
+                return components;
+            default:
+                List<Object> keyValues = new ArrayList<>();
+                for (Map.Entry<?, ?> c : ((Map<?, ?>) obj).entrySet()) {
+                    keyValues.add(c.getKey());
+                    keyValues.add(c.getValue());
+                }
+                return keyValues.toArray();
+        }
+    }
+
+    private void writeValue(MethodExecution execution, Object obj, LOG_ITEM process, SnapshotOutput output, Map<Integer, Integer> hashCodeToElementMap, int elementID, int depth, Map<Integer, Integer> processedHashToVarIDMap) {
+        Integer objHash = System.identityHashCode(obj);
+        if (obj != null && hashCodeToElementMap.containsKey(objHash)) {
+            output.writeByte(VALUE_BACK_REF);
+            output.writeVarint(hashCodeToElementMap.get(objHash) + 1);
+            return;
+        }
+        hashCodeToElementMap.put(objHash, elementID);
+        if (depth <= 0) {
+            output.writeByte(VALUE_NONE);
+            return;
+        }
+        Object toWrite = ExecutionTrace.getSingleton().getContentForXMLStorage(execution, obj == null ? Object.class : obj.getClass(), obj, process, true, new HashSet<>(), depth - 1, processedHashToVarIDMap);
+        if (toWrite instanceof VarDetail) {
+            output.writeByte(VALUE_VAR);
+            output.writeVarint(((VarDetail) toWrite).getID());
+        } else if (toWrite instanceof ExecutionTrace.IntermediateVarContent)
+            writeInlineValue((ExecutionTrace.IntermediateVarContent) toWrite, output);
+        else
+            output.writeByte(VALUE_NONE);
+    }
+
+    private void writeInlineValue(ExecutionTrace.IntermediateVarContent content, SnapshotOutput output) {
+        int varDetailClass = INLINE_VARDETAIL_CLASSES.indexOf(content.getVarDetailClass());
+        int valueType = INLINE_VALUE_TYPES.indexOf(content.getValueStoredType());
+        if (varDetailClass == -1 || valueType == -1)
+            throw new IllegalArgumentException("Illegal inline value of " + content.getVarDetailClass() + " stored as " + content.getValueStoredType());
+        output.writeByte(VALUE_INLINE);
+        output.writeByte(varDetailClass);
+        output.writeVarint(instrumentResult.getClassSymbol(content.getVarType()));
+        output.writeByte(valueType);
+        Object value = content.getVarValue();
+        switch (valueType) {
+            case 0:
+                output.writeString((String) value);
+                break;
+            case 5:
+                output.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case 6:
+                output.writeVarint((Character) value);
+                break;
+            case 7:
+                output.writeVarint(Float.floatToRawIntBits((Float) value));
+                break;
+            case 8:
+                output.writeVarlong(Double.doubleToRawLongBits((Double) value));
+                break;
+            default: // integral types
+                output.writeSignedVarlong(((Number) value).longValue());
+        }
+    }
+
+    private static Object readInlineValue(int valueType, SnapshotInput input) {
+        switch (valueType) {
+            case 0:
+                return input.readString();
+            case 1:
+                return (int) input.readSignedVarlong();
+            case 2:
+                return input.readSignedVarlong();
+            case 3:
+                return (short) input.readSignedVarlong();
+            case 4:
+                return (byte) input.readSignedVarlong();
+            case 5:
+                return input.readByte() == 1;
+            case 6:
+                return (char) input.readVarint();
+            case 7:
+                return Float.intBitsToFloat(input.readVarint());
+            case 8:
+                return Double.longBitsToDouble(input.readVarlong());
+            default:
+                throw new IllegalStateException("Illegal type of inline value " + valueType);
+        }
+    }
+
+    /**
+     * @param currentVar VarDetail of the snapshot
+     * @param snapshot   snapshot of object
+     * @return VarDetails of fields, keyed by class declaring the field and field name
+     */
+    public static Map<Map.Entry<String, String>, VarDetail> toContentMap(VarDetail currentVar, Object snapshot) {
+        if (!(snapshot instanceof ObjectSnapshot)) return XMLParser.fromXMLtoContentMap(currentVar, (String) snapshot);
+        if (contentMapCache.containsKey(currentVar.getID()))
+            return contentMapCache.get(currentVar.getID());
+        Map<Map.Entry<String, String>, VarDetail> fieldToVarMap = new HashMap<>();
+        for (Element element : readElements(currentVar, (ObjectSnapshot) snapshot))
+            if (element.varDetail != null)
+                fieldToVarMap.put(new AbstractMap.SimpleEntry<>(element.field.getDeclaringClass().getName(), element.field.getName()), element.varDetail);
+        contentMapCache.put(currentVar.getID(), fieldToVarMap);
+        return fieldToVarMap;
+    }
+
+    /**
+     * @param currentVar VarDetail of the snapshot
+     * @param snapshot   snapshot of array or collection
+     * @return IDs of VarDetails of components, in order
+     */
+    public static List<Integer> toVarDetailIDList(VarDetail currentVar, Object snapshot) {
+        if (!(snapshot instanceof ObjectSnapshot)) return XMLParser.fromXMLtoVarDetailIDList(currentVar, (String) snapshot);
+        List<Integer> varDetailIDList = new ArrayList<>();
+        for (Element element : readElements(currentVar, (ObjectSnapshot) snapshot))
+            if (element.varDetail != null) varDetailIDList.add(element.varDetail.getID());
+        return varDetailIDList;
+    }
+
+    /**
+     * @param currentVar VarDetail of the snapshot
+     * @param snapshot   snapshot of map
+     * @return pairs of IDs of VarDetails of keys and values
+     */
+    public static Set<Map.Entry<Integer, Integer>> toVarDetailIDMap(VarDetail currentVar, Object snapshot) {
+        if (!(snapshot instanceof ObjectSnapshot)) return XMLParser.fromXMLtoVarDetailIDMap((MapVarDetails) currentVar, String.valueOf(snapshot));
+        Set<Map.Entry<Integer, Integer>> keyValuePairs = new HashSet<>();
+        List<Element> elements = readElements(currentVar, (ObjectSnapshot) snapshot);
+        for (int i = 0; i + 1 < elements.size(); i += 2)
+            if (elements.get(i).varDetail != null && elements.get(i + 1).varDetail != null)
+                keyValuePairs.add(new AbstractMap.SimpleEntry<>(elements.get(i).varDetail.getID(), elements.get(i + 1).varDetail.getID()));
+        return keyValuePairs;
+    }
+
+    /**
+     * Re-encode a binary snapshot with other symbols of classes and fields and IDs of VarDetails, e.g. for a snapshot taken in another JVM
+     *
+     * @param classSymbols new symbol of each class symbol in the snapshot
+     * @param fieldSymbols new symbol of each field symbol in the snapshot
+     * @param varIDs       new ID of each VarDetail ID in the snapshot
+     * @return snapshot of the same content
+     */
+    public static ObjectSnapshot remap(ObjectSnapshot snapshot, IntUnaryOperator classSymbols, IntUnaryOperator fieldSymbols, IntUnaryOperator varIDs) {
+        SnapshotInput input = new SnapshotInput(snapshot);
+        SnapshotOutput output = new SnapshotOutput();
+        int kind = input.readByte();
+        output.writeByte(kind);
+        output.writeVarint(classSymbols.applyAsInt(input.readVarint()));
+        while (input.readByte() == ENTRY) {
+            output.writeByte(ENTRY);
+            if (kind == KIND_OBJ)
+                output.writeVarint(fieldSymbols.applyAsInt(input.readVarint()));
+            remapValue(input, output, classSymbols, varIDs);
+            if (kind == KIND_MAP) // value following key
+                remapValue(input, output, classSymbols, varIDs);
+        }
+        output.writeByte(END);
+        return output.toSnapshot();
+    }
+
+    private static void remapValue(SnapshotInput input, SnapshotOutput output, IntUnaryOperator classSymbols, IntUnaryOperator varIDs) {
+        int value = input.readByte();
+        output.writeByte(value);
+        switch (value) {
+            case VALUE_VAR:
+                output.writeVarint(varIDs.applyAsInt(input.readVarint()));
+                break;
+            case VALUE_BACK_REF:
+                output.writeVarint(input.readVarint());
+                break;
+            case VALUE_INLINE:
+                output.writeByte(input.readByte());
+                output.writeVarint(classSymbols.applyAsInt(input.readVarint()));
+                int valueType = input.readByte();
+                output.writeByte(valueType);
+                switch (valueType) {
+                    case 0:
+                        output.writeString(input.readString());
+                        break;
+                    case 5:
+                        output.writeByte(input.readByte());
+                        break;
+                    case 6:
+                    case 7:
+                        output.writeVarint(input.readVarint());
+                        break;
+                    case 8:
+                        output.writeVarlong(input.readVarlong());
+                        break;
+                    default: // integral types
+                        output.writeSignedVarlong(input.readSignedVarlong());
+                }
+                break;
+        }
+    }
+
+    private static List<Element> readElements(VarDetail currentVar, ObjectSnapshot snapshot) {
+        SnapshotInput input = new SnapshotInput(snapshot);
+        int kind = input.readByte();
+        input.readVarint(); // class of root
+        List<Element> elements = new ArrayList<>();
+        while (input.readByte() == ENTRY) {
+            if (kind == KIND_MAP) {
+                elements.add(readElement(currentVar, input, null, elements));
+                elements.add(readElement(currentVar, input, null, elements));
+            } else if (kind == KIND_OBJ)
+                elements.add(readElement(currentVar, input, instrumentResult.getFieldBySymbol(input.readVarint()), elements));
+            else
+                elements.add(readElement(currentVar, input, null, elements));
+        }
+        return elements;
+    }
+
+    private static Element readElement(VarDetail currentVar, SnapshotInput input, Field field, List<Element> elements) {
+        VarDetail varDetail;
+        switch (input.readByte()) {
+            case VALUE_VAR:
+                varDetail = ExecutionTrace.getSingleton().getVarDetailByID(input.readVarint());
+                break;
+            case VALUE_BACK_REF:
+                int elementID = input.readVarint() - 1;
+                varDetail = elementID == -1 ? currentVar : elements.get(elementID).varDetail;
+                break;
+            case VALUE_INLINE:
+                Class<? extends VarDetail> varDetailClass = INLINE_VARDETAIL_CLASSES.get(input.readByte());
+                Class<?> type = instrumentResult.getClassBySymbol(input.readVarint());
+                Object value = readInlineValue(input.readByte(), input);
+                ExecutionTrace.IntermediateVarContent content = new ExecutionTrace.IntermediateVarContent(varDetailClass, type, value, value, value.getClass());
+                varDetail = ExecutionTrace.getSingleton().getDecodedVarDetail(content);
+                break;
+            default:
+                varDetail = null; // not captured due to depth limit
+        }
+        return new Element(field, varDetail);
+    }
+
+    /**
+     * @param varID ID of VarDetail of object
+     * @return if the fields of object are decoded and cached
+     */
+    public static boolean isContentMapCached(int varID) {
+        return contentMapCache.containsKey(varID) || XMLParser.getContentMapCache().containsKey(varID);
+    }
+
+    public static void clearCache() {
+        contentMapCache.clear();
+        XMLParser.clearCache();
+    }
+
+    /**
+     * Dump a binary snapshot in the XML format produced by XMLParser, for debugging. Inline values are escaped once only, unlike XMLParser.
+     *
+     * @param snapshot snapshot to dump
+     * @return XML string of the snapshot
+     */
+    public static String toXML(ObjectSnapshot snapshot) {
+        try {
+            StringWriter stringWriter = new StringWriter();
+            XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(stringWriter);
+            SnapshotInput input = new SnapshotInput(snapshot);
+            int kind = input.readByte();
+            writer.writeStartDocument();
+            writer.writeStartElement(kind == KIND_ARR ? XML_ELEMENT.ARR.name() : kind == KIND_MAP ? XML_ELEMENT.MAP.name() : XML_ELEMENT.OBJECT.name());
+            writer.writeAttribute(XML_ATTRIBUTE.CLASS.name(), instrumentResult.getClassBySymbol(input.readVarint()).getName());
+            int elementID = -1;
+            while (input.readByte() == ENTRY) {
+                if (kind == KIND_OBJ) {
+                    writer.writeStartElement(XML_ELEMENT.FIELD.name());
+                    writer.writeAttribute(XML_ATTRIBUTE.FIELD_ID.name(), Integer.toString(++elementID));
+                    Field field = instrumentResult.getFieldBySymbol(input.readVarint());
+                    writer.writeAttribute(XML_ATTRIBUTE.FIELD_NAME.name(), field.getName());
+                    writer.writeAttribute(XML_ATTRIBUTE.BELONG.name(), field.getDeclaringClass().getName());
+                    writeValueToXML(input, writer);
+                    writer.writeEndElement();
+                } else if (kind == KIND_ARR) {
+                    writer.writeStartElement(XML_ELEMENT.ELEMENT.name());
+                    writer.writeAttribute(XML_ATTRIBUTE.ELEMENT_ID.name(), Integer.toString(++elementID));
+                    writeValueToXML(input, writer);
+                    writer.writeEndElement();
+                } else {
+                    writer.writeStartElement(XML_ELEMENT.ELEMENT.name());
+                    for (XML_ELEMENT part : new XML_ELEMENT[]{XML_ELEMENT.KEY, XML_ELEMENT.VAL}) {
+                        writer.writeStartElement(part.name());
+                        writer.writeAttribute(XML_ATTRIBUTE.ELEMENT_ID.name(), Integer.toString(++elementID));
+                        writeValueToXML(input, writer);
+                        writer.writeEndElement();
+                    }
+                    writer.writeEndElement();
+                }
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+            return stringWriter.toString();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeValueToXML(SnapshotInput input, XMLStreamWriter writer) throws XMLStreamException {
+        switch (input.readByte()) {
+            case VALUE_VAR:
+                writer.writeAttribute(XML_ATTRIBUTE.VAR_ID.name(), Integer.toString(input.readVarint()));
+                break;
+            case VALUE_BACK_REF:
+                writer.writeAttribute(XML_ATTRIBUTE.PROCESSED_FIELD_ID.name(), Integer.toString(input.readVarint() - 1));
+                break;
+            case VALUE_INLINE:
+                writer.writeAttribute(XML_ATTRIBUTE.VARDETAIL_CLASS.name(), INLINE_VARDETAIL_CLASSES.get(input.readByte()).getName());
+                writer.writeAttribute(XML_ATTRIBUTE.VARDETAIL_TYPE.name(), instrumentResult.getClassBySymbol(input.readVarint()).getName());
+                int valueType = input.readByte();
+                writer.writeAttribute(XML_ATTRIBUTE.VARDETAIL_VAL.name(), String.valueOf(readInlineValue(valueType, input)));
+                writer.writeAttribute(XML_ATTRIBUTE.VARDETAIL_VALTYPE.name(), INLINE_VALUE_TYPES.get(valueType).getName());
+                break;
+        }
+    }
+
+    private static class Element {
+        private final Field field; // null if not a field
+        private final VarDetail varDetail;
+
+        private Element(Field field, VarDetail varDetail) {
+            this.field = field;
+            this.varDetail = varDetail;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package kwyyeung.autoboost.helper.worker;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Entry of a PUT worker JVM forked by {@link PUTWorkerPool}.
+ * Connects back to the port provided and runs the calls requested one by one until the connection is closed or the JVM is killed.
+ */
+public class PUTWorker {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1)
+            throw new IllegalArgumentException("Usage: PUTWorker <port>");
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                Executable executable;
+                try {
+                    executable = PUTWorkerProtocol.readExecutable(in);
+                } catch (EOFException e) {
+                    return;
+                } catch (ClassNotFoundException | NoSuchMethodException e) {
+                    PUTWorkerProtocol.readBytes(in); // skip args
+                    out.writeByte(PUTWorkerProtocol.UNTRANSFERABLE);
+                    out.flush();
+                    continue;
+                }
+                respond(out, executable, PUTWorkerProtocol.deserialize(PUTWorkerProtocol.readBytes(in)));
+                out.flush();
+            }
+        }
+    }
+
+    private static void respond(DataOutputStream out, Executable executable, Object args) throws IOException {
+        if (!(args instanceof Object[]) || ((Object[]) args).length != 2) {
+            out.writeByte(PUTWorkerProtocol.UNTRANSFERABLE);
+            return;
+        }
+        Object callee = ((Object[]) args)[0];
+        Object[] params = (Object[]) ((Object[]) args)[1];
+        try {
+            if (executable instanceof Constructor)
+                ((Constructor<?>) executable).newInstance(params);
+            else
+                ((Method) executable).invoke(callee, params);
+        } catch (Throwable e) {
+            byte[] thrown = PUTWorkerProtocol.serialize(e);
+            if (thrown == null)
+                out.writeByte(PUTWorkerProtocol.UNTRANSFERABLE);
+            else {
+                out.writeByte(PUTWorkerProtocol.THREW);
+                PUTWorkerProtocol.writeBytes(out, thrown);
+            }
+            return;
+        }
+        out.writeByte(PUTWorkerProtocol.RETURNED);
+    }
+}
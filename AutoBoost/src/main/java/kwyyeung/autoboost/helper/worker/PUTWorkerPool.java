@@ -0,0 +1,152 @@
+package kwyyeung.autoboost.helper.worker;
+
+import kwyyeung.autoboost.helper.InvocationResult;
+import kwyyeung.autoboost.helper.Properties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Forked JVMs running PUT constructors / methods on behalf of AutoBoost, so that a call running over its time limit can be killed with its JVM
+ * instead of leaving a thread behind, and static states changed by one call do not leak to calls in other workers or AutoBoost itself.
+ * Workers are started on demand, up to the number set, and replaced after handling the set number of calls or after a call runs over its budget.
+ */
+public class PUTWorkerPool {
+    private static final Logger logger = LogManager.getLogger(PUTWorkerPool.class);
+    private static final int STARTUP_TIMEOUT = 30000;
+    private final int callsPerWorker;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param size           max number of workers running at the same time
+     * @param callsPerWorker number of calls handled by a worker before it is replaced
+     */
+    public PUTWorkerPool(int size, int callsPerWorker) {
+        if (size <= 0 || callsPerWorker <= 0)
+            throw new IllegalArgumentException("Illegal settings of PUT worker pool");
+        this.callsPerWorker = callsPerWorker;
+        this.permits = new Semaphore(size);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    }
+
+    /**
+     * Run the constructor / method provided in a worker, with the same outcome as running it via {@link kwyyeung.autoboost.helper.PUTExecutor#invoke} except that the value returned is dropped.
+     *
+     * @param budget time limit of the call, after which the worker is killed
+     * @return outcome of the call, null if the call cannot be run in a worker (e.g. args are not serializable) and should be run in AutoBoost instead
+     */
+    public InvocationResult call(Executable executable, Object callee, Object[] params, Duration budget) {
+        if (shutdown) return null;
+        byte[] args = PUTWorkerProtocol.serialize(new Object[]{callee, params});
+        if (args == null) return null;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            Worker worker = idleWorkers.poll();
+            if (worker == null) {
+                try {
+                    worker = new Worker(Properties.getSingleton().getInsBinPath());
+                } catch (IOException e) {
+                    logger.error("Cannot start PUT worker: " + e.getMessage());
+                    return null;
+                }
+            }
+            boolean reusable = false;
+            try {
+                InvocationResult result = worker.call(executable, args, (int) Math.max(1, Math.min(budget.toMillis(), Integer.MAX_VALUE)));
+                reusable = true; // the call returned / threw, worker is fine
+                return result;
+            } catch (SocketTimeoutException e) {
+                return InvocationResult.timedOut();
+            } catch (IOException e) {
+                logger.error("PUT worker failed: " + e.getMessage());
+                return null;
+            } finally {
+                if (reusable && !shutdown && worker.calls < callsPerWorker) idleWorkers.offer(worker);
+                else worker.destroy();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null)
+            worker.destroy();
+    }
+
+    private class Worker {
+        private final Process process;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private int calls = 0;
+
+        private Worker(String insBinPath) throws IOException {
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                server.setSoTimeout(STARTUP_TIMEOUT);
+                String classPath = insBinPath == null ? System.getProperty("java.class.path") : insBinPath + File.pathSeparator + System.getProperty("java.class.path");
+                process = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java", "-cp", classPath,
+                        PUTWorker.class.getName(), String.valueOf(server.getLocalPort())).inheritIO().start();
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    process.destroyForcibly();
+                    throw e;
+                }
+            }
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private InvocationResult call(Executable executable, byte[] args, int timeout) throws IOException {
+            calls++;
+            socket.setSoTimeout(timeout);
+            PUTWorkerProtocol.writeRequest(out, executable, args);
+            out.flush();
+            switch (in.readByte()) {
+                case PUTWorkerProtocol.RETURNED:
+                    return InvocationResult.returned(null);
+                case PUTWorkerProtocol.THREW:
+                    Object thrown = PUTWorkerProtocol.deserialize(PUTWorkerProtocol.readBytes(in));
+                    if (!(thrown instanceof Throwable)) return null;
+                    if (thrown instanceof IllegalArgumentException || thrown instanceof NullPointerException) // thrown by reflection, as the call would be wrapped
+                        return InvocationResult.rejected((Throwable) thrown);
+                    if (thrown instanceof InvocationTargetException && ((Throwable) thrown).getCause() != null) // unwrapped as calls run within AutoBoost
+                        thrown = ((Throwable) thrown).getCause();
+                    return InvocationResult.threw((Throwable) thrown);
+                case PUTWorkerProtocol.UNTRANSFERABLE:
+                    return null;
+                default:
+                    throw new IOException("Unexpected response from PUT worker");
+            }
+        }
+
+        private void destroy() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package kwyyeung.autoboost.helper.worker;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Messages exchanged between AutoBoost and PUT workers.
+ * A request names the constructor / method by its declaring class, name and parameter types, followed by the serialized callee and arguments.
+ * A response tells if the call returned, or carries the serialized throwable of the reflective call.
+ */
+final class PUTWorkerProtocol {
+    static final byte RETURNED = 0;
+    static final byte THREW = 1;
+    static final byte UNTRANSFERABLE = 2; // args or throwable could not be (de)serialized, call should be run within AutoBoost instead
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final Map<String, Class<?>> primitiveTypes = new HashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class})
+            primitiveTypes.put(type.getName(), type);
+    }
+
+    private PUTWorkerProtocol() {
+    }
+
+    static void writeRequest(DataOutputStream out, Executable executable, byte[] args) throws IOException {
+        out.writeUTF(executable.getDeclaringClass().getName());
+        out.writeUTF(executable instanceof Constructor ? CONSTRUCTOR_NAME : executable.getName());
+        Class<?>[] parameterTypes = executable.getParameterTypes();
+        out.writeInt(parameterTypes.length);
+        for (Class<?> type : parameterTypes)
+            out.writeUTF(type.getName());
+        writeBytes(out, args);
+    }
+
+    /**
+     * @return constructor / method requested, accessible
+     */
+    static Executable readExecutable(DataInputStream in) throws IOException, ClassNotFoundException, NoSuchMethodException {
+        Class<?> declaringClass = forName(in.readUTF());
+        String name = in.readUTF();
+        Class<?>[] parameterTypes = new Class<?>[in.readInt()];
+        for (int i = 0; i < parameterTypes.length; i++)
+            parameterTypes[i] = forName(in.readUTF());
+        Executable executable = name.equals(CONSTRUCTOR_NAME) ? declaringClass.getDeclaredConstructor(parameterTypes) : declaringClass.getDeclaredMethod(name, parameterTypes);
+        executable.setAccessible(true);
+        return executable;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return serialized form of obj, null if it (or anything it refers to) is not serializable
+     */
+    static byte[] serialize(Object obj) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(obj);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return object deserialized, null if it cannot be deserialized
+     */
+    static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> forName(String name) throws ClassNotFoundException {
+        Class<?> type = primitiveTypes.get(name);
+        return type != null ? type : Class.forName(name, false, PUTWorkerProtocol.class.getClassLoader());
+    }
+}
@@ -11,6 +11,7 @@ import kwyyeung.autoboost.program.execution.MethodExecution;
 import kwyyeung.autoboost.program.execution.variable.ArrVarDetails;
 import kwyyeung.autoboost.program.execution.variable.MapVarDetails;
 import kwyyeung.autoboost.program.execution.variable.VarDetail;
+import kwyyeung.autoboost.program.instrumentation.AccessorPlan;
 import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
 
 import javax.xml.stream.*;
@@ -21,9 +22,14 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -32,7 +38,22 @@ public class XMLParser {
     private static final Logger logger = LogManager.getLogger(XMLParser.class);
     private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
     private static final XMLInputFactory factory = XMLInputFactory.newInstance();
-    private static Map<Integer, Map<Map.Entry<String, String>, VarDetail> > contentMapCache = new HashMap<>();
+    private static Map<Integer, Map<Map.Entry<String, String>, VarDetail> > contentMapCache = new ConcurrentHashMap<>();
+    private static final Pattern varIDPattern = Pattern.compile("\\b" + XML_ATTRIBUTE.VAR_ID.name() + "=\"(\\d+)\"");
+
+    /**
+     * @param xml    XML snapshot
+     * @param varIDs new ID of each VarDetail ID referred to in the snapshot
+     * @return XML snapshot referring to the new IDs
+     */
+    public static String remapVarIDs(String xml, IntUnaryOperator varIDs) {
+        Matcher matcher = varIDPattern.matcher(xml);
+        StringBuffer remapped = new StringBuffer();
+        while (matcher.find())
+            matcher.appendReplacement(remapped, XML_ATTRIBUTE.VAR_ID.name() + "=\"" + varIDs.applyAsInt(Integer.parseInt(matcher.group(1))) + "\"");
+        matcher.appendTail(remapped);
+        return remapped.toString();
+    }
 
     public static Map<Map.Entry<String, String>, VarDetail> fromXMLtoContentMap(VarDetail currentVar, String xml) {
         if(contentMapCache.containsKey(currentVar.getID()))
@@ -109,7 +130,7 @@ public class XMLParser {
 
                         intermediateVarContent.setVarValue(intermediateVarContent.getValueStoredType().cast(intermediateVarContent.getVarValue()));
                         intermediateVarContent.setVarCheckVal(intermediateVarContent.getVarValue());
-                        varDetail = ExecutionTrace.getSingleton().getVarDetail(null, intermediateVarContent, System.identityHashCode(intermediateVarContent.getVarValue()), null, true, null);
+                        varDetail = ExecutionTrace.getSingleton().getDecodedVarDetail(intermediateVarContent);
                         intermediateVarContent.clear();
                         varDetailIDFound = true;
                     }
@@ -191,7 +212,7 @@ public class XMLParser {
 
                         intermediateVarContent.setVarValue(intermediateVarContent.getValueStoredType().cast(intermediateVarContent.getVarValue()));
                         intermediateVarContent.setVarCheckVal(intermediateVarContent.getVarValue());
-                        varDetail = ExecutionTrace.getSingleton().getVarDetail(null, intermediateVarContent, System.identityHashCode(intermediateVarContent.getVarValue()), null, true, null);
+                        varDetail = ExecutionTrace.getSingleton().getDecodedVarDetail(intermediateVarContent);
                         intermediateVarContent.clear();
                         varDetailIDFound = true;
                     }
@@ -273,7 +294,7 @@ public class XMLParser {
 
                         intermediateVarContent.setVarValue(intermediateVarContent.getValueStoredType().cast(intermediateVarContent.getVarValue()));
                         intermediateVarContent.setVarCheckVal(intermediateVarContent.getVarValue());
-                        varDetail = ExecutionTrace.getSingleton().getVarDetail(null, intermediateVarContent, System.identityHashCode(intermediateVarContent.getVarValue()), null, true, null);
+                        varDetail = ExecutionTrace.getSingleton().getDecodedVarDetail(intermediateVarContent);
                         intermediateVarContent.clear();
                         varDetailIDFound = true;
                     }
@@ -382,22 +403,21 @@ public class XMLParser {
 
     private void writeObjToXML(MethodExecution execution, Object obj, LOG_ITEM process, XMLStreamWriter xmlStreamWriter, Map<Integer, Integer> hashCodeToFieldMap, String fieldName, int depth, AtomicInteger fieldIDGenerator, Map<Integer, Integer> processedHashToVarIDMap) throws XMLStreamException {
         if (depth == 1) return;
-        InstrumentResult.getSingleton().getClassFields(obj.getClass()).forEach(f -> {
-            f.setAccessible(true);
+        AccessorPlan plan = InstrumentResult.getSingleton().getAccessorPlan(obj.getClass());
+        for (int i = 0; i < plan.getFields().size(); i++) {
+            Field f = plan.getFields().get(i);
             try {
                 xmlStreamWriter.writeStartElement(XML_ELEMENT.FIELD.name());
                 xmlStreamWriter.writeAttribute(XML_ATTRIBUTE.FIELD_ID.name(), Integer.toString(fieldIDGenerator.incrementAndGet()));
                 xmlStreamWriter.writeAttribute(XML_ATTRIBUTE.FIELD_NAME.name(), f.getName());
                 xmlStreamWriter.writeAttribute(XML_ATTRIBUTE.BELONG.name(), f.getDeclaringClass().getName());
-                write(execution, f.get(obj), process, xmlStreamWriter, hashCodeToFieldMap, f.getName(), depth - 1, fieldIDGenerator, processedHashToVarIDMap, PROCESSING_OBJ_TYPE.OBJ);
+                write(execution, plan.get(i, obj), process, xmlStreamWriter, hashCodeToFieldMap, f.getName(), depth - 1, fieldIDGenerator, processedHashToVarIDMap, PROCESSING_OBJ_TYPE.OBJ);
                 xmlStreamWriter.writeEndElement();
             } catch (XMLStreamException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
             }
-        });
+        }
     }
 
     private void writeArrToXML(MethodExecution execution, Object obj, LOG_ITEM process, XMLStreamWriter xmlStreamWriter, Map<Integer, Integer> hashCodeToFieldMap, String fieldName, int depth, AtomicInteger arrIDGenerator, Map<Integer, Integer> processedHashToVarIDMap) {
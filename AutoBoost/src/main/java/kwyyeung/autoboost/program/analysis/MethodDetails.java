@@ -2,11 +2,16 @@ package kwyyeung.autoboost.program.analysis;
 
 import kwyyeung.autoboost.entity.ACCESS;
 import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.helper.Helper;
 import org.apache.commons.lang3.ClassUtils;
 import soot.SootClass;
 import soot.SootMethod;
 import soot.Type;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -28,6 +33,12 @@ public class MethodDetails {
     private final String signature;
     private final String subSignature;
     private boolean isFieldAccess = false;
+    // resolved on first use for generation
+    private volatile Class<?>[] parameterClasses = null;
+    private volatile Executable executable = null;
+    private volatile boolean executableResolved = false;
+    private volatile MethodHandle invoker = null; // takes the callee (for member methods) and an array of params, returns Object
+    private volatile TimingProfile timingProfile = null;
 
     public MethodDetails(List<Type> parameterTypes, int parameterCount, String name, Type returnSootType, ACCESS access, METHOD_TYPE type, SootClass declaringClass, String signature, String subSignature, boolean isFieldAccess) {
         this.id = methodIdGenerator.incrementAndGet();
@@ -123,6 +134,114 @@ public class MethodDetails {
         return subSignature;
     }
 
+    /**
+     * @return classes of parameters, null for those not found. The array is shared and should not be modified
+     */
+    public Class<?>[] getParameterClasses() {
+        Class<?>[] classes = parameterClasses;
+        if (classes == null) {
+            classes = parameterTypes.stream().map(Helper::sootTypeToClass).toArray(Class<?>[]::new);
+            parameterClasses = classes;
+        }
+        return classes;
+    }
+
+    /**
+     * @return latencies observed of the method, created on first use
+     */
+    public TimingProfile getTimingProfile() {
+        TimingProfile profile = timingProfile;
+        if (profile == null) {
+            synchronized (this) {
+                if (timingProfile == null) timingProfile = new TimingProfile();
+                profile = timingProfile;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @return if latencies of the method are observed, without creating its profile
+     */
+    public boolean hasTimingProfile() {
+        return timingProfile != null;
+    }
+
+    /**
+     * @return constructor / method declared by the declaring class, made accessible if possible
+     * @throws NoSuchMethodException if it cannot be found, e.g. for static initializers and field accesses
+     */
+    public Executable getExecutable() throws NoSuchMethodException {
+        if (!executableResolved) {
+            Executable resolved = null;
+            try {
+                Class<?> dClass = getdClass();
+                if (dClass != null && !isFieldAccess && type != METHOD_TYPE.STATIC_INITIALIZER)
+                    resolved = type == METHOD_TYPE.CONSTRUCTOR ? dClass.getDeclaredConstructor(getParameterClasses()) : dClass.getDeclaredMethod(name, getParameterClasses());
+            } catch (NoSuchMethodException | LinkageError ignored) {
+            }
+            if (resolved != null) {
+                try {
+                    resolved.setAccessible(true);
+                } catch (RuntimeException ignored) { // e.g. denied by security manager, invoked as accessible as it is
+                }
+            }
+            executable = resolved;
+            executableResolved = true;
+        }
+        if (executable == null) throw new NoSuchMethodException("Cannot find " + signature);
+        return executable;
+    }
+
+    /**
+     * Invoke the constructor / method via a cached method handle
+     *
+     * @param callee object to invoke a member method on, ignored for constructors and static methods
+     * @param params params of the call
+     * @return object constructed, or value returned (null for void methods)
+     * @throws InvocationTargetException wrapping anything thrown by the call
+     * @throws IllegalArgumentException if the callee or params do not match the method, in which case it is not called
+     */
+    public Object invoke(Object callee, Object[] params) throws ReflectiveOperationException {
+        MethodHandle handle = getInvoker();
+        checkArgs(handle.type().parameterCount() == 2, callee, params);
+        try {
+            if (handle.type().parameterCount() == 1)
+                return (Object) handle.invokeExact(params);
+            return (Object) handle.invokeExact(callee, params);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Check args as {@link Method#invoke} does, so that errors of adapting them to the method handle are not taken as thrown by the call
+     */
+    private void checkArgs(boolean member, Object callee, Object[] params) {
+        if (member && !getdClass().isInstance(callee))
+            throw new IllegalArgumentException((callee == null ? "null" : callee.getClass().getName()) + " is not a callee of " + signature);
+        Class<?>[] classes = getParameterClasses();
+        if ((params == null ? 0 : params.length) != classes.length)
+            throw new IllegalArgumentException("Wrong number of params for " + signature);
+        for (int i = 0; i < classes.length; i++) {
+            Object param = params[i];
+            if (param == null ? classes[i].isPrimitive() : !ClassUtils.isAssignable(param.getClass(), classes[i], true)) // unboxing and widening allowed
+                throw new IllegalArgumentException("Param " + i + " of " + signature + " cannot be " + (param == null ? "null" : param.getClass().getName()));
+        }
+    }
+
+    private MethodHandle getInvoker() throws NoSuchMethodException, IllegalAccessException {
+        MethodHandle handle = invoker;
+        if (handle == null) {
+            Executable executable = getExecutable();
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            handle = (executable instanceof Constructor ? lookup.unreflectConstructor((Constructor<?>) executable) : lookup.unreflect((Method) executable)).asFixedArity();
+            handle = handle.asType(MethodType.genericMethodType(handle.type().parameterCount())).asSpreader(Object[].class, executable.getParameterCount());
+            invoker = handle;
+        }
+        return handle;
+    }
+
 
     public boolean isFieldAccess() {
         return isFieldAccess;
@@ -0,0 +1,178 @@
+package kwyyeung.autoboost.program.analysis;
+
+import kwyyeung.autoboost.helper.Properties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import soot.*;
+import soot.jimple.*;
+import soot.tagkit.AnnotationTag;
+import soot.tagkit.VisibilityAnnotationTag;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Methods reachable from test cases by class hierarchy analysis, over bodies of classes resolved with bodies (classes processed and test classes).
+ * Besides methods called, the following are taken as reachable for test generation:
+ * constructors of PUT classes declaring or taken by reachable methods, as objects of them are created for generated tests, and
+ * methods of instantiated PUT classes overriding library methods, as library code may call them back (e.g. equals, compareTo).
+ */
+public class ReachabilityAnalysis {
+    private static final Logger logger = LogManager.getLogger(ReachabilityAnalysis.class);
+    private static final Set<String> JUNIT_FIXTURE_NAMES = new HashSet<>(Arrays.asList("setUp", "tearDown"));
+    private static final Set<String> JUNIT_FIXTURE_ANNOTATIONS = new HashSet<>(Arrays.asList("Lorg/junit/Before;", "Lorg/junit/After;", "Lorg/junit/BeforeClass;", "Lorg/junit/AfterClass;"));
+    private final Predicate<SootClass> inPUT;
+    private final FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+    private final Set<SootMethod> reachable = new HashSet<>();
+    private final Deque<SootMethod> worklist = new ArrayDeque<>();
+    private final Set<SootClass> constructed = new HashSet<>(); // classes with constructors reachable
+    private final Set<SootClass> instantiated = new HashSet<>(); // classes with callbacks reachable
+
+    /**
+     * @param inPUT if a class belongs to the PUT
+     */
+    public ReachabilityAnalysis(Predicate<SootClass> inPUT) {
+        this.inPUT = inPUT;
+    }
+
+    /**
+     * Find methods run by JUnit for the test cases: test methods, and constructors and fixtures of test classes.
+     * Test classes should be resolved with bodies, e.g. by adding them as basic classes before Soot loads classes
+     *
+     * @param testCases test cases in form of class::method
+     * @return methods to start from
+     */
+    public static List<SootMethod> getTestEntries(String[] testCases) {
+        List<SootMethod> entries = new ArrayList<>();
+        for (String testCase : testCases) {
+            String[] test = testCase.split(Properties.getClassMethSep());
+            SootClass testClass = test.length == 2 ? Scene.v().getSootClassUnsafe(test[0], false) : null;
+            if (testClass == null || testClass.isPhantom()) {
+                logger.warn("Cannot find test case " + testCase + " for reachability analysis");
+                continue;
+            }
+            for (SootClass current = testClass; current != null && !current.isPhantom(); current = current.hasSuperclass() ? current.getSuperclass() : null) {
+                for (SootMethod method : current.getMethods()) {
+                    if ((method.getName().equals(test[1]) && method.getParameterCount() == 0) || method.isConstructor() || method.isStaticInitializer() || isFixture(method))
+                        entries.add(method);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static boolean isFixture(SootMethod method) {
+        if (JUNIT_FIXTURE_NAMES.contains(method.getName()) && method.getParameterCount() == 0) return true;
+        VisibilityAnnotationTag annotations = (VisibilityAnnotationTag) method.getTag("VisibilityAnnotationTag");
+        if (annotations == null || annotations.getAnnotations() == null) return false;
+        return annotations.getAnnotations().stream().map(AnnotationTag::getType).anyMatch(JUNIT_FIXTURE_ANNOTATIONS::contains);
+    }
+
+    /**
+     * @param entries methods to start from
+     * @return all methods reachable from the entries, including the entries
+     */
+    public Set<SootMethod> getReachableMethods(Collection<SootMethod> entries) {
+        entries.forEach(this::reach);
+        while (!worklist.isEmpty()) {
+            SootMethod method = worklist.poll();
+            SootClass declaringClass = method.getDeclaringClass();
+            if (inPUT.test(declaringClass)) {
+                if (!method.isStatic()) construct(declaringClass.getType());
+                method.getParameterTypes().forEach(this::construct);
+            }
+            if (method.isConstructor()) instantiate(declaringClass);
+            if (method.isConstructor() || method.isStatic()) initialize(declaringClass);
+            if (!method.isConcrete() || declaringClass.isPhantom() || declaringClass.resolvingLevel() < SootClass.BODIES) continue;
+            Body body;
+            try {
+                body = method.retrieveActiveBody();
+            } catch (RuntimeException e) {
+                continue; // e.g. body cannot be created
+            }
+            for (Unit unit : body.getUnits())
+                visit((Stmt) unit);
+        }
+        return reachable;
+    }
+
+    private void visit(Stmt stmt) {
+        try {
+            if (stmt.containsInvokeExpr()) {
+                InvokeExpr invokeExpr = stmt.getInvokeExpr();
+                if (invokeExpr instanceof DynamicInvokeExpr) { // e.g. lambdas and method references
+                    ((DynamicInvokeExpr) invokeExpr).getBootstrapArgs().stream()
+                            .filter(a -> a instanceof MethodHandle && ((MethodHandle) a).isMethodRef())
+                            .forEach(a -> reach(((MethodHandle) a).getMethodRef().resolve()));
+                } else {
+                    SootMethod target = invokeExpr.getMethod();
+                    if (invokeExpr instanceof StaticInvokeExpr || invokeExpr instanceof SpecialInvokeExpr)
+                        reach(target);
+                    else if (!target.getDeclaringClass().isPhantom())
+                        hierarchy.resolveAbstractDispatch(target.getDeclaringClass(), target).forEach(this::reach);
+                }
+            }
+            if (stmt.containsFieldRef() && stmt.getFieldRef() instanceof StaticFieldRef)
+                initialize(stmt.getFieldRef().getField().getDeclaringClass());
+        } catch (RuntimeException e) {
+            logger.debug("Cannot resolve targets of " + stmt + ": " + e.getMessage()); // e.g. references to missing classes
+        }
+    }
+
+    private void reach(SootMethod method) {
+        if (reachable.add(method))
+            worklist.add(method);
+    }
+
+    private void initialize(SootClass clazz) {
+        if (clazz.declaresMethodByName(SootMethod.staticInitializerName))
+            reach(clazz.getMethodByName(SootMethod.staticInitializerName));
+    }
+
+    /**
+     * Reach constructors of PUT classes which objects of the type may be created from
+     */
+    private void construct(Type type) {
+        if (type instanceof ArrayType) type = ((ArrayType) type).getElementType();
+        if (!(type instanceof RefType)) return;
+        SootClass clazz = ((RefType) type).getSootClass();
+        if (clazz.isPhantom()) return;
+        for (SootClass subtype : getSubtypes(clazz)) {
+            if (!inPUT.test(subtype) || subtype.isInterface() || subtype.isAbstract() || !constructed.add(subtype)) continue;
+            subtype.getMethods().stream().filter(SootMethod::isConstructor).forEach(this::reach);
+        }
+    }
+
+    /**
+     * Reach methods of the class and its superclasses overriding methods of library superclasses / interfaces
+     */
+    private void instantiate(SootClass clazz) {
+        if (!inPUT.test(clazz) || !instantiated.add(clazz)) return;
+        Set<String> librarySubSignatures = new HashSet<>();
+        Deque<SootClass> supertypes = new ArrayDeque<>(Collections.singleton(clazz));
+        Set<SootClass> visited = new HashSet<>();
+        while (!supertypes.isEmpty()) {
+            SootClass current = supertypes.poll();
+            if (!visited.add(current) || current.isPhantom()) continue;
+            if (!inPUT.test(current))
+                current.getMethods().stream().filter(m -> !m.isStatic() && !m.isConstructor() && !m.isPrivate()).forEach(m -> librarySubSignatures.add(m.getSubSignature()));
+            if (current.hasSuperclass()) supertypes.add(current.getSuperclass());
+            supertypes.addAll(current.getInterfaces());
+        }
+        for (SootClass current = clazz; current != null && inPUT.test(current); current = current.hasSuperclass() ? current.getSuperclass() : null)
+            current.getMethods().stream().filter(m -> !m.isStatic() && librarySubSignatures.contains(m.getSubSignature())).forEach(this::reach);
+    }
+
+    private Set<SootClass> getSubtypes(SootClass clazz) {
+        Set<SootClass> subtypes = new HashSet<>();
+        Deque<SootClass> toVisit = new ArrayDeque<>();
+        toVisit.add(clazz);
+        if (clazz.isInterface()) toVisit.addAll(hierarchy.getAllImplementersOfInterface(clazz));
+        while (!toVisit.isEmpty()) {
+            SootClass current = toVisit.poll();
+            if (!subtypes.add(current) || current.isInterface()) continue;
+            toVisit.addAll(hierarchy.getSubclassesOf(current));
+        }
+        return subtypes;
+    }
+}
@@ -0,0 +1,86 @@
+package kwyyeung.autoboost.program.analysis;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies observed of a method, recorded when tests are run and refined when it is run again for test generation, with the number of its calls in a row timing out.
+ * Latencies are counted in buckets of half powers of 2 in ns, hence percentiles are rounded up to at most 1.5 times the actual latency.
+ */
+public class TimingProfile {
+    public static final int BUCKETS = 2 * 42; // up to 2^42 ns, i.e. over an hour
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicInteger timeoutsInRow = new AtomicInteger(0);
+
+    /**
+     * Record a call running for the time provided, without changing the timeouts in row, e.g. a call logged when tests are run
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * Record a call run again which returned / threw within its budget
+     */
+    public void recordCompleted(long nanos) {
+        record(nanos);
+        timeoutsInRow.set(0);
+    }
+
+    /**
+     * Record a call run again which was abandoned after its budget, so that budgets derived afterwards are larger
+     */
+    public void recordTimeout(long budgetNanos) {
+        record(budgetNanos);
+        timeoutsInRow.incrementAndGet();
+    }
+
+    public int getTimeoutsInRow() {
+        return timeoutsInRow.get();
+    }
+
+    public long getSampleCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+        return total;
+    }
+
+    /**
+     * @param percentile in (0, 1]
+     * @return upper bound of the latency in ns at the percentile, -1 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = getSampleCount();
+        if (total == 0) return -1;
+        long rank = (long) Math.ceil(total * percentile), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return upperBoundOf(i);
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Add calls counted elsewhere (e.g. in a trace store) into the bucket
+     */
+    public void addCount(int bucket, long count) {
+        if (bucket >= 0 && bucket < BUCKETS) counts.addAndGet(bucket, count);
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos <= 1) return 0;
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        int bucket = 2 * log + (int) ((nanos >>> (log - 1)) & 1); // second half if nanos >= 1.5 * 2^log
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        long base = 1L << (bucket / 2);
+        return bucket % 2 == 0 ? base + base / 2 : base * 2;
+    }
+}
@@ -0,0 +1,243 @@
+package kwyyeung.autoboost.program.execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Call relationships between executions, indexed by execution ID (IDs are small non-negative ints given out in order).
+ * Each vertex keeps its outgoing edges as packed (call order, child ID) longs sorted by call order, and its incoming edges as parent IDs,
+ * in pages of arrays so that no per-vertex or per-edge objects are needed apart from the adjacency arrays themselves.
+ * Multiple edges between the same pair of executions are allowed.
+ */
+class CallGraph {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final long[] NO_EDGES = new long[0];
+    private static final int[] NO_PARENTS = new int[0];
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private long[][][] outEdgePages = new long[16][][]; // null entry: not a vertex
+    private int[][] outSizePages = new int[16][];
+    private int[][][] inEdgePages = new int[16][][];
+    private int[][] inSizePages = new int[16][];
+    private int vertexLimit = 0; // greater than IDs of all vertices
+
+    private static long pack(int order, int child) {
+        return ((long) order << 32) | (child & 0xffffffffL);
+    }
+
+    static int orderOf(long edge) {
+        return (int) (edge >> 32);
+    }
+
+    static int childOf(long edge) {
+        return (int) edge;
+    }
+
+    synchronized boolean containsVertex(int vertex) {
+        if (vertex < 0) return false;
+        int page = vertex >>> PAGE_BITS;
+        return page < outEdgePages.length && outEdgePages[page] != null && outEdgePages[page][vertex & PAGE_MASK] != null;
+    }
+
+    synchronized void addVertex(int vertex) {
+        if (vertex < 0) throw new IllegalArgumentException("Illegal execution ID " + vertex);
+        int page = vertex >>> PAGE_BITS;
+        if (page >= outEdgePages.length) {
+            int length = Math.max(outEdgePages.length * 2, page + 1);
+            outEdgePages = Arrays.copyOf(outEdgePages, length);
+            outSizePages = Arrays.copyOf(outSizePages, length);
+            inEdgePages = Arrays.copyOf(inEdgePages, length);
+            inSizePages = Arrays.copyOf(inSizePages, length);
+        }
+        if (outEdgePages[page] == null) {
+            outEdgePages[page] = new long[PAGE_SIZE][];
+            outSizePages[page] = new int[PAGE_SIZE];
+            inEdgePages[page] = new int[PAGE_SIZE][];
+            inSizePages[page] = new int[PAGE_SIZE];
+        }
+        int index = vertex & PAGE_MASK;
+        if (outEdgePages[page][index] != null) return;
+        if (vertex >= vertexLimit) vertexLimit = vertex + 1;
+        outEdgePages[page][index] = NO_EDGES;
+        inEdgePages[page][index] = NO_PARENTS;
+    }
+
+    /**
+     * @return if the vertex has any edge, i.e. calls or is called by any execution
+     */
+    synchronized boolean hasEdges(int vertex) {
+        if (!containsVertex(vertex)) return false;
+        int page = vertex >>> PAGE_BITS, index = vertex & PAGE_MASK;
+        return outSizePages[page][index] > 0 || inSizePages[page][index] > 0;
+    }
+
+    synchronized int getVertexLimit() {
+        return vertexLimit;
+    }
+
+    /**
+     * Add edge from father to son, keeping children of father in call order (edges of the same order are kept in insertion order)
+     */
+    synchronized void addEdge(int father, int son, int order) {
+        addVertex(father);
+        addVertex(son);
+        insertOutEdge(father, pack(order, son));
+        addInEdge(son, father);
+    }
+
+    /**
+     * Move all edges of original to now and remove original, dropping edges between the two (and self loops of original).
+     * Takes time linear to the degrees of original and of its neighbours.
+     */
+    synchronized void mergeVertex(int original, int now) {
+        if (!containsVertex(original)) return;
+        addVertex(now);
+        if (original == now) return;
+        removeEdgesBetween(original, now);
+        removeEdgesBetween(now, original);
+        int oPage = original >>> PAGE_BITS, oIndex = original & PAGE_MASK;
+        long[] outEdges = outEdgePages[oPage][oIndex];
+        int outSize = outSizePages[oPage][oIndex];
+        int[] inEdges = inEdgePages[oPage][oIndex];
+        int inSize = inSizePages[oPage][oIndex];
+        // children of original become children of now
+        int kept = 0;
+        for (int i = 0; i < outSize; i++) {
+            int child = childOf(outEdges[i]);
+            if (child == original) continue;
+            replaceInEdge(child, original, now);
+            outEdges[kept++] = outEdges[i];
+        }
+        mergeOutEdges(now, outEdges, kept);
+        // parents of original point to now instead, keeping their call order
+        for (int i = 0; i < inSize; i++) {
+            int parent = inEdges[i];
+            if (parent == original) continue;
+            int pPage = parent >>> PAGE_BITS, pIndex = parent & PAGE_MASK;
+            long[] parentEdges = outEdgePages[pPage][pIndex];
+            int parentSize = outSizePages[pPage][pIndex];
+            for (int j = 0; j < parentSize; j++) {
+                if (childOf(parentEdges[j]) == original) {
+                    parentEdges[j] = pack(orderOf(parentEdges[j]), now);
+                    addInEdge(now, parent);
+                    break;
+                }
+            }
+        }
+        outEdgePages[oPage][oIndex] = null;
+        outSizePages[oPage][oIndex] = 0;
+        inEdgePages[oPage][oIndex] = null;
+        inSizePages[oPage][oIndex] = 0;
+    }
+
+    /**
+     * @return IDs of children of father in call order, excluding father itself
+     */
+    synchronized int[] getChildIDs(int father) {
+        if (!containsVertex(father)) throw new IllegalArgumentException("no such vertex in graph: " + father);
+        int page = father >>> PAGE_BITS, index = father & PAGE_MASK;
+        long[] edges = outEdgePages[page][index];
+        int size = outSizePages[page][index];
+        if (size == 0) return NO_CHILDREN;
+        int[] children = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int child = childOf(edges[i]);
+            if (child != father) children[count++] = child;
+        }
+        return count == size ? children : Arrays.copyOf(children, count);
+    }
+
+    /**
+     * @return edges from father as packed (call order, child ID), in call order
+     */
+    synchronized long[] getOutEdges(int father) {
+        if (!containsVertex(father)) throw new IllegalArgumentException("no such vertex in graph: " + father);
+        int page = father >>> PAGE_BITS, index = father & PAGE_MASK;
+        return Arrays.copyOf(outEdgePages[page][index], outSizePages[page][index]);
+    }
+
+    List<Integer> getChildren(int father) {
+        int[] children = getChildIDs(father);
+        List<Integer> results = new ArrayList<>(children.length);
+        for (int child : children)
+            results.add(child);
+        return results;
+    }
+
+    private void insertOutEdge(int vertex, long edge) {
+        int page = vertex >>> PAGE_BITS, index = vertex & PAGE_MASK;
+        long[] edges = outEdgePages[page][index];
+        int size = outSizePages[page][index];
+        if (size == edges.length) {
+            edges = Arrays.copyOf(edges, Math.max(2, size * 2));
+            outEdgePages[page][index] = edges;
+        }
+        // children are logged in call order, so the new edge almost always goes last
+        int position = size;
+        while (position > 0 && orderOf(edges[position - 1]) > orderOf(edge)) position--;
+        System.arraycopy(edges, position, edges, position + 1, size - position);
+        edges[position] = edge;
+        outSizePages[page][index] = size + 1;
+    }
+
+    private void mergeOutEdges(int vertex, long[] added, int addedSize) {
+        if (addedSize == 0) return;
+        int page = vertex >>> PAGE_BITS, index = vertex & PAGE_MASK;
+        long[] edges = outEdgePages[page][index];
+        int size = outSizePages[page][index];
+        long[] merged = new long[size + addedSize];
+        int i = 0, j = 0, k = 0;
+        while (i < size && j < addedSize)
+            merged[k++] = orderOf(added[j]) < orderOf(edges[i]) ? added[j++] : edges[i++];
+        while (i < size) merged[k++] = edges[i++];
+        while (j < addedSize) merged[k++] = added[j++];
+        outEdgePages[page][index] = merged;
+        outSizePages[page][index] = merged.length;
+    }
+
+    private void addInEdge(int vertex, int parent) {
+        int page = vertex >>> PAGE_BITS, index = vertex & PAGE_MASK;
+        int[] parents = inEdgePages[page][index];
+        int size = inSizePages[page][index];
+        if (size == parents.length) {
+            parents = Arrays.copyOf(parents, Math.max(1, size * 2));
+            inEdgePages[page][index] = parents;
+        }
+        parents[size] = parent;
+        inSizePages[page][index] = size + 1;
+    }
+
+    private void replaceInEdge(int vertex, int oldParent, int newParent) {
+        int page = vertex >>> PAGE_BITS, index = vertex & PAGE_MASK;
+        int[] parents = inEdgePages[page][index];
+        int size = inSizePages[page][index];
+        for (int i = 0; i < size; i++) {
+            if (parents[i] == oldParent) {
+                parents[i] = newParent;
+                return;
+            }
+        }
+    }
+
+    private void removeEdgesBetween(int father, int son) {
+        int fPage = father >>> PAGE_BITS, fIndex = father & PAGE_MASK;
+        long[] edges = outEdgePages[fPage][fIndex];
+        int size = outSizePages[fPage][fIndex];
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+            if (childOf(edges[i]) != son) edges[kept++] = edges[i];
+        if (kept == size) return;
+        outSizePages[fPage][fIndex] = kept;
+        int sPage = son >>> PAGE_BITS, sIndex = son & PAGE_MASK;
+        int[] parents = inEdgePages[sPage][sIndex];
+        int parentSize = inSizePages[sPage][sIndex];
+        int keptParents = 0;
+        for (int i = 0; i < parentSize; i++)
+            if (parents[i] != father) parents[keptParents++] = parents[i];
+        inSizePages[sPage][sIndex] = keptParents;
+    }
+}
@@ -0,0 +1,201 @@
+package kwyyeung.autoboost.program.execution;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * What each execution of a sealed trace reaches through its calls, computed once in post-order over the call graph:
+ * if it is / runs faulty methods, vars whose fields it accesses (directly or in its calls), and vars used as callee of its calls.
+ * Executions calling each other (possible after duplicates are merged) are summarized together as a strongly connected component.
+ * Var IDs are kept as sorted arrays, shared between executions whenever the sets are the same.
+ */
+class CallTreeSummary {
+    private static final int[] NO_VARS = new int[0];
+    private final BitSet covered = new BitSet(); // executions summarized
+    private final BitSet faulty = new BitSet();
+    private final int[][] fieldAccessedVars;
+    private final int[][] calleeVarsBelow;
+
+    private CallTreeSummary(int limit) {
+        this.fieldAccessedVars = new int[limit][];
+        this.calleeVarsBelow = new int[limit][];
+    }
+
+    /**
+     * @param graph              call graph of trace
+     * @param registry           executions of trace
+     * @param isFaultyMethodCall if an execution itself runs a faulty method
+     * @return summary of all executions in the graph
+     */
+    static CallTreeSummary build(CallGraph graph, ExecutionRegistry registry, Predicate<MethodExecution> isFaultyMethodCall) {
+        int limit = graph.getVertexLimit();
+        CallTreeSummary summary = new CallTreeSummary(limit);
+        // iterative Tarjan, components are completed after all components they call
+        int[] order = new int[limit]; // visiting order + 1, 0 if not yet visited
+        int[] low = new int[limit];
+        int[] component = new int[limit]; // component + 1, 0 if not yet completed
+        int[] tarjanStack = new int[16];
+        int tarjanSize = 0;
+        int[] frameVertex = new int[16];
+        int[][] frameChildren = new int[16][];
+        int[] framePosition = new int[16];
+        int frameSize = 0;
+        int visited = 0, components = 0;
+        VarSetBuilder fieldBuilder = new VarSetBuilder(), calleeBuilder = new VarSetBuilder();
+        for (int root = 0; root < limit; root++) {
+            if (order[root] != 0 || !graph.containsVertex(root)) continue;
+            order[root] = low[root] = ++visited;
+            tarjanStack[tarjanSize++] = root;
+            frameVertex[0] = root;
+            frameChildren[0] = graph.getChildIDs(root);
+            framePosition[0] = 0;
+            frameSize = 1;
+            while (frameSize > 0) {
+                int top = frameSize - 1;
+                int vertex = frameVertex[top];
+                int[] children = frameChildren[top];
+                if (framePosition[top] < children.length) {
+                    int child = children[framePosition[top]++];
+                    if (order[child] == 0) {
+                        order[child] = low[child] = ++visited;
+                        if (tarjanSize == tarjanStack.length) tarjanStack = Arrays.copyOf(tarjanStack, tarjanSize * 2);
+                        tarjanStack[tarjanSize++] = child;
+                        if (frameSize == frameVertex.length) {
+                            frameVertex = Arrays.copyOf(frameVertex, frameSize * 2);
+                            frameChildren = Arrays.copyOf(frameChildren, frameSize * 2);
+                            framePosition = Arrays.copyOf(framePosition, frameSize * 2);
+                        }
+                        frameVertex[frameSize] = child;
+                        frameChildren[frameSize] = graph.getChildIDs(child);
+                        framePosition[frameSize] = 0;
+                        frameSize++;
+                    } else if (component[child] == 0) low[vertex] = Math.min(low[vertex], order[child]);
+                    continue;
+                }
+                frameChildren[top] = null;
+                frameSize--;
+                if (frameSize > 0) low[frameVertex[frameSize - 1]] = Math.min(low[frameVertex[frameSize - 1]], low[vertex]);
+                if (low[vertex] != order[vertex]) continue;
+                // vertex is the root of a component, its members are on top of the Tarjan stack
+                int start = tarjanSize;
+                do {
+                    start--;
+                    component[tarjanStack[start]] = components + 1;
+                } while (tarjanStack[start] != vertex);
+                summary.summarize(graph, registry, isFaultyMethodCall, tarjanStack, start, tarjanSize, component, components + 1, fieldBuilder, calleeBuilder);
+                tarjanSize = start;
+                components++;
+            }
+        }
+        return summary;
+    }
+
+    private void summarize(CallGraph graph, ExecutionRegistry registry, Predicate<MethodExecution> isFaultyMethodCall, int[] members, int from, int to, int[] component, int current,
+                           VarSetBuilder fieldBuilder, VarSetBuilder calleeBuilder) {
+        boolean containsFaulty = false;
+        fieldBuilder.clear();
+        calleeBuilder.clear();
+        for (int i = from; i < to; i++) {
+            int member = members[i];
+            MethodExecution execution = registry.get(member);
+            if (execution != null) {
+                if (!containsFaulty && isFaultyMethodCall.test(execution)) containsFaulty = true;
+                if (execution.getMethodInvoked().isFieldAccess() && execution.getCalleeId() != -1)
+                    fieldBuilder.add(execution.getCalleeId());
+            }
+            for (int child : graph.getChildIDs(member)) {
+                MethodExecution childExecution = registry.get(child);
+                if (childExecution != null && childExecution.getCalleeId() != -1) calleeBuilder.add(childExecution.getCalleeId());
+                if (component[child] == current) continue;
+                containsFaulty |= faulty.get(child);
+                fieldBuilder.addAll(fieldAccessedVars[child]);
+                calleeBuilder.addAll(calleeVarsBelow[child]);
+            }
+        }
+        int[] fieldVars = fieldBuilder.build();
+        int[] calleeVars = calleeBuilder.build();
+        for (int i = from; i < to; i++) {
+            int member = members[i];
+            covered.set(member);
+            if (containsFaulty) faulty.set(member);
+            fieldAccessedVars[member] = fieldVars;
+            calleeVarsBelow[member] = calleeVars;
+        }
+    }
+
+    /**
+     * @param exeID ID of execution
+     * @return if the execution was in the trace when summarized
+     */
+    boolean covers(int exeID) {
+        return exeID >= 0 && covered.get(exeID);
+    }
+
+    /**
+     * @return if the execution is / runs faulty methods
+     */
+    boolean containsFaulty(int exeID) {
+        return faulty.get(exeID);
+    }
+
+    /**
+     * @return if the execution or its calls access fields of the var
+     */
+    boolean hasFieldAccess(int exeID, int varID) {
+        return Arrays.binarySearch(fieldAccessedVars[exeID], varID) >= 0;
+    }
+
+    /**
+     * @return if any var provided is used as callee of calls made under the execution
+     */
+    boolean hasUsageAsCallee(int exeID, Set<Integer> varIDs) {
+        int[] vars = calleeVarsBelow[exeID];
+        if (varIDs.size() < vars.length) {
+            for (int varID : varIDs)
+                if (Arrays.binarySearch(vars, varID) >= 0) return true;
+            return false;
+        }
+        for (int varID : vars)
+            if (varIDs.contains(varID)) return true;
+        return false;
+    }
+
+    /**
+     * Builds a sorted set of var IDs, reusing the largest set added if nothing else is new
+     */
+    private static class VarSetBuilder {
+        private int[] buffer = new int[16];
+        private int size = 0;
+        private int[] largest = null;
+
+        void clear() {
+            size = 0;
+            largest = null;
+        }
+
+        void add(int varID) {
+            if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+            buffer[size++] = varID;
+        }
+
+        void addAll(int[] varIDs) {
+            if (varIDs.length == 0) return;
+            if (largest == null || varIDs.length > largest.length) largest = varIDs;
+            if (size + varIDs.length > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + varIDs.length));
+            System.arraycopy(varIDs, 0, buffer, size, varIDs.length);
+            size += varIDs.length;
+        }
+
+        int[] build() {
+            if (size == 0) return NO_VARS;
+            Arrays.sort(buffer, 0, size);
+            int distinct = 1;
+            for (int i = 1; i < size; i++)
+                if (buffer[i] != buffer[distinct - 1]) buffer[distinct++] = buffer[i];
+            if (largest != null && largest.length == distinct) return largest;
+            return Arrays.copyOf(buffer, distinct);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package kwyyeung.autoboost.program.execution;
+
+import kwyyeung.autoboost.application.AutoBoost;
+import kwyyeung.autoboost.application.PROGRAM_STATE;
+import kwyyeung.autoboost.entity.CAPTURE_MODE;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Queue of logging events used in async capture mode.
+ * Instrumented threads only record the method called, execution ID, references of values and a shallow capture of the values (see {@link SnapshotParser#captureElements}),
+ * while a single consumer thread builds VarDetails and the call graph in the order events are recorded.
+ * Hence values are snapshotted as they were when the event happened, except for objects nested in them. Instrumented threads are blocked when the queue is full.
+ */
+class CaptureQueue {
+    private static final Logger logger = LogManager.getLogger(CaptureQueue.class);
+    private static final CaptureQueue singleton = new CaptureQueue();
+    private final boolean enabled;
+    private final BlockingQueue<Event> queue;
+    private final Set<Integer> skippedExeIDs = new HashSet<>(); // only accessed by consumer
+    private volatile Thread consumer = null;
+
+    private CaptureQueue() {
+        Properties properties = Properties.getSingleton();
+        this.enabled = properties.getCaptureMode().equals(CAPTURE_MODE.ASYNC);
+        this.queue = enabled ? new ArrayBlockingQueue<>(properties.getCaptureBufferSize()) : null;
+    }
+
+    static CaptureQueue getSingleton() {
+        return singleton;
+    }
+
+    /**
+     * @return if events from the current thread should be queued instead of processed directly
+     */
+    boolean isCapturing() {
+        return enabled && AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_EXECUTION);
+    }
+
+    /**
+     * @return if the current thread is the consumer, i.e. methods are called while capturing values
+     */
+    boolean isConsumerThread() {
+        return enabled && Thread.currentThread() == consumer;
+    }
+
+    int submitStart(int methodId, Object callee, Object params, long threadID) {
+        int exeID = ExecutionLogger.getNewExeID();
+        Event event = new Event(EVENT_TYPE.START, methodId, exeID, callee, params instanceof Object[] ? ((Object[]) params).clone() : params, threadID);
+        event.capture(callee);
+        if (event.value instanceof Object[])
+            for (Object param : (Object[]) event.value)
+                event.capture(param);
+        submit(event);
+        return exeID;
+    }
+
+    void submitEnd(int exeID, Object callee, Object returnVal, long threadID) {
+        Event event = new Event(EVENT_TYPE.END, -1, exeID, callee, returnVal, threadID);
+        event.capture(callee);
+        event.capture(returnVal);
+        submit(event);
+    }
+
+    void submitFieldAccess(int methodId, Object instance, Object returnVal, long threadID) {
+        Event event = new Event(EVENT_TYPE.FIELD_ACCESS, methodId, -1, instance, returnVal, threadID);
+        event.capture(instance);
+        event.capture(returnVal);
+        submit(event);
+    }
+
+    void submitException(Object exception, long threadID) {
+        submit(new Event(EVENT_TYPE.EXCEPTION, -1, -1, null, exception, threadID));
+    }
+
+    /**
+     * Block until all events queued before are processed
+     */
+    void flush() {
+        if (!enabled || consumer == null) return;
+        Event barrier = new Event(EVENT_TYPE.FLUSH, -1, -1, null, null, -1);
+        submit(barrier);
+        try {
+            barrier.processed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Event event) {
+        startConsumer();
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while queuing " + event.type + " event, event dropped");
+        }
+    }
+
+    private synchronized void startConsumer() {
+        if (consumer != null) return;
+        consumer = new Thread(this::consume, "AutoBoost-capture");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    private void consume() {
+        while (true) {
+            Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            SnapshotParser.useCapturedElements(event.capturedElements);
+            try {
+                process(event);
+            } catch (Throwable t) {
+                logger.error("Fail to process " + event.type + " event of execution " + event.exeID + "\t" + t);
+                if (event.type == EVENT_TYPE.START) { // pushed before failing, popped so that its end must not be applied
+                    ExecutionLogger.discardStart(event.exeID, event.threadID);
+                    skippedExeIDs.add(event.exeID);
+                }
+            } finally {
+                SnapshotParser.useCapturedElements(null);
+            }
+        }
+    }
+
+    private void process(Event event) throws ClassNotFoundException {
+        switch (event.type) {
+            case START:
+                if (ExecutionLogger.startLog(event.methodId, event.callee, event.value, event.threadID, event.exeID, event.time) == -1)
+                    skippedExeIDs.add(event.exeID);
+                break;
+            case END:
+                if (!skippedExeIDs.remove(event.exeID))
+                    ExecutionLogger.endLog(event.exeID, event.callee, event.value, event.threadID, event.time);
+                break;
+            case FIELD_ACCESS:
+                ExecutionLogger.accessField(event.methodId, event.callee, event.value, event.threadID);
+                break;
+            case EXCEPTION:
+                ExecutionLogger.recordException(event.value, event.threadID);
+                break;
+            case FLUSH:
+                skippedExeIDs.clear(); // executions not ended by now will be discarded with the stacks
+                event.processed.countDown();
+                break;
+        }
+    }
+
+    private enum EVENT_TYPE {
+        START, END, FIELD_ACCESS, EXCEPTION, FLUSH
+    }
+
+    private static class Event {
+        private final EVENT_TYPE type;
+        private final int methodId;
+        private final int exeID;
+        private final Object callee;
+        private final Object value; // params, return value or exception, depending on type
+        private final long threadID;
+        private final long time = System.nanoTime(); // when the event happened on the thread submitting it
+        private final CountDownLatch processed;
+        private Map<Object, Object[]> capturedElements = null; // by identity, null if nothing is captured
+
+        private Event(EVENT_TYPE type, int methodId, int exeID, Object callee, Object value, long threadID) {
+            this.type = type;
+            this.methodId = methodId;
+            this.exeID = exeID;
+            this.callee = callee;
+            this.value = value;
+            this.threadID = threadID;
+            this.processed = type == EVENT_TYPE.FLUSH ? new CountDownLatch(1) : null;
+        }
+
+        /**
+         * Capture the elements of the value on the thread submitting the event, the value is read when the event is processed if it cannot be captured
+         */
+        private void capture(Object value) {
+            if (value == null || (capturedElements != null && capturedElements.containsKey(value))) return;
+            Object[] elements;
+            try {
+                elements = SnapshotParser.captureElements(value);
+            } catch (RuntimeException e) { // e.g. modified by another thread, read again when processed
+                return;
+            }
+            if (elements == null) return;
+            if (capturedElements == null) capturedElements = new IdentityHashMap<>();
+            capturedElements.put(value, elements);
+        }
+    }
+}
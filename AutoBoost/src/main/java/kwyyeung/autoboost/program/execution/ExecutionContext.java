@@ -0,0 +1,142 @@
+package kwyyeung.autoboost.program.execution;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logging state of a thread: executions being logged on it, if logging is being skipped and calls run under tests on its stack.
+ * Only accessed by the thread logging for it, i.e. the thread itself, or the capture consumer thread in async capture mode (see {@link CaptureQueue}),
+ * except from the stack snapshot, hence not synchronized.
+ */
+class ExecutionContext {
+    private final long threadID;
+    private final ExecutionRegistry executionRegistry;
+    private MethodExecution[] stack = new MethodExecution[16];
+    private int size = 0;
+    private boolean skipping = false;
+    private final Map<ExecutionTrace.ExecutionKey, Integer> testedCallsOnStack = new HashMap<>(); // calls run under tests on stack, with their count
+    private int epoch;
+
+    ExecutionContext(long threadID, int epoch, ExecutionRegistry executionRegistry) {
+        this.threadID = threadID;
+        this.executionRegistry = executionRegistry;
+        this.epoch = epoch;
+    }
+
+    long getThreadID() {
+        return threadID;
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Discard all executions and states kept, used when the context belongs to an outdated epoch
+     *
+     * @param epoch epoch the context now belongs to
+     */
+    void reset(int epoch) {
+        for (int i = 0; i < size; i++)
+            executionRegistry.remove(stack[i], ExecutionRegistry.IN_FLIGHT);
+        Arrays.fill(stack, 0, size, null);
+        this.size = 0;
+        this.skipping = false;
+        this.testedCallsOnStack.clear();
+        this.epoch = epoch;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(MethodExecution execution) {
+        if (size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+        stack[size++] = execution;
+        executionRegistry.add(execution, ExecutionRegistry.IN_FLIGHT);
+    }
+
+    /**
+     * @return latest execution on stack, null if there is none
+     */
+    MethodExecution peek() {
+        return size == 0 ? null : stack[size - 1];
+    }
+
+    /**
+     * @param index position of execution from the bottom of stack
+     * @return execution at the position provided
+     */
+    MethodExecution get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of stack of size " + size);
+        return stack[index];
+    }
+
+    MethodExecution pop() {
+        if (size == 0) throw new IllegalStateException("Fail to pop from empty execution stack");
+        MethodExecution execution = stack[--size];
+        stack[size] = null;
+        executionRegistry.remove(execution, ExecutionRegistry.IN_FLIGHT);
+        removeTestedCall(execution);
+        return execution;
+    }
+
+    /**
+     * Pop executions until the one with the ID provided is popped. Nothing is popped if the execution is not on stack
+     *
+     * @param exeID ID of execution to pop
+     * @return if the execution is found and popped
+     */
+    boolean popTo(int exeID) {
+        int index = size - 1;
+        while (index >= 0 && stack[index].getID() != exeID) index--;
+        if (index < 0) return false;
+        while (size > index) pop();
+        return true;
+    }
+
+    boolean isSkipping() {
+        return skipping;
+    }
+
+    void setSkipping(boolean skipping) {
+        this.skipping = skipping;
+    }
+
+    /**
+     * Record the call of the execution as on stack if it is run under test. Must be called after its callee and params are set.
+     *
+     * @param execution execution on stack
+     */
+    void addTestedCall(MethodExecution execution) {
+        if (execution.getTest() == null) return;
+        testedCallsOnStack.merge(ExecutionTrace.ExecutionKey.ofCall(execution), 1, Integer::sum);
+    }
+
+    private void removeTestedCall(MethodExecution execution) {
+        if (execution.getTest() == null) return;
+        testedCallsOnStack.computeIfPresent(ExecutionTrace.ExecutionKey.ofCall(execution), (k, v) -> v == 1 ? null : v - 1);
+    }
+
+    /**
+     * @param execution execution under check
+     * @return if an execution on stack was run under test with the same method, callee and params as the one provided
+     */
+    boolean hasTestedCall(MethodExecution execution) {
+        return testedCallsOnStack.containsKey(ExecutionTrace.ExecutionKey.ofCall(execution));
+    }
+
+    /**
+     * @return copy of executions on stack, from the bottom
+     */
+    List<MethodExecution> snapshot() {
+        MethodExecution[] current = stack;
+        return Arrays.asList(Arrays.copyOf(current, Math.min(size, current.length)));
+    }
+}
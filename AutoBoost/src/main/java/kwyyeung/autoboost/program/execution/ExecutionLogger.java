@@ -23,11 +23,13 @@ import java.util.stream.IntStream;
 
 public class ExecutionLogger {
     private static final Logger logger = LogManager.getLogger(ExecutionLogger.class);
-    private static final ConcurrentHashMap<Long, Stack<MethodExecution>> threadExecutingMap = new ConcurrentHashMap<Long, Stack<MethodExecution>>();
+    private static final ConcurrentHashMap<Long, ExecutionContext> threadContextMap = new ConcurrentHashMap<>();
+    private static final ThreadLocal<ExecutionContext> currentContext = new ThreadLocal<>();
+    private static final AtomicInteger contextEpoch = new AtomicInteger(0); // contexts of previous epochs are outdated and reset on access
     private static final AtomicInteger exeIDGenerator = new AtomicInteger(0);
     private static final InstrumentResult instrumentResult = InstrumentResult.getSingleton();
     private static final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
-    private static final HashMap<Long, Boolean> threadSkippingMap = new HashMap<Long, Boolean>();
+    private static final CaptureQueue captureQueue = CaptureQueue.getSingleton();
 
 
     /**
@@ -39,25 +41,26 @@ public class ExecutionLogger {
      * @return true if the current operation and value should not be logged, false if they should
      */
     private static boolean returnNow(int methodId, long threadID) throws ClassNotFoundException {
-        if (getCurrentExecuting(threadID).size() == 0) {
-            setThreadSkippingState(threadID, false);
+        ExecutionContext context = getContext(threadID);
+        if (context.isEmpty()) {
+            context.setSkipping(false);
             return false;
         }
         if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_GENERATION)) return true;
         if (Properties.getSingleton().getFaultyFuncIds().contains(methodId)) return false;
-        MethodExecution latestExecution = getLatestExecution(threadID);
+        MethodExecution latestExecution = context.peek();
         if (latestExecution == null) {
-            setThreadSkippingState(threadID, false);
+            context.setSkipping(false);
             return false;
         }
         MethodDetails latestDetails = latestExecution.getMethodInvoked();
 
-        if (!getThreadSkippingState(threadID) && latestDetails.getType().equals(METHOD_TYPE.CONSTRUCTOR)) {
+        if (!context.isSkipping() && latestDetails.getType().equals(METHOD_TYPE.CONSTRUCTOR)) {
             MethodDetails current = instrumentResult.getMethodDetailByID(methodId);
-            if (current.getType().equals(METHOD_TYPE.CONSTRUCTOR) && current.getDeclaringClass() != latestDetails.getDeclaringClass() && !ClassUtils.getAllSuperclasses(Class.forName(latestDetails.getDeclaringClass().getName())).contains(Class.forName(current.getDeclaringClass().getName()))) {
+            if (current.getType().equals(METHOD_TYPE.CONSTRUCTOR) && current.getDeclaringClass() != latestDetails.getDeclaringClass() && !instrumentResult.isSuperclass(latestDetails.getDeclaringClass().getName(), current.getDeclaringClass().getName())) {
                 return false;
             } else return current.getType().equals(METHOD_TYPE.CONSTRUCTOR);
-        } else return getThreadSkippingState(threadID);
+        } else return context.isSkipping();
     }
 
     private static Class<?> getInstanceClass(Object instance) {
@@ -67,13 +70,20 @@ public class ExecutionLogger {
 
     // both instance and returnVal must be Object or else they would not be logged in the first place
     public static void logFieldAccess(int methodId, Object instance, Object returnVal, long threadID) throws ClassNotFoundException {
-        if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_LOG) || AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.PROCESSING) || returnNow(methodId, threadID))
+        if (!AutoBoost.isLoggingEnabled() || captureQueue.isConsumerThread())
+            return;
+        if (captureQueue.isCapturing()) captureQueue.submitFieldAccess(methodId, instance, returnVal, threadID);
+        else accessField(methodId, instance, returnVal, threadID);
+    }
+
+    static void accessField(int methodId, Object instance, Object returnVal, long threadID) throws ClassNotFoundException {
+        if (!AutoBoost.isLoggingEnabled() || returnNow(methodId, threadID))
             return;
         MethodDetails details = instrumentResult.getMethodDetailByID(methodId);
         MethodExecution newExecution = new MethodExecution(getNewExeID(), details);
-        Stack<MethodExecution> currentlyExecuting = getCurrentExecuting(threadID);
+        ExecutionContext context = getContext(threadID);
         // set test as null if static initializer is running
-        if (currentlyExecuting.size() > 0 && currentlyExecuting.peek().getTest() == null) newExecution.setTest(null);
+        if (!context.isEmpty() && context.peek().getTest() == null) newExecution.setTest(null);
         updateExecutionRelationships(threadID, newExecution);
         // not putting in thread stack as it is instant access
 
@@ -87,15 +97,28 @@ public class ExecutionLogger {
     }
 
     public static int logStart(int methodId, Object callee, Object params, long threadID) throws ClassNotFoundException {
-        if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_LOG) || AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.PROCESSING) || returnNow(methodId, threadID))
+        if (!AutoBoost.isLoggingEnabled() || captureQueue.isConsumerThread())
+            return -1;
+        if (captureQueue.isCapturing()) return captureQueue.submitStart(methodId, callee, params, threadID);
+        return startLog(methodId, callee, params, threadID, -1, System.nanoTime());
+    }
+
+    /**
+     * @param exeID ID assigned to the execution when it was queued, -1 if a new ID should be assigned
+     * @param time  when the call started on the thread running it, in ns
+     * @return ID of execution started, -1 if it is not logged
+     */
+    static int startLog(int methodId, Object callee, Object params, long threadID, int exeID, long time) throws ClassNotFoundException {
+        if (!AutoBoost.isLoggingEnabled() || returnNow(methodId, threadID))
             return -1;
         MethodDetails details = instrumentResult.getMethodDetailByID(methodId);
-        MethodExecution newExecution = new MethodExecution(getNewExeID(), details);
-        Stack<MethodExecution> currentExecuting = getCurrentExecuting(threadID);
-        if (details.getType().equals(METHOD_TYPE.STATIC_INITIALIZER) || (currentExecuting.size() > 0 && currentExecuting.peek().getTest() == null))
+        MethodExecution newExecution = new MethodExecution(exeID == -1 ? getNewExeID() : exeID, details);
+        newExecution.setStartTime(time);
+        ExecutionContext context = getContext(threadID);
+        if (details.getType().equals(METHOD_TYPE.STATIC_INITIALIZER) || (!context.isEmpty() && context.peek().getTest() == null))
             newExecution.setTest(null);
         updateExecutionRelationships(threadID, newExecution);
-        addExecutionToThreadStack(threadID, newExecution);
+        push(context, newExecution);
         if (details.getType().equals(METHOD_TYPE.MEMBER)) // i.e. have callee
             setVarForExecution(newExecution, LOG_ITEM.CALL_THIS, executionTrace.getVarDetail(newExecution, getInstanceClass(callee), callee, LOG_ITEM.CALL_THIS, false));
         if (details.getParameterCount() > 0) {
@@ -112,23 +135,42 @@ public class ExecutionLogger {
 
         }
         updateSkipping(newExecution, threadID);
+        context.addTestedCall(newExecution);
 //        logger.debug("started " + newExecution.toDetailedString() + "\t" + threadID);
         if (!AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_EXECUTION)) newExecution.setCanTest(false);
         return newExecution.getID();
     }
 
 
+    /**
+     * Pop an execution whose start failed to be logged, so that later calls on the thread are not taken as its children. Nothing is popped if it is not on stack
+     */
+    static void discardStart(int exeID, long threadID) {
+        ExecutionContext context = getContext(threadID);
+        if (context.popTo(exeID)) releaseIfEmpty(context);
+    }
+
     public static void logEnd(int executionID, Object callee, Object returnVal, long threadID) throws ClassNotFoundException {
-        if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_LOG) || AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.PROCESSING))
+        if (!AutoBoost.isLoggingEnabled())
             return;
         if (executionID == -1) return;
-        setThreadSkippingState(threadID, false);
-        MethodExecution execution = getLatestExecution(threadID);
+        if (captureQueue.isCapturing()) captureQueue.submitEnd(executionID, callee, returnVal, threadID);
+        else endLog(executionID, callee, returnVal, threadID, System.nanoTime());
+    }
+
+    static void endLog(int executionID, Object callee, Object returnVal, long threadID, long time) throws ClassNotFoundException {
+        if (!AutoBoost.isLoggingEnabled())
+            return;
+        if (executionID == -1) return;
+        ExecutionContext context = getContext(threadID);
+        context.setSkipping(false);
+        MethodExecution execution = context.peek();
         if (execution == null) return;
         if (executionID != execution.getID()) {
             if (instrumentResult.isLibMethod(execution.getMethodInvoked().getId())) {
                 while (instrumentResult.isLibMethod(execution.getMethodInvoked().getId()) && execution.getID() != executionID) {
-                    getCurrentExecuting(threadID).pop();
+                    context.pop();
+                    releaseIfEmpty(context);
                     executionTrace.changeVertex(execution.getID(), getLatestExecution(threadID).getID());
                     execution = getLatestExecution(threadID);
                 }
@@ -146,9 +188,11 @@ public class ExecutionLogger {
                     execution = getLatestExecution(threadID);
                 }
             }
-            logEnd(executionID, callee, returnVal, threadID);
+            endLog(executionID, callee, returnVal, threadID, time);
         } else {
             MethodDetails details = execution.getMethodInvoked();
+            if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_EXECUTION) && !instrumentResult.isLibMethod(details.getId()))
+                details.getTimingProfile().record(time - execution.getStartTime()); // including time logging the call, for budgets of running it again
             if (!details.getReturnSootType().equals(VoidType.v()) && !(instrumentResult.isLibMethod(details.getId()) && returnVal == null)) {
                 if (details.getReturnSootType() instanceof soot.PrimType) {
                     setVarIDForExecution(execution, LOG_ITEM.RETURN_ITEM, executionTrace.getVarDetail(execution, details.getReturnType(), returnVal, LOG_ITEM.RETURN_ITEM, false).getID());
@@ -165,18 +209,27 @@ public class ExecutionLogger {
     }
 
     public static void logException(Object exception, long threadID) {
-        if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.TEST_LOG) || AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.PROCESSING))
+        if (!AutoBoost.isLoggingEnabled() || captureQueue.isConsumerThread())
+            return;
+        if (captureQueue.isCapturing()) captureQueue.submitException(exception, threadID);
+        else recordException(exception, threadID);
+    }
+
+    static void recordException(Object exception, long threadID) {
+        if (!AutoBoost.isLoggingEnabled())
             return;
+        ExecutionContext context = getContext(threadID);
         getLatestExecution(threadID).setExceptionClass(exception.getClass());
         if (instrumentResult.isLibMethod(getLatestExecution(threadID).getMethodInvoked().getId())) {
-            getCurrentExecuting(threadID).get(getCurrentExecuting(threadID).size() - 2).setExceptionClass(exception.getClass());
+            context.get(context.size() - 2).setExceptionClass(exception.getClass());
         }
     }
 
     public static MethodExecution getLatestExecution(long threadID) {
-        if (!threadExecutingMap.containsKey(threadID) || threadExecutingMap.get(threadID).empty())
+        MethodExecution latest = getContext(threadID).peek();
+        if (latest == null)
             throw new RuntimeException("Fail to get latest execution on thread");
-        return threadExecutingMap.get(threadID).peek();
+        return latest;
     }
 
     /**
@@ -184,10 +237,10 @@ public class ExecutionLogger {
      */
     private static void endLogMethod(long threadID, MethodExecution execution) {
 //        logger.debug("ended method " + execution.toDetailedString());
-        Optional<MethodExecution> duplicate = executionTrace.getAllMethodExecs().values().stream().filter(execution::sameContent).findFirst();
-        if (!AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.CONSTRUCTOR_SEARCH) && duplicate.isPresent()) {
-            executionTrace.replacePossibleDefExe(execution, duplicate.get());
-            executionTrace.changeVertex(execution.getID(), duplicate.get().getID());
+        MethodExecution duplicate = executionTrace.getSameContentExecution(execution);
+        if (!AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.CONSTRUCTOR_SEARCH) && duplicate != null) {
+            executionTrace.replacePossibleDefExe(execution, duplicate);
+            executionTrace.changeVertex(execution.getID(), duplicate.getID());
         } else {
             executionTrace.updateFinishedMethodExecution(execution);
         }
@@ -222,55 +275,85 @@ public class ExecutionLogger {
     }
 
     public static void clearExecutingStack() {
-        threadExecutingMap.clear();
+        int epoch = contextEpoch.getAndIncrement();
+        // executions on outdated stacks can no longer be looked up, even before their contexts are reset
+        threadContextMap.values().stream().filter(c -> c.getEpoch() == epoch).flatMap(c -> c.snapshot().stream()).filter(Objects::nonNull)
+                .forEach(e -> executionTrace.getExecutionRegistry().remove(e, ExecutionRegistry.IN_FLIGHT));
+        // e.g. of threads ended while running calls, contexts still in use are registered again once executions are pushed
+        threadContextMap.values().removeIf(c -> c.getEpoch() == epoch);
+    }
+
+    /**
+     * Wait until all events queued in async capture mode are processed, no-op in sync mode
+     */
+    public static void flush() {
+        captureQueue.flush();
     }
 
     private static void updateSkipping(MethodExecution execution, long threadID) {
-        if (getThreadSkippingState(threadID)) return;
-        Stack<MethodExecution> executionStack = getCurrentExecuting(threadID);
-        if ((executionStack.size() > 1 && executionStack.stream().limit(executionStack.size() - 1).filter(e -> e.getMethodInvoked().equals(execution.getMethodInvoked())).anyMatch(e -> e.getTest() != null && e.sameCalleeParamNMethod(execution))) || executionTrace.getAllMethodExecs().values().stream()
-                .filter(e -> e.getMethodInvoked().equals(execution.getMethodInvoked()))
-                .anyMatch(e -> e.getTest() != null && e.sameCalleeParamNMethod(execution))) {
-            setThreadSkippingState(threadID, true);
+        ExecutionContext context = getContext(threadID);
+        if (context.isSkipping()) return;
+        // the execution itself is not yet counted in the calls on stack
+        if (context.hasTestedCall(execution) || executionTrace.hasTestedCall(execution)) {
+            context.setSkipping(true);
 //            logger.debug("setting skipping as true since " + execution.toDetailedString());
         }
     }
 
     private static void updateExecutionRelationships(long threadID, MethodExecution execution) {
-        Stack<MethodExecution> executionStack = getCurrentExecuting(threadID);
+        MethodExecution latest = getContext(threadID).peek();
         executionTrace.addMethodExecution(execution);
-        if (executionStack.size() != 0)
-            executionTrace.addMethodRelationship(executionStack.peek().getID(), execution.getID(), executionStack.peek().getNextChildOrder());
-    }
-
-    private static void addExecutionToThreadStack(long threadID, MethodExecution execution) {
-        threadExecutingMap.putIfAbsent(threadID, new Stack<>());
-        threadExecutingMap.get(threadID).push(execution);
+        if (latest != null)
+            executionTrace.addMethodRelationship(latest.getID(), execution.getID(), latest.getNextChildOrder());
     }
 
     private static void removeExecutionFromStack(long threadID, MethodExecution execution) {
-        threadExecutingMap.get(threadID).removeIf(e -> e.getID() == execution.getID());
-        if (threadExecutingMap.get(threadID).size() == 0) threadExecutingMap.remove(threadID);
+        ExecutionContext context = getContext(threadID);
+        context.popTo(execution.getID());
+        releaseIfEmpty(context);
     }
 
-    private static Stack<MethodExecution> getCurrentExecuting(long threadID) {
-        threadExecutingMap.putIfAbsent(threadID, new Stack<>());
-        return threadExecutingMap.get(threadID);
+    /**
+     * Push the execution onto the stack of the context, registering the context so that clearExecutingStack can reach it
+     */
+    private static void push(ExecutionContext context, MethodExecution execution) {
+        if (context.isEmpty()) threadContextMap.put(context.getThreadID(), context);
+        context.push(execution);
     }
 
-    private static boolean getThreadSkippingState(long threadID) {
-        threadSkippingMap.putIfAbsent(threadID, false);
-        return threadSkippingMap.get(threadID);
+    /**
+     * Unregister the context once its stack is empty, so that contexts of threads no longer logging are not kept
+     */
+    private static void releaseIfEmpty(ExecutionContext context) {
+        if (context.isEmpty()) threadContextMap.remove(context.getThreadID(), context);
     }
 
-    private static void setThreadSkippingState(long threadID, boolean val) {
-        threadSkippingMap.put(threadID, val);
+    /**
+     * Get the logging context of a thread. Contexts are only registered while executions are on their stacks, an empty context is created if there is none.
+     * Contexts outdated by clearExecutingStack are reset before returned.
+     *
+     * @param threadID ID of thread
+     * @return logging context of the thread
+     */
+    private static ExecutionContext getContext(long threadID) {
+        ExecutionContext context = currentContext.get();
+        if (context == null || context.getThreadID() != threadID) {
+            context = threadContextMap.get(threadID);
+            if (context == null) context = new ExecutionContext(threadID, contextEpoch.get(), executionTrace.getExecutionRegistry());
+            if (Thread.currentThread().getId() == threadID) currentContext.set(context);
+        }
+        int epoch = contextEpoch.get();
+        if (context.getEpoch() != epoch) context.reset(epoch);
+        return context;
     }
 
-    static List<MethodExecution> getAllExecuting() {
-        return threadExecutingMap.values().stream().flatMap(v -> new ArrayList<>(v).stream()).collect(Collectors.toList());
-    }
 
+    /**
+     * Make sure IDs given out afterwards are greater than the one provided, e.g. for executions loaded from a trace store
+     */
+    static void reserveExeIDs(int lastID) {
+        exeIDGenerator.accumulateAndGet(lastID, Math::max);
+    }
 
     /**
      * @return new ID for MethodExecution
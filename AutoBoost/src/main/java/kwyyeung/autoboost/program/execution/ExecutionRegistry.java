@@ -0,0 +1,101 @@
+package kwyyeung.autoboost.program.execution;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Executions that can be looked up by ID, i.e. those being logged, finished, or kept for constructing classes.
+ * Executions are stored in pages of arrays indexed by ID (IDs are small non-negative ints given out in order), each with flags telling why it is kept,
+ * and dropped once no flag is left.
+ */
+class ExecutionRegistry {
+    static final int IN_FLIGHT = 1;
+    static final int FINISHED = 1 << 1;
+    static final int CONSTRUCTING = 1 << 2;
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile Page[] pages = new Page[16];
+
+    /**
+     * @param execution execution to keep
+     * @param flag      reason of keeping the execution
+     */
+    void add(MethodExecution execution, int flag) {
+        int id = execution.getID();
+        Page page = getPage(id, true);
+        int index = id & PAGE_MASK;
+        page.executions.set(index, execution);
+        int state;
+        do {
+            state = page.states.get(index);
+        } while (!page.states.compareAndSet(index, state, state | flag));
+    }
+
+    /**
+     * @param execution execution kept
+     * @param flag      reason no longer holding, the execution is dropped if it is not kept for other reasons
+     */
+    void remove(MethodExecution execution, int flag) {
+        int id = execution.getID();
+        Page page = getPage(id, false);
+        if (page == null) return;
+        int index = id & PAGE_MASK;
+        int state;
+        do {
+            state = page.states.get(index);
+            if ((state & flag) == 0) return;
+        } while (!page.states.compareAndSet(index, state, state & ~flag));
+        if ((state & ~flag) == 0) page.executions.compareAndSet(index, execution, null);
+    }
+
+    /**
+     * Remove the flag provided from all executions, dropping those not kept for other reasons
+     */
+    void removeAll(int flag) {
+        for (Page page : pages) {
+            if (page == null) continue;
+            for (int index = 0; index < PAGE_SIZE; index++) {
+                MethodExecution execution = page.executions.get(index);
+                if (execution != null) remove(execution, flag);
+            }
+        }
+    }
+
+    /**
+     * @param id ID of execution
+     * @return execution kept with the ID, null if there is none
+     */
+    MethodExecution get(int id) {
+        Page page = getPage(id, false);
+        if (page == null) return null;
+        int index = id & PAGE_MASK;
+        return page.states.get(index) == 0 ? null : page.executions.get(index);
+    }
+
+    private Page getPage(int id, boolean create) {
+        if (id < 0) {
+            if (create) throw new IllegalArgumentException("Illegal execution ID " + id);
+            return null;
+        }
+        int pageIndex = id >>> PAGE_BITS;
+        Page[] current = pages;
+        Page page = pageIndex < current.length ? current[pageIndex] : null;
+        if (page != null || !create) return page;
+        synchronized (this) {
+            current = pages;
+            if (pageIndex >= current.length)
+                current = Arrays.copyOf(current, Math.max(current.length * 2, pageIndex + 1));
+            if (current[pageIndex] == null) current[pageIndex] = new Page();
+            pages = current; // publish the new page
+            return current[pageIndex];
+        }
+    }
+
+    private static class Page {
+        private final AtomicReferenceArray<MethodExecution> executions = new AtomicReferenceArray<>(PAGE_SIZE);
+        private final AtomicIntegerArray states = new AtomicIntegerArray(PAGE_SIZE);
+    }
+}
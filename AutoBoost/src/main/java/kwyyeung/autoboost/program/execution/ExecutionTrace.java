@@ -7,23 +7,21 @@ import kwyyeung.autoboost.entity.LOG_ITEM;
 import kwyyeung.autoboost.entity.METHOD_TYPE;
 import kwyyeung.autoboost.helper.Helper;
 import kwyyeung.autoboost.helper.Properties;
-import kwyyeung.autoboost.helper.xml.XMLParser;
+import kwyyeung.autoboost.helper.snapshot.ObjectSnapshot;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
 import kwyyeung.autoboost.program.analysis.MethodDetails;
 import kwyyeung.autoboost.program.execution.variable.*;
 import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.DirectedMultigraph;
 import org.mockito.MockingDetails;
 import org.mockito.Mockito;
-import soot.Modifier;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -38,13 +36,18 @@ public class ExecutionTrace {
     private final Map<Class<?>, Set<MethodExecution>> constructingMethodExes;
     private final Map<Integer, VarDetail> allVars; // store all vardetail used, needed for lookups
     private final Map<Integer, Integer> unmockableVarToDefMap;
-    private final DirectedMultigraph<Integer, CallOrderEdge> callGraph;
-    private final Map<VarDetail, Stack<MethodExecution>> varToParentStackCache = new HashMap<>(); // cache last retrieval results to save time
-    private final Map<MethodExecution, Boolean> exeToFaultyExeContainedCache = new HashMap<>(); // cache to save execution time
+    private final CallGraph callGraph;
+    private final ExecutionRegistry executionRegistry = new ExecutionRegistry(); // finished, in-flight and constructing executions by ID
+    private volatile CallTreeSummary callTreeSummary = null; // set by seal, dropped once executions summarized change
+    private volatile Map<Class<?>, List<MethodExecution>> producedClassToExes = null; // set by seal, finished executions by class of object produced, for constructor search
+    private final Map<VarDetail, Stack<MethodExecution>> varToParentStackCache = Collections.synchronizedMap(new HashMap<>()); // cache last retrieval results to save time
+    private final Map<MethodExecution, Boolean> exeToFaultyExeContainedCache = new ConcurrentHashMap<>(); // cache to save execution time
     private final VarDetail nullVar = new ObjVarDetails(0, Object.class, null);
-    private final XMLParser parser = new XMLParser();
+    private final SnapshotParser parser = new SnapshotParser();
     private final Map<Integer, Set<VarDetail>> processedHashcodeToVarMap = new ConcurrentHashMap<>();
-    private final Map<String, Set<VarDetail>> classNameToVarMap = new ConcurrentHashMap<>();
+    private final Map<VarValueKey, Set<VarDetail>> valueToVarMap = new ConcurrentHashMap<>(); // index of VarDetails by class of VarDetail, type name and value for sameValue lookups
+    private final Map<ExecutionKey, MethodExecution> contentToExeMap = new ConcurrentHashMap<>(); // index of finished executions for sameContent lookups
+    private final Set<ExecutionKey> testedCalls = ConcurrentHashMap.newKeySet(); // index of finished executions run under tests for sameCalleeParamNMethod lookups
 
     /**
      * Constructor of ExecutionTrace, set up all vars.
@@ -52,9 +55,9 @@ public class ExecutionTrace {
     public ExecutionTrace() {
         this.allMethodExecs = new ConcurrentHashMap<>();
         this.allVars = new ConcurrentHashMap<>();
-        this.unmockableVarToDefMap = new HashMap<>();
-        this.constructingMethodExes = new HashMap<>();
-        callGraph = new DirectedMultigraph<>(CallOrderEdge.class);
+        this.unmockableVarToDefMap = Collections.synchronizedMap(new HashMap<>()); // may hold null values
+        this.constructingMethodExes = new ConcurrentHashMap<>();
+        callGraph = new CallGraph();
         allVars.put(nullVar.getID(), nullVar);
 
     }
@@ -73,6 +76,13 @@ public class ExecutionTrace {
         return varIDGenerator.incrementAndGet();
     }
 
+    /**
+     * Make sure IDs given out afterwards are greater than the one provided, e.g. for vars loaded from a trace store
+     */
+    static void reserveVarIDs(int lastID) {
+        varIDGenerator.accumulateAndGet(lastID, Math::max);
+    }
+
     /**
      * @return all method executions stored, ID -> MethodExecution
      */
@@ -153,26 +163,11 @@ public class ExecutionTrace {
         if (type.isEnum()) {
             objValue = ((Enum<?>) objValue).name();
         } else if (!type.isArray() && !type.equals(String.class) && !StringBVarDetails.availableTypeCheck(type) && !ClassUtils.isPrimitiveOrWrapper(type) && !((ArrVarDetails.availableTypeCheck(type) && ArrVarDetails.availableTypeCheck(objValue.getClass())) || (MapVarDetails.availableTypeCheck(type) && MapVarDetails.availableTypeCheck(objValue.getClass())))) {
-            Object finalObjValue1 = objValue;
-
-            Class<?> finalType = type;
-
-            Optional<String> match = Arrays.stream(type.getDeclaredFields())
-                    .filter(f -> f.getType().equals(finalType))
-                    .filter(f -> (!instrumentResult.getClassPublicFieldsMap().containsKey(finalType.getName()) && Modifier.isPublic(f.getModifiers()) && Modifier.isStatic(f.getModifiers())) ||
-                            instrumentResult.getClassPublicFieldsMap().getOrDefault(finalType.getName(), new HashSet<>()).contains(f.getName()))
-                    .filter(f -> {
-                        try {
-                            Object val = f.get(finalObjValue1);
-                            return val != null && System.identityHashCode(val) == hashCode;
-                        } catch (IllegalAccessException e) {
-                            return false;
-                        }
-                    }).map(Field::getName).findAny();
-
-            if (match.isPresent()) {
+            String constantName = instrumentResult.getAccessorPlan(type).findConstantName(objValue);
+
+            if (constantName != null) {
                 artificialEnum = true;
-                objValue = match.get();
+                objValue = constantName;
             } else if (type.equals(Class.class)) {
                 artificialEnum = true;
                 if (((Class<?>) objValue).isArray()) objValue = Array.class;
@@ -245,45 +240,75 @@ public class ExecutionTrace {
         Class<?> type = varContent.getVarType();
         Object checkVal = varContent.getVarCheckVal();
         String className = varContent.getVarType().getName();
-        Object  objValue = varContent.getVarValue();
-        VarDetail varDetail = findExistingVarDetail(hashCode, type, varDetailClass, checkVal, className);
-        if (varDetail == null) {
-            if (varDetailClass.equals(EnumVarDetails.class))
-                varDetail = new EnumVarDetails(getNewVarID(), type, (String) objValue);
-            else if (varDetailClass.equals(PrimitiveVarDetails.class)) {
-                varDetail = new PrimitiveVarDetails(getNewVarID(), type, objValue);
-            } else if (varDetailClass.equals(StringVarDetails.class))
-                varDetail = new StringVarDetails(getNewVarID(), (String) objValue);
-            else if (varDetailClass.equals(StringBVarDetails.class))
-                varDetail = new StringBVarDetails(getNewVarID(), type, (Integer) checkVal);
-            else if (varDetailClass.equals(ArrVarDetails.class)) {
-                varDetail = new ArrVarDetails(getNewVarID(), type, null, checkVal);
-            } else if (varDetailClass.equals(MapVarDetails.class)) {
-                varDetail = new MapVarDetails(getNewVarID(), (Class<? extends Map>) type, null, checkVal);
-            } else if (varDetailClass.equals(WrapperVarDetails.class)) {
-                varDetail = new WrapperVarDetails(getNewVarID(), type, objValue);
-            } else if (varDetailClass.equals(MockVarDetails.class))
-                varDetail = new MockVarDetails(getNewVarID(), type, (MockingDetails) objValue);
-            else {
-                // other cases
-                varDetail = new ObjVarDetails(getNewVarID(), type, objValue);
-            }
-            addNewVarDetail(varDetail);
-        }
+        VarValueKey valueKey = new VarValueKey(varDetailClass, className, checkVal);
+        VarDetail varDetail = findExistingVarDetail(hashCode, type, varDetailClass, checkVal, valueKey);
+        if (varDetail == null) varDetail = createVarDetail(varContent);
         if (varDetail instanceof ObjVarDetails && !varDetail.getType().getName().startsWith(kwyyeung.autoboost.helper.Properties.getSingleton().getPUT()) && !canOnlyBeUse) {
             if (setCurrentExeAsDef(varDetail, process, execution)) addNewVarDetailDef(varDetail, execution.getID());
             else addVarDetailUsage(varDetail);
         }
         if (varDetail instanceof ObjVarDetails || varDetail instanceof ArrVarDetails || varDetail instanceof MapVarDetails)
             processedHashToVarIDMap.put(hashCode, varDetail.getID());
-        if (!processedHashcodeToVarMap.containsKey(hashCode))
-            processedHashcodeToVarMap.put(hashCode, new HashSet<>());
-        processedHashcodeToVarMap.get(hashCode).add(varDetail);
-        if (!classNameToVarMap.containsKey(className))
-            classNameToVarMap.put(className, new HashSet<>());
-        classNameToVarMap.get(className).add(varDetail);
+        processedHashcodeToVarMap.computeIfAbsent(hashCode, k -> ConcurrentHashMap.newKeySet()).add(varDetail);
+        valueToVarMap.computeIfAbsent(valueKey, k -> ConcurrentHashMap.newKeySet()).add(varDetail);
         return varDetail;
     }
+
+    /**
+     * Find or create VarDetail of a value decoded from a snapshot.
+     * Unlike captured values, the decoded value is not an object of the program, hence its identity is not recorded.
+     *
+     * @param varContent content of value decoded
+     * @return VarDetail storing the value
+     */
+    public VarDetail getDecodedVarDetail(IntermediateVarContent varContent) {
+        Object checkVal = varContent.getVarCheckVal();
+        VarDetail varDetail = getSameValueVarDetail(varContent.getVarDetailClass(), varContent.getVarType().getName(), checkVal);
+        if (varDetail != null) return varDetail;
+        varDetail = createVarDetail(varContent);
+        valueToVarMap.computeIfAbsent(new VarValueKey(varContent.getVarDetailClass(), varContent.getVarType().getName(), checkVal), k -> ConcurrentHashMap.newKeySet()).add(varDetail);
+        return varDetail;
+    }
+
+    /**
+     * @return VarDetail of the class, type and value provided, null if there is none
+     */
+    VarDetail getSameValueVarDetail(Class<?> varDetailClass, String typeName, Object checkVal) {
+        return valueToVarMap.getOrDefault(new VarValueKey(varDetailClass, typeName, checkVal), Collections.emptySet()).stream()
+                .filter(v -> v.sameValue(checkVal))
+                .findAny().orElse(null);
+    }
+
+    private VarDetail createVarDetail(IntermediateVarContent varContent) {
+        Class<?> varDetailClass = varContent.getVarDetailClass();
+        Class<?> type = varContent.getVarType();
+        Object checkVal = varContent.getVarCheckVal();
+        Object objValue = varContent.getVarValue();
+        VarDetail varDetail;
+        if (varDetailClass.equals(EnumVarDetails.class))
+            varDetail = new EnumVarDetails(getNewVarID(), type, (String) objValue);
+        else if (varDetailClass.equals(PrimitiveVarDetails.class)) {
+            varDetail = new PrimitiveVarDetails(getNewVarID(), type, objValue);
+        } else if (varDetailClass.equals(StringVarDetails.class))
+            varDetail = new StringVarDetails(getNewVarID(), (String) objValue);
+        else if (varDetailClass.equals(StringBVarDetails.class))
+            varDetail = new StringBVarDetails(getNewVarID(), type, (Integer) checkVal);
+        else if (varDetailClass.equals(ArrVarDetails.class)) {
+            varDetail = new ArrVarDetails(getNewVarID(), type, null, checkVal);
+        } else if (varDetailClass.equals(MapVarDetails.class)) {
+            varDetail = new MapVarDetails(getNewVarID(), type.asSubclass(Map.class), null, checkVal);
+        } else if (varDetailClass.equals(WrapperVarDetails.class)) {
+            varDetail = new WrapperVarDetails(getNewVarID(), type, objValue);
+        } else if (varDetailClass.equals(MockVarDetails.class))
+            varDetail = new MockVarDetails(getNewVarID(), type, (MockingDetails) objValue);
+        else {
+            // other cases
+            varDetail = new ObjVarDetails(getNewVarID(), type, objValue);
+        }
+        addNewVarDetail(varDetail);
+        return varDetail;
+    }
+
     /**
      * Find if the current execution should be recognized as def of a var
      * e.g. If the variable is a callee, then it is a USE.
@@ -378,7 +403,7 @@ public class ExecutionTrace {
      * @param className
      * @return ObjVarDetails if the obj was defined and stored before, null if not
      */
-    private VarDetail findExistingVarDetail(int hashCode, Class<?> type, Class<?> varDetailClass, Object objValue, String className) {
+    private VarDetail findExistingVarDetail(int hashCode, Class<?> type, Class<?> varDetailClass, Object objValue, VarValueKey valueKey) {
         if (varDetailClass.equals(EnumVarDetails.class)) {
 //            if (type.equals(Class.class))
 //                objValue = objValue.toString().replace("$", ".") + ".class";
@@ -394,9 +419,8 @@ public class ExecutionTrace {
                 .filter(v -> v.sameTypeNValue(type, finalObjValue1))
                 .findAny();
         if (!result.isPresent())
-            result = this.classNameToVarMap.getOrDefault(className, new HashSet<>()).stream()
-                    .filter(v -> v.getClass().equals(varDetailClass))
-                    .filter(v -> v.sameValue(finalObjValue1))
+            result = this.valueToVarMap.getOrDefault(valueKey, Collections.emptySet()).stream()
+                    .filter(v -> v.sameValue(finalObjValue1)) // keys of different values may collide
                     .findAny();
         return result.orElse(null);
     }
@@ -444,51 +468,169 @@ public class ExecutionTrace {
         this.setUpVarMap(detail.getID());
     }
 
+    ExecutionRegistry getExecutionRegistry() {
+        return executionRegistry;
+    }
+
+    CallGraph getCallGraph() {
+        return callGraph;
+    }
+
+    /**
+     * Add a var loaded from a trace store, indexed by value as if it was captured
+     *
+     * @param checkVal value compared when looking for vars of the same value, null if the var is not to be found by value
+     */
+    void restoreVarDetail(VarDetail varDetail, Object checkVal) {
+        addNewVarDetail(varDetail);
+        if (checkVal != null)
+            valueToVarMap.computeIfAbsent(new VarValueKey(varDetail.getClass(), varDetail.getType().getName(), checkVal), k -> ConcurrentHashMap.newKeySet()).add(varDetail);
+    }
+
+    /**
+     * Add an execution loaded from a trace store, as a finished execution or one kept for constructing its class
+     */
+    void restoreMethodExecution(MethodExecution execution, boolean constructing) {
+        this.callGraph.addVertex(execution.getID());
+        if (!constructing) {
+            addFinishedMethodExecution(execution);
+            return;
+        }
+        this.constructingMethodExes.computeIfAbsent(execution.getMethodInvoked().getdClass(), c -> ConcurrentHashMap.newKeySet()).add(execution);
+        this.executionRegistry.add(execution, ExecutionRegistry.CONSTRUCTING);
+    }
+
     public void addMethodExecution(MethodExecution execution) {
         int executionID = execution.getID();
         this.callGraph.addVertex(executionID); // add vertex even if it has no son/ father
     }
 
     public void updateFinishedMethodExecution(MethodExecution execution) {
-        int executionID = execution.getID();
         if (AutoBoost.getCurrentProgramState().equals(PROGRAM_STATE.CONSTRUCTOR_SEARCH)) {
             if (execution.getResultThisId() == -1 && execution.getReturnValId() == -1) {
-                this.allMethodExecs.put(executionID, execution);
+                addFinishedMethodExecution(execution);
                 return;
             }
             Class<?> createdClass = execution.getMethodInvoked().getdClass();
             if (!(execution.getMethodInvoked().getType().equals(METHOD_TYPE.CONSTRUCTOR) && getVarDetailByID(execution.getResultThisId()).getType().equals(createdClass)) && !(execution.getMethodInvoked().getType().equals(METHOD_TYPE.STATIC) && getVarDetailByID(execution.getReturnValId()).getType().equals(createdClass))) {
-                this.allMethodExecs.put(executionID, execution);
+                addFinishedMethodExecution(execution);
                 return;
             }
-            if (!this.constructingMethodExes.containsKey(createdClass))
-                this.constructingMethodExes.put(createdClass, new HashSet<>());
-            this.constructingMethodExes.get(createdClass).add(execution);
+            this.constructingMethodExes.computeIfAbsent(createdClass, c -> ConcurrentHashMap.newKeySet()).add(execution);
+            this.executionRegistry.add(execution, ExecutionRegistry.CONSTRUCTING);
         } else
-            this.allMethodExecs.put(executionID, execution);
+            addFinishedMethodExecution(execution);
+    }
+
+    private void addFinishedMethodExecution(MethodExecution execution) {
+        this.allMethodExecs.put(execution.getID(), execution);
+        this.executionRegistry.add(execution, ExecutionRegistry.FINISHED);
+        Map<Class<?>, List<MethodExecution>> producedClassToExes = this.producedClassToExes;
+        if (producedClassToExes != null) // logged after seal, e.g. while searching for constructors
+            indexProducedClass(producedClassToExes, execution);
+        this.contentToExeMap.putIfAbsent(ExecutionKey.ofContent(execution), execution);
+        if (execution.getTest() != null)
+            this.testedCalls.add(ExecutionKey.ofCall(execution));
+    }
+
+    /**
+     * @param execution execution under check
+     * @return if a finished execution run under tests has the same method, callee and params as the one provided
+     */
+    public boolean hasTestedCall(MethodExecution execution) {
+        return this.testedCalls.contains(ExecutionKey.ofCall(execution));
+    }
+
+    /**
+     * Find a finished execution having the same content as the one provided, i.e. the same method, callee, params, return value and resulting callee
+     *
+     * @param execution execution under check
+     * @return finished MethodExecution with the same content, null if there is none
+     */
+    public MethodExecution getSameContentExecution(MethodExecution execution) {
+        return this.contentToExeMap.get(ExecutionKey.ofContent(execution));
     }
 
     public void addMethodRelationship(int father, int son, int exeOrder) {
-        this.callGraph.addVertex(father);
-        this.callGraph.addVertex(son);
-        this.callGraph.addEdge(father, son, new CallOrderEdge(exeOrder));
+        invalidateSummary(father); // only if an execution summarized makes a new call, executions logged after seal are not summarized
+        this.callGraph.addEdge(father, son, exeOrder);
     }
 
 
     public void changeVertex(int original, int now) {
-        if (!this.callGraph.containsVertex(original)) return;
-        this.callGraph.addVertex(now);
-        this.callGraph.removeAllEdges(original, now);
-        this.callGraph.removeAllEdges(now, original);
-        this.callGraph.outgoingEdgesOf(original).forEach(e -> addMethodRelationship(now, this.callGraph.getEdgeTarget(e), e.getLabel()));
-        this.callGraph.incomingEdgesOf(original).forEach(e -> addMethodRelationship(this.callGraph.getEdgeSource(e), now, e.getLabel()));
-        this.callGraph.removeVertex(original);
+        // merging an execution without edges, e.g. a call run again for test generation into its duplicate, changes nothing reachable
+        if (this.callGraph.hasEdges(original)) {
+            invalidateSummary(original);
+            invalidateSummary(now);
+        }
+        this.callGraph.mergeVertex(original, now);
+    }
+
+    /**
+     * Summarize what each execution in the trace reaches through its calls, answering containsFaultyDef, hasFieldAccess and hasUsageAsCallee without walking the call graph.
+     * Should be called once logging of tests is done; executions logged afterwards are walked as before.
+     * Finished executions are also indexed by the class of object they produce, see getExesProducing.
+     */
+    public void seal() {
+        Set<MethodDetails> faultyMethods = Properties.getSingleton().getFaultyFuncIds().stream().map(instrumentResult::getMethodDetailByID).collect(Collectors.toSet());
+        this.callTreeSummary = CallTreeSummary.build(this.callGraph, this.executionRegistry, e -> isFaultyMethodCall(e, faultyMethods));
+        Map<Class<?>, List<MethodExecution>> producedClassToExes = new ConcurrentHashMap<>();
+        this.allMethodExecs.values().stream().sorted(Comparator.comparingInt(MethodExecution::getID)).forEach(e -> indexProducedClass(producedClassToExes, e));
+        this.producedClassToExes = producedClassToExes;
+    }
+
+    /**
+     * @param producedClass class of objects
+     * @return finished executions of constructors creating objects of the class, or static methods without params returning them, in the order logged.
+     * null if the trace is not sealed
+     */
+    public List<MethodExecution> getExesProducing(Class<?> producedClass) {
+        Map<Class<?>, List<MethodExecution>> index = this.producedClassToExes;
+        if (index == null) return null;
+        return index.getOrDefault(producedClass, Collections.emptyList());
+    }
+
+    private void indexProducedClass(Map<Class<?>, List<MethodExecution>> index, MethodExecution execution) {
+        MethodDetails details = execution.getMethodInvoked();
+        int producedID;
+        if (details.getType() == METHOD_TYPE.CONSTRUCTOR)
+            producedID = execution.getResultThisId();
+        else if (details.getType() == METHOD_TYPE.STATIC && details.getParameterCount() == 0)
+            producedID = execution.getReturnValId();
+        else return;
+        VarDetail produced = producedID == -1 ? null : this.allVars.get(producedID);
+        if (produced != null)
+            index.computeIfAbsent(produced.getType(), c -> new CopyOnWriteArrayList<>()).add(execution);
+    }
+
+    /**
+     * @return if what executions reach through their calls is summarized, i.e. the trace is sealed and the summary is not dropped since
+     */
+    public boolean isSummarized() {
+        return this.callTreeSummary != null;
+    }
+
+    /**
+     * Drop the call tree summary, only if it covers the execution changed, i.e. the execution is logged before seal
+     */
+    private void invalidateSummary(int exeID) {
+        CallTreeSummary summary = this.callTreeSummary;
+        if (summary != null && summary.covers(exeID)) {
+            logger.debug("Call tree summary dropped as execution " + exeID + " changed");
+            this.callTreeSummary = null;
+        }
     }
 
     public List<Integer> getChildren(int father) {
-        List<Integer> results = new ArrayList<>();
-        this.callGraph.outgoingEdgesOf(father).stream().filter(e -> this.callGraph.getEdgeTarget(e) != father).sorted(Comparator.comparingInt(CallOrderEdge::getLabel)).forEach(e -> results.add(this.callGraph.getEdgeTarget(e)));
-        return results;
+        return this.callGraph.getChildren(father);
+    }
+
+    /**
+     * @param father ID of execution
+     * @return IDs of executions called by father, in call order
+     */
+    public int[] getChildIDs(int father) {
+        return this.callGraph.getChildIDs(father);
     }
 
     public VarDetail getVarDetailByID(int varID) {
@@ -498,13 +640,9 @@ public class ExecutionTrace {
     }
 
     public MethodExecution getMethodExecutionByID(int exeID) {
-        if (this.allMethodExecs.containsKey(exeID)) return this.allMethodExecs.get(exeID);
-        Optional<MethodExecution> result = ExecutionLogger.getAllExecuting().stream().filter(e -> e.getID() == exeID).findAny();
-        if (result.isPresent()) return result.get();
-        else
-            result = constructingMethodExes.values().stream().flatMap(Collection::stream).filter(e -> e.getID() == exeID).findAny();
-        if (result.isPresent()) return result.get();
-        else throw new IllegalArgumentException("MethodExecution with ID " + exeID + " does not exist");
+        MethodExecution execution = this.executionRegistry.get(exeID);
+        if (execution == null) throw new IllegalArgumentException("MethodExecution with ID " + exeID + " does not exist");
+        return execution;
     }
 
     public VarDetail getNullVar() {
@@ -514,21 +652,26 @@ public class ExecutionTrace {
     private Object objectToStringWithAttr(MethodExecution execution, Object obj, LOG_ITEM process, int depth, Map<Integer, Integer> processedHashToVarIDMap) {
         if (obj == null) return null;
         return
-                parser.getXML(execution, obj, process, depth, processedHashToVarIDMap);
+                parser.getSnapshot(execution, obj, process, depth, processedHashToVarIDMap);
     }
 
     private Object arrToString(MethodExecution execution, Object obj, LOG_ITEM process, int depth, Map<Integer, Integer> processedHashToVarIDMap) {
         if(obj == null) return null;
         if(!ArrVarDetails.availableTypeCheck(obj.getClass())) throw new IllegalArgumentException("Illegal arr to string ");
-        return parser.getXML(execution, obj, process, depth, processedHashToVarIDMap);
+        return parser.getSnapshot(execution, obj, process, depth, processedHashToVarIDMap);
     }
     private Object mapToString(MethodExecution execution, Object obj, LOG_ITEM process, int depth, Map<Integer, Integer> processedHashToVarIDMap) {
         if(obj == null) return null;
         if(!MapVarDetails.availableTypeCheck(obj.getClass())) throw new IllegalArgumentException("Illegal arr to string ");
-        return parser.getXML(execution, obj, process, depth, processedHashToVarIDMap);
+        return parser.getSnapshot(execution, obj, process, depth, processedHashToVarIDMap);
     }
     public void clear() {
+        callTreeSummary = null;
+        producedClassToExes = null;
         allMethodExecs.clear();
+        executionRegistry.removeAll(ExecutionRegistry.FINISHED);
+        contentToExeMap.clear();
+        testedCalls.clear();
         unmockableVarToDefMap.clear();
     }
 
@@ -567,24 +710,32 @@ public class ExecutionTrace {
         if (processed.contains(execution)) return false;
         processed.add(execution);
         if (execution.getMethodInvoked().isFieldAccess() && execution.getCalleeId() == varDetail.getID()) return true;
-        else
-            return getChildren(execution.getID()).stream().map(this::getMethodExecutionByID).anyMatch(e -> hasFieldAccess(e, varDetail, processed));
+        for (int child : getChildIDs(execution.getID()))
+            if (hasFieldAccess(getMethodExecutionByID(child), varDetail, processed)) return true;
+        return false;
     }
 
     public boolean hasFieldAccess(MethodExecution execution, VarDetail varDetail) {
+        CallTreeSummary summary = this.callTreeSummary;
+        if (summary != null && summary.covers(execution.getID()))
+            return summary.hasFieldAccess(execution.getID(), varDetail.getID());
         return hasFieldAccess(execution, varDetail, new HashSet<>());
     }
 
 
     private boolean hasUsageAsCallee(MethodExecution execution, Set<Integer> vars, Set<Integer> processedExe) {
-        if (processedExe.contains(execution.getID())) return false;
-        processedExe.add(execution.getID());
-        return getChildren(execution.getID()).stream()
-                .map(this::getMethodExecutionByID)
-                .anyMatch(e -> vars.contains(e.getCalleeId()) || hasUsageAsCallee(e, vars, processedExe));
+        if (!processedExe.add(execution.getID())) return false;
+        for (int child : getChildIDs(execution.getID())) {
+            MethodExecution e = getMethodExecutionByID(child);
+            if (vars.contains(e.getCalleeId()) || hasUsageAsCallee(e, vars, processedExe)) return true;
+        }
+        return false;
     }
 
     public boolean hasUsageAsCallee(MethodExecution execution, Set<Integer> vars) {
+        CallTreeSummary summary = this.callTreeSummary;
+        if (summary != null && summary.covers(execution.getID()))
+            return summary.hasUsageAsCallee(execution.getID(), vars);
         return hasUsageAsCallee(execution, vars, new HashSet<>());
     }
 
@@ -620,15 +771,16 @@ public class ExecutionTrace {
     }
 
     public boolean containsFaultyDef(MethodExecution execution, boolean useCache, HashSet<Integer> processed) {
-        MethodDetails details = execution.getMethodInvoked();
         if (useCache && exeToFaultyExeContainedCache.containsKey(execution))
             return exeToFaultyExeContainedCache.get(execution);
         processed.add(execution.getID());
-        exeToFaultyExeContainedCache.put(execution, Properties.getSingleton().getFaultyFuncIds().stream()
-                .map(instrumentResult::getMethodDetailByID)
-                .anyMatch(s -> s.equals(details) || (execution.getCalleeId() != -1 && s.getName().equals(details.getName()) && getVarDetailByID(execution.getCalleeId()).getType().equals(s.getdClass())))
-                || getChildren(execution.getID()).stream().filter(exeID -> !processed.contains(exeID)).anyMatch(exeID -> containsFaultyDef(exeID, useCache, processed)));
-        return exeToFaultyExeContainedCache.get(execution);
+        boolean faulty = isFaultyMethodCall(execution, Properties.getSingleton().getFaultyFuncIds().stream().map(instrumentResult::getMethodDetailByID).collect(Collectors.toSet()));
+        for (int exeID : getChildIDs(execution.getID())) {
+            if (faulty) break;
+            if (!processed.contains(exeID)) faulty = containsFaultyDef(exeID, useCache, processed);
+        }
+        exeToFaultyExeContainedCache.put(execution, faulty);
+        return faulty;
     }
 
     /**
@@ -637,9 +789,22 @@ public class ExecutionTrace {
      * @return if the execution provided is / runs faulty methods
      */
     public boolean containsFaultyDef(MethodExecution execution, boolean useCache) {
+        CallTreeSummary summary = this.callTreeSummary;
+        if (summary != null && summary.covers(execution.getID()))
+            return summary.containsFaulty(execution.getID());
         return containsFaultyDef(execution, useCache, new HashSet<>());
     }
 
+    /**
+     * @param execution     MethodExecution under check
+     * @param faultyMethods methods identified as faulty
+     * @return if the execution itself runs a faulty method, i.e. the method or one with the same name declared by the class of its callee
+     */
+    private boolean isFaultyMethodCall(MethodExecution execution, Set<MethodDetails> faultyMethods) {
+        MethodDetails details = execution.getMethodInvoked();
+        return faultyMethods.stream().anyMatch(s -> s.equals(details) || (execution.getCalleeId() != -1 && s.getName().equals(details.getName()) && getVarDetailByID(execution.getCalleeId()).getType().equals(s.getdClass())));
+    }
+
     /**
      * @param exeID    id of MethodExecution under check
      * @param useCache
@@ -695,30 +860,87 @@ public class ExecutionTrace {
         return constructingMethodExes;
     }
 
-    public static class CallOrderEdge extends DefaultEdge {
-        private final int label;
+    /**
+     * Key identifying executions with the same content (or the same call if return value and resulting callee are not included),
+     * used for indexing executions compared with MethodExecution#sameContent and MethodExecution#sameCalleeParamNMethod
+     */
+    public static class ExecutionKey {
+        private final int methodId;
+        private final int calleeId;
+        private final int[] params;
+        private final int returnValId;
+        private final int resultThisId;
+        private final int hash;
+
+        public ExecutionKey(int methodId, int calleeId, int[] params, int returnValId, int resultThisId) {
+            this.methodId = methodId;
+            this.calleeId = calleeId;
+            this.params = params;
+            this.returnValId = returnValId;
+            this.resultThisId = resultThisId;
+            this.hash = 31 * (31 * (31 * (31 * methodId + calleeId) + Arrays.hashCode(params)) + returnValId) + resultThisId;
+        }
+
+        public static ExecutionKey ofContent(MethodExecution execution) {
+            return new ExecutionKey(execution.getMethodInvoked().getId(), execution.getCalleeId(), execution.getParams().stream().mapToInt(Integer::intValue).toArray(), execution.getReturnValId(), execution.getResultThisId());
+        }
+
+        public static ExecutionKey ofCall(MethodExecution execution) {
+            return new ExecutionKey(execution.getMethodInvoked().getId(), execution.getCalleeId(), execution.getParams().stream().mapToInt(Integer::intValue).toArray(), -1, -1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ExecutionKey that = (ExecutionKey) o;
+            return hash == that.hash && methodId == that.methodId && calleeId == that.calleeId && returnValId == that.returnValId && resultThisId == that.resultThisId && Arrays.equals(params, that.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Key of VarDetail by class of VarDetail, name of type and a 64-bit hash of its value (e.g. snapshot of object), used to look up VarDetails with the same value.
+     * Values of same key still have to be checked with sameValue as hashes may collide.
+     */
+    private static class VarValueKey {
+        private final Class<?> varDetailClass;
+        private final String className;
+        private final long valueHash;
+        private final int hash;
+
+        private VarValueKey(Class<?> varDetailClass, String className, Object value) {
+            this.varDetailClass = varDetailClass;
+            this.className = className;
+            this.valueHash = hash64(value);
+            this.hash = 31 * (31 * varDetailClass.hashCode() + className.hashCode()) + Long.hashCode(valueHash);
+        }
 
-        /**
-         * Constructs a CallOrderEdge
-         *
-         * @param label the label of the new edge
-         */
-        public CallOrderEdge(int label) {
-            this.label = label;
+        private static long hash64(Object value) {
+            if (value instanceof ObjectSnapshot) return ((ObjectSnapshot) value).hash64();
+            if (!(value instanceof CharSequence)) return Objects.hashCode(value);
+            CharSequence chars = (CharSequence) value;
+            long h = 1125899906842597L;
+            for (int i = 0; i < chars.length(); i++)
+                h = 31 * h + chars.charAt(i);
+            return h;
         }
 
-        /**
-         * Gets the label associated with this edge
-         *
-         * @return edge label
-         */
-        public int getLabel() {
-            return label;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            VarValueKey that = (VarValueKey) o;
+            return hash == that.hash && valueHash == that.valueHash && varDetailClass.equals(that.varDetailClass) && className.equals(that.className);
         }
 
         @Override
-        public String toString() {
-            return "(" + getSource() + " : " + getTarget() + " : " + label + ")";
+        public int hashCode() {
+            return hash;
         }
     }
 
@@ -27,6 +27,7 @@ public class MethodExecution {
     private String test = null;
     private String requiredPackage = "";
     private final AtomicInteger childExeCount = new AtomicInteger(0);
+    private long startTime = 0; // in ns, when the call started on the thread running it, 0 if unknown (e.g. loaded from a trace store)
 
     public MethodExecution(int ID, MethodDetails methodInvoked) {
         this.ID = ID;
@@ -204,6 +205,18 @@ public class MethodExecution {
         return childExeCount.get();
     }
 
+    void setChildExeCount(int childExeCount) {
+        this.childExeCount.set(childExeCount);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
     public String getRequiredPackage() {
         return requiredPackage;
     }
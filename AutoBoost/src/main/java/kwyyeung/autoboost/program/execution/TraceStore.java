@@ -0,0 +1,912 @@
+package kwyyeung.autoboost.program.execution;
+
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.helper.snapshot.ObjectSnapshot;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
+import kwyyeung.autoboost.helper.xml.XMLParser;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.analysis.TimingProfile;
+import kwyyeung.autoboost.program.execution.variable.*;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import soot.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * On-disk copy of a sealed trace, so that tests can be generated again (e.g. with other generation settings) without instrumenting and running tests again.
+ * A store is a directory of files written once in append-only fashion: strings, symbols, methods, vars, executions, edges, defs and timings of methods.
+ * Each file is a header followed by columns, each column either ints or blobs (row end offsets then bytes), strings are kept once in the strings file and referred to by index.
+ * Files are memory-mapped and decoded column by column when loaded.
+ * <p>
+ * Method IDs stored are those compiled into the instrumented classes, hence a store has to be loaded with the instrumented classes of the same run on the classpath.
+ */
+public class TraceStore {
+    private static final Logger logger = LogManager.getLogger(TraceStore.class);
+    private static final int MAGIC = 0x41425453;
+    private static final int VERSION = 1;
+    private static final String STRINGS = "strings.bin", SYMBOLS = "symbols.bin", METHODS = "methods.bin", VARS = "vars.bin", EXECUTIONS = "executions.bin", EDGES = "edges.bin", DEFS = "defs.bin", TIMINGS = "timings.bin";
+    private static final List<Class<? extends VarDetail>> VAR_CLASSES = Arrays.asList(PrimitiveVarDetails.class, WrapperVarDetails.class, StringVarDetails.class, StringBVarDetails.class, EnumVarDetails.class, ObjVarDetails.class, ArrVarDetails.class, MapVarDetails.class, MockVarDetails.class);
+    private static final List<Class<?>> VALUE_TYPES = Arrays.asList(Integer.class, Long.class, Short.class, Byte.class, Boolean.class, Character.class, Float.class, Double.class, String.class);
+    private static final int SNAPSHOT_NONE = 0, SNAPSHOT_BINARY = 1, SNAPSHOT_XML = 2;
+    private static final int METHOD_FIELD_ACCESS = 1, METHOD_LIB = 1 << 1;
+    private static final int EXE_CAN_TEST = 1, EXE_CONSTRUCTING = 1 << 1;
+    private static final Map<String, Type> primitiveSootTypes = new HashMap<>();
+
+    static {
+        for (Type type : new Type[]{BooleanType.v(), ByteType.v(), CharType.v(), ShortType.v(), IntType.v(), LongType.v(), FloatType.v(), DoubleType.v(), VoidType.v()})
+            primitiveSootTypes.put(type.toString(), type);
+    }
+
+    /**
+     * Write the trace (which should be sealed) and the instrumentation results it refers to into the directory provided, replacing any store there
+     */
+    public static void write(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create trace store at " + dir);
+        ExecutionTrace trace = ExecutionTrace.getSingleton();
+        InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+        StringTable strings = new StringTable();
+        writeSymbols(new File(dir, SYMBOLS), instrumentResult, strings);
+        writeMethods(new File(dir, METHODS), instrumentResult, strings);
+        int vars = writeVars(new File(dir, VARS), trace, strings);
+        int executions = writeExecutions(new File(dir, EXECUTIONS), trace, strings);
+        writeEdges(new File(dir, EDGES), trace.getCallGraph());
+        writeDefs(new File(dir, DEFS), trace);
+        writeTimings(new File(dir, TIMINGS), instrumentResult);
+        writeStrings(new File(dir, STRINGS), strings);
+        logger.info("Trace stored at " + dir.getAbsolutePath() + ": " + executions + " executions, " + vars + " vars");
+    }
+
+    /**
+     * Write the instrumentation results only (methods and symbols) into the directory provided, in the same files as in a full store
+     */
+    public static void writeInstrumentResult(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create trace store at " + dir);
+        InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+        StringTable strings = new StringTable();
+        writeSymbols(new File(dir, SYMBOLS), instrumentResult, strings);
+        writeMethods(new File(dir, METHODS), instrumentResult, strings);
+        writeStrings(new File(dir, STRINGS), strings);
+    }
+
+    /**
+     * Load a store written by write into the trace and instrumentation results, which should have nothing logged or instrumented yet
+     */
+    public static void load(File dir) throws IOException {
+        InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+        ExecutionTrace trace = ExecutionTrace.getSingleton();
+        if (instrumentResult.getClassSymbolCount() != 0 || instrumentResult.getFieldSymbolCount() != 0 || !trace.getAllMethodExecs().isEmpty())
+            throw new IllegalStateException("Trace store can only be loaded before anything is instrumented or logged");
+        String[] strings = loadStrings(new File(dir, STRINGS));
+        loadSymbols(new ColumnInput(new File(dir, SYMBOLS)), instrumentResult, strings);
+        loadMethods(new ColumnInput(new File(dir, METHODS)), instrumentResult, strings);
+        int vars = loadVars(new ColumnInput(new File(dir, VARS)), trace, strings);
+        int executions = loadExecutions(new ColumnInput(new File(dir, EXECUTIONS)), trace, instrumentResult, strings, id -> id, id -> id, trace::restoreMethodExecution);
+        loadEdges(new ColumnInput(new File(dir, EDGES)), trace.getCallGraph(), id -> id);
+        loadDefs(new ColumnInput(new File(dir, DEFS)), trace, id -> id, id -> id);
+        loadTimings(new File(dir, TIMINGS), instrumentResult);
+        logger.info("Trace loaded from " + dir.getAbsolutePath() + ": " + executions + " executions, " + vars + " vars");
+    }
+
+    /**
+     * Merge a store written by another JVM running the same instrumented classes (e.g. a replay shard) into the trace and instrumentation results.
+     * Vars and executions are given new IDs, and those of the same value / content as ones in the trace are merged into them as when they are logged.
+     * Classes and fields in snapshots are given the symbols of this JVM. Methods are not loaded, as their IDs are compiled into the classes shared.
+     */
+    public static void merge(File dir) throws IOException {
+        new Merge(dir).run();
+    }
+
+    /**
+     * Load the instrumentation results of a store (full or written by writeInstrumentResult), which should have nothing instrumented yet
+     */
+    public static void loadInstrumentResult(File dir) throws IOException {
+        InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+        if (instrumentResult.getClassSymbolCount() != 0 || instrumentResult.getFieldSymbolCount() != 0 || !instrumentResult.getMethodDetailsMap().isEmpty())
+            throw new IllegalStateException("Instrumentation results can only be loaded before anything is instrumented");
+        String[] strings = loadStrings(new File(dir, STRINGS));
+        loadSymbols(new ColumnInput(new File(dir, SYMBOLS)), instrumentResult, strings);
+        loadMethods(new ColumnInput(new File(dir, METHODS)), instrumentResult, strings);
+    }
+
+    private static void writeStrings(File file, StringTable strings) throws IOException {
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            BlobColumn column = new BlobColumn();
+            for (String string : strings.strings)
+                column.row().write(string.getBytes(StandardCharsets.UTF_8));
+            out.writeBlobs(column);
+        }
+    }
+
+    private static String[] loadStrings(File file) throws IOException {
+        Blobs blobs = new ColumnInput(file).readBlobs();
+        String[] strings = new String[blobs.size()];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = StandardCharsets.UTF_8.decode(blobs.get(i)).toString();
+        return strings;
+    }
+
+    private static void writeSymbols(File file, InstrumentResult instrumentResult, StringTable strings) throws IOException {
+        IntColumn classNames = new IntColumn();
+        for (int symbol = 0, count = instrumentResult.getClassSymbolCount(); symbol < count; symbol++)
+            classNames.add(strings.indexOf(getSymbolClassName(instrumentResult, symbol)));
+        IntColumn fieldClasses = new IntColumn(), fieldNames = new IntColumn();
+        for (int symbol = 0, count = instrumentResult.getFieldSymbolCount(); symbol < count; symbol++) {
+            Field field = getSymbolField(instrumentResult, symbol);
+            fieldClasses.add(strings.indexOf(field == null ? null : field.getDeclaringClass().getName()));
+            fieldNames.add(strings.indexOf(field == null ? null : field.getName()));
+        }
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            out.writeInts(classNames);
+            out.writeInts(fieldClasses);
+            out.writeInts(fieldNames);
+        }
+    }
+
+    private static String getSymbolClassName(InstrumentResult instrumentResult, int symbol) {
+        try {
+            return instrumentResult.getClassBySymbol(symbol).getName();
+        } catch (IllegalArgumentException e) {
+            return null; // reserved symbol
+        }
+    }
+
+    private static Field getSymbolField(InstrumentResult instrumentResult, int symbol) {
+        try {
+            return instrumentResult.getFieldBySymbol(symbol);
+        } catch (IllegalArgumentException e) {
+            return null; // reserved symbol
+        }
+    }
+
+    private static void loadSymbols(ColumnInput in, InstrumentResult instrumentResult, String[] strings) {
+        int[] classNames = in.readInts();
+        for (int symbol = 0; symbol < classNames.length; symbol++) {
+            Class<?> clazz = toClass(getString(strings, classNames[symbol]));
+            int assigned = clazz == null ? instrumentResult.reserveClassSymbol() : instrumentResult.getClassSymbol(clazz);
+            if (assigned != symbol) throw new IllegalStateException("Class symbols of trace store cannot be restored");
+        }
+        int[] fieldClasses = in.readInts(), fieldNames = in.readInts();
+        for (int symbol = 0; symbol < fieldClasses.length; symbol++) {
+            Field field = toField(getString(strings, fieldClasses[symbol]), getString(strings, fieldNames[symbol]));
+            int assigned = field == null ? instrumentResult.reserveFieldSymbol() : instrumentResult.getFieldSymbol(field);
+            if (assigned != symbol) throw new IllegalStateException("Field symbols of trace store cannot be restored");
+        }
+    }
+
+    private static void writeMethods(File file, InstrumentResult instrumentResult, StringTable strings) throws IOException {
+        IntColumn ids = new IntColumn(), names = new IntColumn(), declaringClasses = new IntColumn(), classModifiers = new IntColumn(), returnTypes = new IntColumn(),
+                accesses = new IntColumn(), types = new IntColumn(), flags = new IntColumn(), signatures = new IntColumn(), subSignatures = new IntColumn(),
+                paramCounts = new IntColumn(), paramTypeEnds = new IntColumn(), paramTypes = new IntColumn();
+        List<MethodDetails> methods = instrumentResult.getMethodDetailsMap().values().stream().sorted(Comparator.comparingInt(MethodDetails::getId)).collect(Collectors.toList());
+        for (MethodDetails details : methods) {
+            ids.add(details.getId());
+            names.add(strings.indexOf(details.getName()));
+            declaringClasses.add(strings.indexOf(details.getDeclaringClass().getName()));
+            classModifiers.add(details.getDeclaringClass().getModifiers());
+            returnTypes.add(strings.indexOf(details.getReturnSootType() == null ? null : details.getReturnSootType().toString()));
+            accesses.add(details.getAccess() == null ? -1 : details.getAccess().ordinal());
+            types.add(details.getType() == null ? -1 : details.getType().ordinal());
+            flags.add((details.isFieldAccess() ? METHOD_FIELD_ACCESS : 0) | (instrumentResult.isLibMethod(details.getId()) ? METHOD_LIB : 0));
+            signatures.add(strings.indexOf(details.getSignature()));
+            subSignatures.add(strings.indexOf(details.getSubSignature()));
+            paramCounts.add(details.getParameterCount());
+            for (Type type : details.getParameterTypes())
+                paramTypes.add(strings.indexOf(type.toString()));
+            paramTypeEnds.add(paramTypes.size);
+        }
+        IntColumn faultyIDs = new IntColumn();
+        Properties.getSingleton().getFaultyFuncIds().forEach(faultyIDs::add);
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            for (IntColumn column : new IntColumn[]{ids, names, declaringClasses, classModifiers, returnTypes, accesses, types, flags, signatures, subSignatures, paramCounts, paramTypeEnds, paramTypes, faultyIDs})
+                out.writeInts(column);
+            writeNameSets(out, instrumentResult.getClassPublicFieldsMap(), strings);
+            writeNameSets(out, instrumentResult.getClassSuperclassesMap(), strings);
+        }
+    }
+
+    private static void loadMethods(ColumnInput in, InstrumentResult instrumentResult, String[] strings) {
+        int[] ids = in.readInts(), names = in.readInts(), declaringClasses = in.readInts(), classModifiers = in.readInts(), returnTypes = in.readInts(),
+                accesses = in.readInts(), types = in.readInts(), flags = in.readInts(), signatures = in.readInts(), subSignatures = in.readInts(),
+                paramCounts = in.readInts(), paramTypeEnds = in.readInts(), paramTypes = in.readInts(), faultyIDs = in.readInts();
+        Map<String, SootClass> sootClasses = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            List<Type> parameterTypes = new ArrayList<>();
+            for (int j = i == 0 ? 0 : paramTypeEnds[i - 1]; j < paramTypeEnds[i]; j++)
+                parameterTypes.add(toSootType(strings[paramTypes[j]]));
+            String className = strings[declaringClasses[i]];
+            int modifiers = classModifiers[i];
+            SootClass declaringClass = sootClasses.computeIfAbsent(className, c -> new SootClass(c, modifiers));
+            MethodDetails details = new MethodDetails(parameterTypes, paramCounts[i], strings[names[i]], returnTypes[i] == -1 ? null : toSootType(strings[returnTypes[i]]),
+                    accesses[i] == -1 ? null : ACCESS.values()[accesses[i]], types[i] == -1 ? null : METHOD_TYPE.values()[types[i]], declaringClass,
+                    getString(strings, signatures[i]), getString(strings, subSignatures[i]), (flags[i] & METHOD_FIELD_ACCESS) != 0);
+            details.setId(ids[i]);
+            if ((flags[i] & METHOD_LIB) != 0) instrumentResult.addLibMethod(details);
+            else if (details.isFieldAccess()) instrumentResult.addFieldAccessMethod(details);
+            else instrumentResult.addMethod(details);
+        }
+        for (int faultyID : faultyIDs)
+            Properties.getSingleton().addFaultyFuncId(faultyID);
+        instrumentResult.getClassPublicFieldsMap().putAll(readNameSets(in, strings));
+        instrumentResult.getClassSuperclassesMap().putAll(readNameSets(in, strings));
+    }
+
+    private static void writeNameSets(ColumnOutput out, Map<String, Set<String>> nameSets, StringTable strings) throws IOException {
+        IntColumn keys = new IntColumn(), ends = new IntColumn(), names = new IntColumn();
+        for (Map.Entry<String, Set<String>> entry : nameSets.entrySet()) {
+            keys.add(strings.indexOf(entry.getKey()));
+            for (String name : entry.getValue())
+                names.add(strings.indexOf(name));
+            ends.add(names.size);
+        }
+        out.writeInts(keys);
+        out.writeInts(ends);
+        out.writeInts(names);
+    }
+
+    private static Map<String, Set<String>> readNameSets(ColumnInput in, String[] strings) {
+        int[] keys = in.readInts(), ends = in.readInts(), names = in.readInts();
+        Map<String, Set<String>> nameSets = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            Set<String> set = new HashSet<>();
+            for (int j = i == 0 ? 0 : ends[i - 1]; j < ends[i]; j++)
+                set.add(strings[names[j]]);
+            nameSets.put(strings[keys[i]], set);
+        }
+        return nameSets;
+    }
+
+    private static int writeVars(File file, ExecutionTrace trace, StringTable strings) throws IOException {
+        IntColumn ids = new IntColumn(), kinds = new IntColumn(), types = new IntColumn();
+        BlobColumn values = new BlobColumn();
+        List<VarDetail> vars = trace.getAllVars().values().stream().filter(v -> v != trace.getNullVar()).sorted(Comparator.comparingInt(VarDetail::getID)).collect(Collectors.toList());
+        for (VarDetail varDetail : vars) {
+            int kind = VAR_CLASSES.indexOf(varDetail.getClass());
+            if (kind == -1) throw new IllegalArgumentException("Cannot store var of " + varDetail.getClass().getName());
+            ids.add(varDetail.getID());
+            kinds.add(kind);
+            types.add(strings.indexOf(varDetail.getType().getName()));
+            writeVarValue(values.row(), varDetail);
+        }
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            out.writeInts(ids);
+            out.writeInts(kinds);
+            out.writeInts(types);
+            out.writeBlobs(values);
+        }
+        return vars.size();
+    }
+
+    private static void writeVarValue(DataOutputStream out, VarDetail varDetail) throws IOException {
+        if (varDetail instanceof PrimitiveVarDetails || varDetail instanceof WrapperVarDetails)
+            writeValue(out, varDetail.getValue());
+        else if (varDetail instanceof StringVarDetails || varDetail instanceof EnumVarDetails)
+            writeString(out, (String) varDetail.getValue());
+        else if (varDetail instanceof StringBVarDetails)
+            out.writeInt(((StringBVarDetails) varDetail).getStringValID());
+        else if (varDetail instanceof ArrVarDetails || varDetail instanceof MapVarDetails)
+            writeSnapshot(out, varDetail.getGenValue()); // components are decoded from the snapshot again when needed
+        else if (varDetail instanceof ObjVarDetails)
+            writeSnapshot(out, varDetail.getValue());
+        // mocks are restored with their type only
+    }
+
+    private static int loadVars(ColumnInput in, ExecutionTrace trace, String[] strings) {
+        int[] ids = in.readInts(), kinds = in.readInts(), types = in.readInts();
+        Blobs values = in.readBlobs();
+        int lastID = 0;
+        for (int i = 0; i < ids.length; i++) {
+            Class<? extends VarDetail> varClass = VAR_CLASSES.get(kinds[i]);
+            Object checkVal = readVarValue(values.get(i), varClass);
+            trace.restoreVarDetail(toVarDetail(ids[i], varClass, toVarType(ids[i], strings[types[i]]), checkVal), checkVal);
+            lastID = Math.max(lastID, ids[i]);
+        }
+        ExecutionTrace.reserveVarIDs(lastID);
+        return ids.length;
+    }
+
+    private static Class<?> toVarType(int id, String typeName) {
+        Class<?> type = toClass(typeName);
+        if (type != null) return type;
+        logger.warn("Class " + typeName + " of var " + id + " cannot be found, Object is used instead");
+        return Object.class;
+    }
+
+    /**
+     * @return value of a var written by writeVarValue, as compared when looking for vars of the same value (null for mocks)
+     */
+    private static Object readVarValue(ByteBuffer value, Class<? extends VarDetail> varClass) {
+        switch (varClass.getSimpleName()) {
+            case "PrimitiveVarDetails":
+            case "WrapperVarDetails":
+                return readValue(value);
+            case "StringVarDetails":
+            case "EnumVarDetails":
+                return readString(value);
+            case "StringBVarDetails":
+                return value.getInt();
+            case "ArrVarDetails":
+            case "MapVarDetails":
+            case "ObjVarDetails":
+                return readSnapshot(value);
+            default:
+                return null;
+        }
+    }
+
+    private static VarDetail toVarDetail(int id, Class<? extends VarDetail> varClass, Class<?> type, Object checkVal) {
+        switch (varClass.getSimpleName()) {
+            case "PrimitiveVarDetails":
+                return new PrimitiveVarDetails(id, type, checkVal);
+            case "WrapperVarDetails":
+                return new WrapperVarDetails(id, type, checkVal);
+            case "StringVarDetails":
+                return new StringVarDetails(id, (String) checkVal);
+            case "EnumVarDetails":
+                return new EnumVarDetails(id, type, (String) checkVal);
+            case "StringBVarDetails":
+                return new StringBVarDetails(id, type, (Integer) checkVal);
+            case "ArrVarDetails":
+                return new ArrVarDetails(id, type, null, checkVal);
+            case "MapVarDetails":
+                return new MapVarDetails(id, type.asSubclass(Map.class), null, checkVal);
+            case "ObjVarDetails":
+                return new ObjVarDetails(id, type, checkVal);
+            default:
+                return new MockVarDetails(id, type, null);
+        }
+    }
+
+    private static int writeExecutions(File file, ExecutionTrace trace, StringTable strings) throws IOException {
+        IntColumn ids = new IntColumn(), methods = new IntColumn(), callees = new IntColumn(), returnVals = new IntColumn(), resultThises = new IntColumn(),
+                exceptions = new IntColumn(), flags = new IntColumn(), tests = new IntColumn(), requiredPackages = new IntColumn(), childCounts = new IntColumn(),
+                paramEnds = new IntColumn(), params = new IntColumn();
+        Map<MethodExecution, Boolean> executions = new TreeMap<>(Comparator.comparingInt(MethodExecution::getID));
+        trace.getAllMethodExecs().values().forEach(e -> executions.put(e, false));
+        trace.getConstructingMethodExes().values().forEach(set -> set.forEach(e -> executions.put(e, true)));
+        for (Map.Entry<MethodExecution, Boolean> entry : executions.entrySet()) {
+            MethodExecution execution = entry.getKey();
+            ids.add(execution.getID());
+            methods.add(execution.getMethodInvoked().getId());
+            callees.add(execution.getCalleeId());
+            returnVals.add(execution.getReturnValId());
+            resultThises.add(execution.getResultThisId());
+            exceptions.add(strings.indexOf(execution.getExceptionClass() == null ? null : execution.getExceptionClass().getName()));
+            flags.add((execution.isCanTest() ? EXE_CAN_TEST : 0) | (entry.getValue() ? EXE_CONSTRUCTING : 0));
+            tests.add(strings.indexOf(execution.getTest()));
+            requiredPackages.add(strings.indexOf(execution.getRequiredPackage()));
+            childCounts.add(execution.getChildExeCount());
+            execution.getParams().forEach(params::add);
+            paramEnds.add(params.size);
+        }
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            for (IntColumn column : new IntColumn[]{ids, methods, callees, returnVals, resultThises, exceptions, flags, tests, requiredPackages, childCounts, paramEnds, params})
+                out.writeInts(column);
+        }
+        return executions.size();
+    }
+
+    /**
+     * @param exeIDs  ID given to each execution ID in the store
+     * @param varIDs  ID given to each var ID in the store
+     * @param restore called with each execution and if it is kept for constructing its class
+     */
+    private static int loadExecutions(ColumnInput in, ExecutionTrace trace, InstrumentResult instrumentResult, String[] strings, IntUnaryOperator exeIDs, IntUnaryOperator varIDs, BiConsumer<MethodExecution, Boolean> restore) {
+        int[] ids = in.readInts(), methods = in.readInts(), callees = in.readInts(), returnVals = in.readInts(), resultThises = in.readInts(),
+                exceptions = in.readInts(), flags = in.readInts(), tests = in.readInts(), requiredPackages = in.readInts(), childCounts = in.readInts(),
+                paramEnds = in.readInts(), params = in.readInts();
+        int lastID = 0;
+        for (int i = 0; i < ids.length; i++) {
+            MethodExecution execution = new MethodExecution(exeIDs.applyAsInt(ids[i]), instrumentResult.getMethodDetailByID(methods[i]));
+            if (callees[i] != -1) execution.setCallee(trace.getVarDetailByID(varIDs.applyAsInt(callees[i])));
+            for (int j = i == 0 ? 0 : paramEnds[i - 1]; j < paramEnds[i]; j++)
+                execution.addParam(varIDs.applyAsInt(params[j]));
+            if (resultThises[i] != -1) execution.setResultThisId(varIDs.applyAsInt(resultThises[i]));
+            if (returnVals[i] != -1) execution.setReturnValId(varIDs.applyAsInt(returnVals[i]));
+            if (exceptions[i] != -1) {
+                execution.setExceptionClass(toClass(strings[exceptions[i]]));
+                if (execution.getExceptionClass() == null)
+                    logger.warn("Exception " + strings[exceptions[i]] + " of execution " + ids[i] + " cannot be found");
+            }
+            execution.setCanTest((flags[i] & EXE_CAN_TEST) != 0);
+            execution.setTest(getString(strings, tests[i]));
+            execution.setRequiredPackage(getString(strings, requiredPackages[i]));
+            execution.setChildExeCount(childCounts[i]);
+            restore.accept(execution, (flags[i] & EXE_CONSTRUCTING) != 0);
+            lastID = Math.max(lastID, execution.getID());
+        }
+        ExecutionLogger.reserveExeIDs(lastID);
+        return ids.length;
+    }
+
+    private static void writeEdges(File file, CallGraph callGraph) throws IOException {
+        IntColumn vertices = new IntColumn(), fathers = new IntColumn(), orders = new IntColumn(), children = new IntColumn();
+        for (int vertex = 0, limit = callGraph.getVertexLimit(); vertex < limit; vertex++) {
+            if (!callGraph.containsVertex(vertex)) continue;
+            vertices.add(vertex);
+            for (long edge : callGraph.getOutEdges(vertex)) {
+                fathers.add(vertex);
+                orders.add(CallGraph.orderOf(edge));
+                children.add(CallGraph.childOf(edge));
+            }
+        }
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            out.writeInts(vertices);
+            out.writeInts(fathers);
+            out.writeInts(orders);
+            out.writeInts(children);
+        }
+    }
+
+    private static void loadEdges(ColumnInput in, CallGraph callGraph, IntUnaryOperator exeIDs) {
+        for (int vertex : in.readInts())
+            callGraph.addVertex(exeIDs.applyAsInt(vertex));
+        int[] fathers = in.readInts(), orders = in.readInts(), children = in.readInts();
+        for (int i = 0; i < fathers.length; i++)
+            callGraph.addEdge(exeIDs.applyAsInt(fathers[i]), exeIDs.applyAsInt(children[i]), orders[i]);
+    }
+
+    private static void writeDefs(File file, ExecutionTrace trace) throws IOException {
+        IntColumn vars = new IntColumn(), executions = new IntColumn();
+        Map<Integer, Integer> defs = trace.getUnmockableVarToDefMap();
+        synchronized (defs) {
+            for (Map.Entry<Integer, Integer> entry : defs.entrySet()) {
+                vars.add(entry.getKey());
+                executions.add(entry.getValue() == null ? -1 : entry.getValue());
+            }
+        }
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            out.writeInts(vars);
+            out.writeInts(executions);
+        }
+    }
+
+    /**
+     * Load defs of vars, keeping the def of a var already defined in the trace
+     */
+    private static void loadDefs(ColumnInput in, ExecutionTrace trace, IntUnaryOperator varIDs, IntUnaryOperator exeIDs) {
+        int[] vars = in.readInts(), executions = in.readInts();
+        Map<Integer, Integer> defs = trace.getUnmockableVarToDefMap();
+        for (int i = 0; i < vars.length; i++) {
+            int var = varIDs.applyAsInt(vars[i]);
+            if (defs.get(var) == null)
+                defs.put(var, executions[i] == -1 ? null : exeIDs.applyAsInt(executions[i]));
+        }
+    }
+
+    private static void writeTimings(File file, InstrumentResult instrumentResult) throws IOException {
+        IntColumn methods = new IntColumn(), buckets = new IntColumn(), counts = new IntColumn();
+        for (MethodDetails details : instrumentResult.getMethodDetailsMap().values()) {
+            if (!details.hasTimingProfile()) continue;
+            TimingProfile profile = details.getTimingProfile();
+            for (int bucket = 0; bucket < TimingProfile.BUCKETS; bucket++) {
+                long count = profile.getCount(bucket);
+                if (count == 0) continue;
+                methods.add(details.getId());
+                buckets.add(bucket);
+                counts.add((int) Math.min(count, Integer.MAX_VALUE));
+            }
+        }
+        try (ColumnOutput out = new ColumnOutput(file)) {
+            out.writeInts(methods);
+            out.writeInts(buckets);
+            out.writeInts(counts);
+        }
+    }
+
+    /**
+     * Add timings of methods into their profiles, if the store has them (i.e. it is not written before timings are stored)
+     */
+    private static void loadTimings(File file, InstrumentResult instrumentResult) throws IOException {
+        if (!file.isFile()) return;
+        ColumnInput in = new ColumnInput(file);
+        int[] methods = in.readInts(), buckets = in.readInts(), counts = in.readInts();
+        for (int i = 0; i < methods.length; i++) {
+            MethodDetails details = instrumentResult.getMethodDetailsMap().get(methods[i]);
+            if (details != null) details.getTimingProfile().addCount(buckets[i], counts[i]);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        int type = VALUE_TYPES.indexOf(value.getClass());
+        if (type == -1) throw new IllegalArgumentException("Cannot store value of " + value.getClass().getName());
+        out.writeByte(type);
+        switch (type) {
+            case 0:
+                out.writeInt((Integer) value);
+                break;
+            case 1:
+                out.writeLong((Long) value);
+                break;
+            case 2:
+                out.writeShort((Short) value);
+                break;
+            case 3:
+                out.writeByte((Byte) value);
+                break;
+            case 4:
+                out.writeBoolean((Boolean) value);
+                break;
+            case 5:
+                out.writeChar((Character) value);
+                break;
+            case 6:
+                out.writeFloat((Float) value);
+                break;
+            case 7:
+                out.writeDouble((Double) value);
+                break;
+            default:
+                writeString(out, (String) value);
+        }
+    }
+
+    private static Object readValue(ByteBuffer in) {
+        switch (in.get()) {
+            case 0:
+                return in.getInt();
+            case 1:
+                return in.getLong();
+            case 2:
+                return in.getShort();
+            case 3:
+                return in.get();
+            case 4:
+                return in.get() != 0;
+            case 5:
+                return in.getChar();
+            case 6:
+                return in.getFloat();
+            case 7:
+                return in.getDouble();
+            default:
+                return readString(in);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeSnapshot(DataOutputStream out, Object snapshot) throws IOException {
+        if (snapshot == null) out.writeByte(SNAPSHOT_NONE);
+        else if (snapshot instanceof ObjectSnapshot) {
+            out.writeByte(SNAPSHOT_BINARY);
+            ((ObjectSnapshot) snapshot).writeTo(out);
+        } else if (snapshot instanceof String) {
+            out.writeByte(SNAPSHOT_XML);
+            writeString(out, (String) snapshot);
+        } else throw new IllegalArgumentException("Cannot store snapshot of " + snapshot.getClass().getName());
+    }
+
+    private static Object readSnapshot(ByteBuffer in) {
+        switch (in.get()) {
+            case SNAPSHOT_BINARY:
+                return ObjectSnapshot.readFrom(in);
+            case SNAPSHOT_XML:
+                return readString(in);
+            default:
+                return null;
+        }
+    }
+
+    private static String getString(String[] strings, int index) {
+        return index == -1 ? null : strings[index];
+    }
+
+    /**
+     * @return class of the name provided (as given by Class#getName), null if it cannot be found
+     */
+    private static Class<?> toClass(String name) {
+        if (name == null) return null;
+        try {
+            return ClassUtils.getClass(TraceStore.class.getClassLoader(), name, false);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Field toField(String className, String fieldName) {
+        Class<?> clazz = toClass(className);
+        if (clazz == null || fieldName == null) return null;
+        try {
+            return clazz.getDeclaredField(fieldName);
+        } catch (NoSuchFieldException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return soot type of the name provided (as given by Type#toString), without loading the class into the soot Scene
+     */
+    private static Type toSootType(String name) {
+        int dimensions = 0;
+        while (name.endsWith("[]")) {
+            name = name.substring(0, name.length() - 2);
+            dimensions++;
+        }
+        Type base = primitiveSootTypes.get(name);
+        if (base == null) base = RefType.v(name);
+        return dimensions == 0 ? base : ArrayType.v(base, dimensions);
+    }
+
+    /**
+     * State of merging a store into the trace, with IDs and symbols of the store mapped to those in the trace
+     */
+    private static class Merge {
+        private final File dir;
+        private final ExecutionTrace trace = ExecutionTrace.getSingleton();
+        private final InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+        private final String[] strings;
+        private int[] classSymbols, fieldSymbols; // symbols in the store -> symbols in this JVM
+        private int[] varKinds, varTypes;
+        private Blobs varValues;
+        private final Map<Integer, Integer> varRows = new HashMap<>();
+        private final Map<Integer, Integer> varIDs = new HashMap<>(); // IDs in the store -> IDs in the trace
+        private final Set<Integer> varsMerging = new HashSet<>();
+        private final Map<Integer, Integer> exeIDs = new HashMap<>();
+        private int sameValueVars = 0, sameContentExecutions = 0;
+
+        private Merge(File dir) throws IOException {
+            this.dir = dir;
+            this.strings = loadStrings(new File(dir, STRINGS));
+        }
+
+        private void run() throws IOException {
+            mergeSymbols(new ColumnInput(new File(dir, SYMBOLS)));
+            ColumnInput vars = new ColumnInput(new File(dir, VARS));
+            int[] ids = vars.readInts();
+            varKinds = vars.readInts();
+            varTypes = vars.readInts();
+            varValues = vars.readBlobs();
+            for (int i = 0; i < ids.length; i++)
+                varRows.put(ids[i], i);
+            for (int id : ids)
+                toVarID(id);
+            List<MethodExecution> executions = new ArrayList<>();
+            Set<MethodExecution> constructing = new HashSet<>();
+            loadExecutions(new ColumnInput(new File(dir, EXECUTIONS)), trace, instrumentResult, strings, this::toExeID, this::toVarID, (execution, isConstructing) -> {
+                executions.add(execution);
+                if (isConstructing) constructing.add(execution);
+                trace.getCallGraph().addVertex(execution.getID());
+            });
+            loadEdges(new ColumnInput(new File(dir, EDGES)), trace.getCallGraph(), this::toExeID);
+            loadDefs(new ColumnInput(new File(dir, DEFS)), trace, this::toVarID, this::toExeID);
+            loadTimings(new File(dir, TIMINGS), instrumentResult);
+            for (int i = executions.size() - 1; i >= 0; i--) { // callees end before callers, as when logged
+                MethodExecution execution = executions.get(i);
+                MethodExecution duplicate = constructing.contains(execution) ? null : trace.getSameContentExecution(execution);
+                if (duplicate != null) {
+                    trace.replacePossibleDefExe(execution, duplicate);
+                    trace.changeVertex(execution.getID(), duplicate.getID());
+                    sameContentExecutions++;
+                } else
+                    trace.restoreMethodExecution(execution, constructing.contains(execution));
+            }
+            logger.info("Trace merged from " + dir.getAbsolutePath() + ": " + executions.size() + " executions (" + sameContentExecutions + " of the same content as existing ones), "
+                    + ids.length + " vars (" + sameValueVars + " of the same value as existing ones)");
+        }
+
+        private void mergeSymbols(ColumnInput in) {
+            int[] classNames = in.readInts();
+            classSymbols = new int[classNames.length];
+            for (int symbol = 0; symbol < classNames.length; symbol++) {
+                Class<?> clazz = toClass(getString(strings, classNames[symbol]));
+                classSymbols[symbol] = clazz == null ? instrumentResult.reserveClassSymbol() : instrumentResult.getClassSymbol(clazz);
+            }
+            int[] fieldClasses = in.readInts(), fieldNames = in.readInts();
+            fieldSymbols = new int[fieldClasses.length];
+            for (int symbol = 0; symbol < fieldClasses.length; symbol++) {
+                Field field = toField(getString(strings, fieldClasses[symbol]), getString(strings, fieldNames[symbol]));
+                fieldSymbols[symbol] = field == null ? instrumentResult.reserveFieldSymbol() : instrumentResult.getFieldSymbol(field);
+            }
+        }
+
+        /**
+         * Merge the var of the ID in the store into the trace, after the vars it refers to
+         *
+         * @return ID of the var in the trace
+         */
+        private int toVarID(int id) {
+            if (id <= 0) return id; // none, or the null var
+            Integer mapped = varIDs.get(id);
+            if (mapped != null) return mapped;
+            Integer row = varRows.get(id);
+            if (row == null) throw new IllegalStateException("Var " + id + " cannot be found in trace store " + dir);
+            if (!varsMerging.add(id)) { // referred to by a var it refers to, kept as a var of its own
+                varIDs.put(id, ExecutionTrace.getNewVarID());
+                return varIDs.get(id);
+            }
+            Class<? extends VarDetail> varClass = VAR_CLASSES.get(varKinds[row]);
+            Class<?> type = toVarType(id, strings[varTypes[row]]);
+            Object checkVal = remapVarValue(readVarValue(varValues.get(row), varClass), varClass);
+            mapped = varIDs.get(id);
+            if (mapped == null && checkVal != null) {
+                VarDetail existing = trace.getSameValueVarDetail(varClass, type.getName(), checkVal);
+                if (existing != null) {
+                    varIDs.put(id, existing.getID());
+                    sameValueVars++;
+                    return existing.getID();
+                }
+            }
+            if (mapped == null) {
+                mapped = ExecutionTrace.getNewVarID();
+                varIDs.put(id, mapped);
+            }
+            trace.restoreVarDetail(toVarDetail(mapped, varClass, type, checkVal), checkVal);
+            return mapped;
+        }
+
+        private Object remapVarValue(Object checkVal, Class<? extends VarDetail> varClass) {
+            if (checkVal == null) return null;
+            if (varClass.equals(StringBVarDetails.class))
+                return toVarID((Integer) checkVal);
+            if (checkVal instanceof ObjectSnapshot)
+                return SnapshotParser.remap((ObjectSnapshot) checkVal, s -> classSymbols[s], s -> fieldSymbols[s], this::toVarID);
+            if (varClass.equals(ObjVarDetails.class) || varClass.equals(ArrVarDetails.class) || varClass.equals(MapVarDetails.class))
+                return XMLParser.remapVarIDs((String) checkVal, this::toVarID);
+            return checkVal;
+        }
+
+        private int toExeID(int id) {
+            return exeIDs.computeIfAbsent(id, i -> ExecutionLogger.getNewExeID());
+        }
+    }
+
+    /**
+     * Strings of a store, each given an index on first use
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int indexOf(String string) {
+            if (string == null) return -1;
+            Integer index = indexes.get(string);
+            if (index != null) return index;
+            indexes.put(string, strings.size());
+            strings.add(string);
+            return strings.size() - 1;
+        }
+    }
+
+    private static class IntColumn {
+        private int[] values = new int[64];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Rows of bytes, each row written via the stream returned by row
+     */
+    private static class BlobColumn {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final IntColumn ends = new IntColumn();
+        private boolean started = false;
+
+        DataOutputStream row() {
+            if (started) ends.add(out.size());
+            started = true;
+            return out;
+        }
+
+        IntColumn finish() {
+            if (started) ends.add(out.size());
+            started = false;
+            return ends;
+        }
+    }
+
+    private static class ColumnOutput implements Closeable {
+        private final DataOutputStream out;
+
+        ColumnOutput(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        void writeInts(IntColumn column) throws IOException {
+            out.writeInt(column.size);
+            for (int i = 0; i < column.size; i++)
+                out.writeInt(column.values[i]);
+        }
+
+        void writeBlobs(BlobColumn column) throws IOException {
+            writeInts(column.finish());
+            out.writeInt(column.bytes.size());
+            column.bytes.writeTo(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static class ColumnInput {
+        private final ByteBuffer buffer;
+
+        ColumnInput(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after the channel is closed
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException(file + " is not a trace store file of version " + VERSION);
+        }
+
+        int[] readInts() {
+            int size = buffer.getInt();
+            int[] values = new int[size];
+            buffer.asIntBuffer().get(values);
+            ((Buffer) buffer).position(buffer.position() + size * Integer.BYTES);
+            return values;
+        }
+
+        Blobs readBlobs() {
+            int[] ends = readInts();
+            int length = buffer.getInt();
+            ByteBuffer bytes = buffer.slice();
+            ((Buffer) bytes).limit(length);
+            ((Buffer) buffer).position(buffer.position() + length);
+            return new Blobs(ends, bytes);
+        }
+    }
+
+    private static class Blobs {
+        private final int[] ends;
+        private final ByteBuffer bytes;
+
+        Blobs(int[] ends, ByteBuffer bytes) {
+            this.ends = ends;
+            this.bytes = bytes;
+        }
+
+        int size() {
+            return ends.length;
+        }
+
+        /**
+         * @return bytes of the row, as a view of the mapped file
+         */
+        ByteBuffer get(int row) {
+            ByteBuffer view = bytes.duplicate();
+            ((Buffer) view).limit(ends[row]);
+            ((Buffer) view).position(row == 0 ? 0 : ends[row - 1]);
+            return view;
+        }
+    }
+}
@@ -13,8 +13,6 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static kwyyeung.autoboost.helper.Helper.sootTypeToClass;
-
 public class MethodInvStmt extends Stmt {
     private final String callee;
     private final int methodInvID;
@@ -27,7 +25,7 @@ public class MethodInvStmt extends Stmt {
         MethodDetails details = InstrumentResult.getSingleton().getMethodDetailByID(methodInvID);
         IntStream.range(0, details.getParameterCount()).filter(i -> !(paramStmts.get(i) instanceof CastStmt) && paramStmts.get(i).getResultVarDetailID() == ExecutionTrace.getSingleton().getNullVar().getID())
                 .forEach(i -> {
-                    Class<?> castType = sootTypeToClass(details.getParameterTypes().get(i));
+                    Class<?> castType = details.getParameterClasses()[i];
                     if (castType != null)
                         paramStmts.set(i, new CastStmt(paramStmts.get(i).getResultVarDetailID(), castType, paramStmts.get(i)));
                 });
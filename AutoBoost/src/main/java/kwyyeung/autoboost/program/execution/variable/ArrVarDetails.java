@@ -2,7 +2,7 @@ package kwyyeung.autoboost.program.execution.variable;
 
 import kwyyeung.autoboost.entity.CREATION_TYPE;
 import kwyyeung.autoboost.helper.Properties;
-import kwyyeung.autoboost.helper.xml.XMLParser;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
 import kwyyeung.autoboost.program.execution.ExecutionTrace;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,7 +33,7 @@ public class ArrVarDetails extends VarDetail {
 
     public List<Integer> getComponents() {
         if(components == null) {
-            components = XMLParser.fromXMLtoVarDetailIDList(this, (String) value);
+            components = SnapshotParser.toVarDetailIDList(this, value);
         }
         return components;
     }
@@ -1,7 +1,7 @@
 package kwyyeung.autoboost.program.execution.variable;
 
 import kwyyeung.autoboost.entity.CREATION_TYPE;
-import kwyyeung.autoboost.helper.xml.XMLParser;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
 import kwyyeung.autoboost.program.execution.ExecutionTrace;
 import soot.Modifier;
 
@@ -25,7 +25,7 @@ public class MapVarDetails extends VarDetail {
 
     public Set<Map.Entry<Integer, Integer>> getKeyValuePairs() {
         if(keyValuePairs == null) {
-            keyValuePairs = XMLParser.fromXMLtoVarDetailIDMap(this, String.valueOf(value));
+            keyValuePairs = SnapshotParser.toVarDetailIDMap(this, value);
         }
         return keyValuePairs;
     }
@@ -2,6 +2,7 @@ package kwyyeung.autoboost.program.generation;
 
 import kwyyeung.autoboost.entity.METHOD_TYPE;
 import kwyyeung.autoboost.helper.Helper;
+import kwyyeung.autoboost.helper.InvocationResult;
 import kwyyeung.autoboost.helper.PUTExecutor;
 import kwyyeung.autoboost.program.execution.variable.*;
 import org.apache.commons.lang3.ArrayUtils;
@@ -105,9 +106,8 @@ class ExecutionChecker {
 
     }
 
-    protected static void constructMock(VarDetail p, TestCase testCase) {
+    protected static void constructMock(VarDetail p, Class<?> valType, TestCase testCase) {
         if (testCase.createdObjForVar(p.getID())) return;
-        Class<?> valType = Helper.getAccessibleMockableSuperType(p.getType(), testCase.getPackageName());
         testCase.addObjForVar(p.getID(), Mockito.mock(valType));
     }
 
@@ -116,33 +116,35 @@ class ExecutionChecker {
 
         MethodDetails toInvoke = execution.getMethodInvoked();
         if (toInvoke.getType() == METHOD_TYPE.CONSTRUCTOR) {
-            try {
-                Constructor constructor = toInvoke.getdClass().getDeclaredConstructor(toInvoke.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
-                constructor.setAccessible(true);
-                testCase.addObjForVar(resultID.getID(),putExecutor.callMethodWithTimeout(() -> constructor.newInstance(params)) );
-            } catch (NoSuchMethodException |
-                     InvocationTargetException e) {
+            InvocationResult result = invoke(toInvoke, null, params);
+            if (result.isReturned())
+                testCase.addObjForVar(resultID.getID(), result.getValue());
+            else
                 testCase.setRecreated(false);
-            }
         } else {
             Object returnVal = null;
-            try {
-                Method method = toInvoke.getdClass().getDeclaredMethod(toInvoke.getName(), toInvoke.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
-                method.setAccessible(true);
-                returnVal = putExecutor.callMethodWithTimeout(() -> method.invoke(callee, params));
-//                returnVal = method.invoke(callee, params);
+            InvocationResult result = invoke(toInvoke, callee, params);
+            if (result.isReturned()) {
+                returnVal = result.getValue();
                 if (callee != null)
                     testCase.addObjForVar(execution.getResultThisId(), callee);
-            } catch (NoSuchMethodException | InvocationTargetException e) {
+            } else {
                 testCase.setRecreated(false);
-//                logger.error(e.getClass() + "\t" + e.getMessage() + "\t" + toInvoke.getSignature());
-//                e.printStackTrace();
+//                logger.error(result.getThrown() + "\t" + toInvoke.getSignature());
             }
             if (execution.getReturnValId() != -1)
                 testCase.addObjForVar(execution.getReturnValId(), returnVal);
         }
     }
 
+    private static InvocationResult invoke(MethodDetails toInvoke, Object callee, Object[] params) {
+        try {
+            return putExecutor.invoke(toInvoke, callee, params);
+        } catch (NoSuchMethodException e) {
+            return InvocationResult.threw(e);
+        }
+    }
+
     protected static void setField(Object toSet, String className, String fieldName, Object fieldVal) {
         try {
             Field field = Class.forName(className).getDeclaredField(fieldName);
@@ -162,7 +164,7 @@ class ExecutionChecker {
         }
         MethodDetails methodDetails = execution.getMethodInvoked();
         try {
-            Method toMock = methodDetails.getdClass().getMethod(methodDetails.getName(), methodDetails.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
+            Method toMock = methodDetails.getdClass().getMethod(methodDetails.getName(), methodDetails.getParameterClasses());
             toMock.setAccessible(true);
             Mockito.when(toMock.invoke(obj, params)).thenReturn(returnVal);
             if (obj != null)
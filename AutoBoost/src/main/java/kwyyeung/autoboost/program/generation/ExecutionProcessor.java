@@ -3,9 +3,11 @@ package kwyyeung.autoboost.program.generation;
 import kwyyeung.autoboost.application.AutoBoost;
 import kwyyeung.autoboost.application.PROGRAM_STATE;
 import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.INVOCATION_OUTCOME;
 import kwyyeung.autoboost.entity.METHOD_TYPE;
 import kwyyeung.autoboost.entity.UnrecognizableException;
 import kwyyeung.autoboost.helper.Helper;
+import kwyyeung.autoboost.helper.InvocationResult;
 import kwyyeung.autoboost.helper.PUTExecutor;
 import kwyyeung.autoboost.helper.Properties;
 import kwyyeung.autoboost.program.analysis.MethodDetails;
@@ -22,6 +24,7 @@ import org.mockito.Mockito;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -31,7 +34,9 @@ public class ExecutionProcessor {
     private static final String[] SKIP_MEMBER_METHODS = {"equals", "toString", "hashCode"};
     private static final String[] SKIP_STATIC_METHODS = {"hashCode"};
     private final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
-    private final Map<Class, MethodExecution> classToDefExeMap = new HashMap<>();
+    private final Map<Class<?>, MethodExecution> classToDefExeMap = Collections.synchronizedMap(new HashMap<>()); // may hold null values
+    private final Map<Class<?>, Object> classSearchLocks = new ConcurrentHashMap<>();
+    private final Set<Map.Entry<Integer, List<Integer>>> reenacted = ConcurrentHashMap.newKeySet(); // IDs of constructors / methods run again in constructor search, with IDs of their params
     private final InstrumentResult instrumentResult = InstrumentResult.getSingleton();
 
     private final PUTExecutor putExecutor = PUTExecutor.getSingleton();
@@ -65,7 +70,7 @@ public class ExecutionProcessor {
         return IntStream.range(0, target.getParams().size())
                 .allMatch(pID -> {
                     VarDetail p = executionTrace.getVarDetailByID(target.getParams().get(pID));
-                    Class<?> paramType = Helper.sootTypeToClass(target.getMethodInvoked().getParameterTypes().get(pID));
+                    Class<?> paramType = target.getMethodInvoked().getParameterClasses()[pID];
                     return canRecreateParam(target, paramType, p, new HashSet<>());
                 }) &&
                 !hasUnmockableUsages(target, toMock, cannotMock, new HashSet<>());
@@ -343,7 +348,9 @@ public class ExecutionProcessor {
         try {
             // check if the method is actually called by subclass callee
             // if yes, they cannot be specified in test case and hence cannot be used as target
-            Method method = details.getdClass().getDeclaredMethod(details.getName(), details.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class<?>[]::new));
+            Executable executable = details.getExecutable();
+            if (!(executable instanceof Method)) return true; // constructors
+            Method method = (Method) executable;
             if (method.isBridge()) return false;
             if (target.getCalleeId() == -1) return true; // if no callee, no overriding problems
             if (target.getCallee().getType().equals(details.getdClass())) return true;
@@ -389,74 +396,82 @@ public class ExecutionProcessor {
         return true;
     }
 
-    protected MethodExecution getExeConstructingClass(Class<?> creatingClass, Set<Class> processing, boolean cache) {
-        MethodExecution defExe;
-        PROGRAM_STATE oldProgramState = AutoBoost.getCurrentProgramState();
-        AutoBoost.setCurrentProgramState(PROGRAM_STATE.CONSTRUCTOR_SEARCH);
-        if (!this.classToDefExeMap.containsKey(creatingClass)) {
-            Comparator constructionPriority = Comparator.comparingInt(e -> ((MethodExecution) e).getMethodInvoked().getAccess().getPerferenceLv()).thenComparingDouble(o -> {
-                List<VarDetail> params = ((MethodExecution) o).getParams().stream().map(executionTrace::getVarDetailByID).collect(Collectors.toList());
-                return params.size() == 0 ? 1 : params.stream().filter(p -> p instanceof EnumVarDetails || p instanceof PrimitiveVarDetails || p instanceof StringBVarDetails || p instanceof StringVarDetails || p instanceof WrapperVarDetails).count() / params.size();
-            });
+    protected MethodExecution getExeConstructingClass(Class<?> creatingClass, Set<Class<?>> processing, boolean cache) {
+        if (this.classToDefExeMap.containsKey(creatingClass)) return this.classToDefExeMap.get(creatingClass);
+        synchronized (this.classSearchLocks.computeIfAbsent(creatingClass, c -> new Object())) { // a class is searched by one thread at a time, once if cached
+            if (this.classToDefExeMap.containsKey(creatingClass)) return this.classToDefExeMap.get(creatingClass);
             if (processing.contains(creatingClass)) return null;
+            PROGRAM_STATE oldProgramState = AutoBoost.getThreadProgramState();
+            AutoBoost.setThreadProgramState(PROGRAM_STATE.CONSTRUCTOR_SEARCH); // only this thread (and PUT calls it makes) searches for constructors
             processing.add(creatingClass);
-            Set<Constructor> tried = new HashSet<>();
-//            if (creatingClass.getName().startsWith(Properties.getSingleton().getPUT()))
-            executionTrace.getAllMethodExecs().values().stream().filter(ex -> canUseForConstructing(creatingClass, ex) && canReenact(ex)).forEach(e -> {
-                MethodDetails md = e.getMethodInvoked();
-                if (md.getType().equals(METHOD_TYPE.CONSTRUCTOR)) {
-                    try {
-                        Constructor toCall = md.getdClass().getDeclaredConstructor(md.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
-                        tried.add(toCall);
-                        if (md.getAccess().equals(ACCESS.PRIVATE)) return;
-                        toCall.setAccessible(true);
-                        putExecutor.callMethodWithTimeout(() -> toCall.newInstance(e.getParams().stream().map(executionTrace::getVarDetailByID).map(this::getRecreatedParam).toArray(Object[]::new)));
-
-                    } catch (NoSuchMethodException |
-                             InvocationTargetException | SecurityException ignored) {
-                    }
-                }
-                if (md.getType().equals(METHOD_TYPE.STATIC) && md.getParameterCount() == 0) {
-                    try {
-                        Method method = md.getdClass().getDeclaredMethod(md.getName());
-                        if (soot.Modifier.isPrivate(method.getModifiers())) return;
-                        method.setAccessible(true);
-                        putExecutor.callMethodWithTimeout(() -> method.invoke(null));
-                    } catch (NoSuchMethodException | InvocationTargetException ignored) {
+            try {
+                MethodExecution defExe = searchExeConstructingClass(creatingClass, processing);
+                if (cache)
+                    this.classToDefExeMap.put(creatingClass, defExe);
+                return defExe;
+            } finally {
+                processing.remove(creatingClass);
+                AutoBoost.setThreadProgramState(oldProgramState);
+            }
+        }
+    }
 
-                    }
+    private MethodExecution searchExeConstructingClass(Class<?> creatingClass, Set<Class<?>> processing) {
+        Comparator<MethodExecution> constructionPriority = Comparator.<MethodExecution>comparingInt(e -> e.getMethodInvoked().getAccess().getPerferenceLv()).thenComparingDouble(o -> {
+            List<VarDetail> params = o.getParams().stream().map(executionTrace::getVarDetailByID).collect(Collectors.toList());
+            return params.size() == 0 ? 1 : params.stream().filter(p -> p instanceof EnumVarDetails || p instanceof PrimitiveVarDetails || p instanceof StringBVarDetails || p instanceof StringVarDetails || p instanceof WrapperVarDetails).count() / params.size();
+        });
+        List<MethodExecution> candidates = executionTrace.getExesProducing(creatingClass); // null if the trace is not sealed
+        (candidates == null ? executionTrace.getAllMethodExecs().values().stream() : candidates.stream())
+                .filter(ex -> canUseForConstructing(creatingClass, ex) && canReenact(ex))
+                .forEach(this::reenact);
+
+        MethodExecution defExe = executionTrace.getConstructingMethodExes().getOrDefault(creatingClass, new HashSet<>()).stream().filter(c -> canUseForConstructing(creatingClass, c)).sorted(constructionPriority).findFirst().orElse(null);
+        if (defExe == null) {
+            Arrays.stream(creatingClass.getConstructors()).forEach(c -> {
+                try {
+                    c.setAccessible(true);
+                    putExecutor.callMethodWithTimeout(() -> c.newInstance(Arrays.stream(c.getParameterTypes()).map(ty -> this.getDefaultParams(ty, processing)).toArray()));
+                } catch (InvocationTargetException ignored) {
+                }
+            });
+            defExe = executionTrace.getConstructingMethodExes().getOrDefault(creatingClass, new HashSet<>()).stream().filter(c -> canUseForConstructing(creatingClass, c)).sorted(constructionPriority).findFirst().orElse(null);
+        }
+        if (defExe == null) {
+            Arrays.stream(creatingClass.getDeclaredMethods()).filter(m -> Modifier.isStatic(m.getModifiers()) && m.getParameterCount() == 0 && m.getReturnType().equals(creatingClass) && Modifier.isPublic(m.getModifiers())).forEach(m -> {
+                try {
+                    putExecutor.callMethodWithTimeout(()->m.invoke(null));
+                } catch (InvocationTargetException ignored) {
                 }
             });
+            defExe = executionTrace.getConstructingMethodExes().getOrDefault(creatingClass, new HashSet<>()).stream().filter(c -> canUseForConstructing(creatingClass, c)).sorted(constructionPriority).findFirst().orElse(null);
 
-            defExe = (MethodExecution) executionTrace.getConstructingMethodExes().getOrDefault(creatingClass, new HashSet<>()).stream().filter(c -> canUseForConstructing(creatingClass, c)).sorted(constructionPriority).findFirst().orElse(null);
-            if (defExe == null) {
-                Arrays.stream(creatingClass.getConstructors()).forEach(c -> {
-                    try {
-                        c.setAccessible(true);
-                        putExecutor.callMethodWithTimeout(() -> c.newInstance(Arrays.stream(c.getParameterTypes()).map(ty -> this.getDefaultParams(ty, processing)).toArray()));
-                    } catch (InvocationTargetException ignored) {
-                    }
-                });
-                defExe = (MethodExecution) executionTrace.getConstructingMethodExes().getOrDefault(creatingClass, new HashSet<>()).stream().filter(c -> canUseForConstructing(creatingClass, c)).sorted(constructionPriority).findFirst().orElse(null);
-            }
-            if (defExe == null) {
-                Arrays.stream(creatingClass.getDeclaredMethods()).filter(m -> Modifier.isStatic(m.getModifiers()) && m.getParameterCount() == 0 && m.getReturnType().equals(creatingClass) && Modifier.isPublic(m.getModifiers())).forEach(m -> {
-                    try {
-                        putExecutor.callMethodWithTimeout(()->m.invoke(null));
-                    } catch (InvocationTargetException ignored) {
-                    }
-                });
-                defExe = (MethodExecution) executionTrace.getConstructingMethodExes().getOrDefault(creatingClass, new HashSet<>()).stream().filter(c -> canUseForConstructing(creatingClass, c)).sorted(constructionPriority).findFirst().orElse(null);
+        }
+        return defExe;
+    }
 
+    /**
+     * Run the constructor / static method of the execution again with its params recreated, so that executions constructing the class are logged.
+     * A constructor / method is run once only for the same params
+     */
+    private void reenact(MethodExecution e) {
+        MethodDetails md = e.getMethodInvoked();
+        if (!this.reenacted.add(new AbstractMap.SimpleEntry<>(md.getId(), new ArrayList<>(e.getParams())))) return;
+        if (md.getType().equals(METHOD_TYPE.CONSTRUCTOR)) {
+            try {
+                md.getExecutable();
+                if (md.getAccess().equals(ACCESS.PRIVATE)) return;
+                putExecutor.invoke(md, null, e.getParams().stream().map(executionTrace::getVarDetailByID).map(this::getRecreatedParam).toArray(Object[]::new));
+            } catch (NoSuchMethodException ignored) {
             }
-
-            if (cache)
-                this.classToDefExeMap.put(creatingClass, defExe);
-        } else defExe = this.classToDefExeMap.get(creatingClass);
-        processing.remove(creatingClass);
-
-        AutoBoost.setCurrentProgramState(oldProgramState);
-        return defExe;
+        }
+        if (md.getType().equals(METHOD_TYPE.STATIC) && md.getParameterCount() == 0) {
+            try {
+                if (soot.Modifier.isPrivate(md.getExecutable().getModifiers())) return;
+                putExecutor.invoke(md, null, new Object[0]);
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
     }
 
     protected MethodExecution getExeConstructingClass(Class<?> creatingClass, boolean cache) {
@@ -505,21 +520,23 @@ public class ExecutionProcessor {
         return null;
     }
 
-    public Object getDefaultParams(Class<?> paramType, Set<Class> processing) {
+    public Object getDefaultParams(Class<?> paramType, Set<Class<?>> processing) {
         Object res = Helper.getDefaultValue(paramType);
         if (res != null) return res;
         if (paramType.equals(String.class)) return "";
         MethodExecution defExe = this.classToDefExeMap.get(paramType);
         if (defExe != null) {
+            InvocationResult result;
             try {
                 if (defExe.getMethodInvoked().getType().equals(METHOD_TYPE.CONSTRUCTOR))
-                    return putExecutor.callMethodWithTimeout(() -> defExe.getMethodInvoked().getdClass().getDeclaredConstructor(defExe.getMethodInvoked().getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new)).newInstance(defExe.getParams().stream().map(executionTrace::getVarDetailByID).map(this::getRecreatedParam).toArray(Object[]::new)));
+                    result = putExecutor.invoke(defExe.getMethodInvoked(), null, defExe.getParams().stream().map(executionTrace::getVarDetailByID).map(this::getRecreatedParam).toArray(Object[]::new));
                 else
-                    return putExecutor.callMethodWithTimeout(() ->defExe.getMethodInvoked().getdClass().getDeclaredMethod(defExe.getMethodInvoked().getName()).invoke(null));
-            } catch (
-                    InvocationTargetException ignored) {
-                if (soot.Modifier.isFinal(paramType.getModifiers())) return null;
+                    result = putExecutor.invoke(defExe.getMethodInvoked(), null, new Object[0]);
+            } catch (NoSuchMethodException e) {
+                result = InvocationResult.threw(e);
             }
+            if (result.isReturned()) return result.getValue();
+            if (soot.Modifier.isFinal(paramType.getModifiers())) return null;
         }
         if (Helper.isCannotMockType(paramType) || soot.Modifier.isFinal(paramType.getModifiers())) return null;
 //        if (!this.classToDefExeMap.containsKey(paramType) && processing.contains(paramType)) return Mockito.mock(paramType);
@@ -540,7 +557,7 @@ public class ExecutionProcessor {
         if (methodDetails.isFieldAccess()) return false;
         try {
             if (!methodDetails.getName().equals("<clinit>") && !methodDetails.getName().equals("<init>"))
-                methodDetails.getdClass().getDeclaredMethod(methodDetails.getName(), methodDetails.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
+                methodDetails.getExecutable();
         } catch (NoSuchMethodException e) {
             return false;
         }
@@ -566,29 +583,13 @@ public class ExecutionProcessor {
 
     public boolean checkExceptionResult(TestCase testCase, MethodExecution target, Object callee, Object[] params) {
         if(!testCase.isRecreated() || target.getExceptionClass() == null) return false;
-        MethodDetails toInvoke = target.getMethodInvoked();
-        if (toInvoke.getType() == METHOD_TYPE.CONSTRUCTOR) {
-            try {
-                Constructor constructor = toInvoke.getdClass().getDeclaredConstructor(toInvoke.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
-                constructor.setAccessible(true);
-                putExecutor.callMethodWithTimeout(()-> constructor.newInstance(params));
-            }catch (InvocationTargetException e) {
-                return e.getCause().getClass().equals(target.getExceptionClass());
-            } catch (NoSuchMethodException e) {
-                return false;
-            }
-        } else {
-            try {
-                Method method = toInvoke.getdClass().getDeclaredMethod(toInvoke.getName(), toInvoke.getParameterTypes().stream().map(Helper::sootTypeToClass).toArray(Class[]::new));
-                method.setAccessible(true);
-                putExecutor.callMethodWithTimeout(()-> method.invoke(callee, params));
-            } catch (InvocationTargetException e) {
-                return e.getCause().getClass().equals(target.getExceptionClass());
-            }catch (NoSuchMethodException e) {
-                return false;
-            }
+        InvocationResult result;
+        try {
+            result = putExecutor.callIsolated(target.getMethodInvoked(), callee, params);
+        } catch (NoSuchMethodException e) {
+            return false;
         }
-        return false;
+        return result.getOutcome() == INVOCATION_OUTCOME.THREW && result.getThrown().getClass().equals(target.getExceptionClass());
     }
 
 
@@ -0,0 +1,200 @@
+package kwyyeung.autoboost.program.generation;
+
+import org.mockito.Mockito;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep copies of object graphs built for test cases.
+ * Objects of non-JDK classes are instantiated without running constructors and have their fields copied, and JDK collections / maps are rebuilt via their API,
+ * so that hashes are computed of the copies. Immutable values, enum constants and objects held by static fields are shared, as they would be if the graph is built again.
+ * Graphs holding anything else (e.g. mocks, other JDK objects with internal states) cannot be copied.
+ */
+class ObjectGraphCopier {
+    private static final Objenesis objenesis = new ObjenesisStd(true);
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(String.class, Integer.class, Long.class, Short.class, Byte.class, Character.class, Boolean.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, Class.class));
+    private static final Set<Class<?>> REBUILT_TYPES = new HashSet<>(Arrays.asList(ArrayList.class, LinkedList.class, ArrayDeque.class, HashSet.class, LinkedHashSet.class, TreeSet.class, HashMap.class, LinkedHashMap.class, TreeMap.class));
+    private static final Map<Class<?>, Field[]> instanceFieldsMap = new ConcurrentHashMap<>();
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+    private final Deque<Object> toFill = new ArrayDeque<>();
+    private final List<Object> toRebuild = new ArrayList<>(); // in order of discovery, rebuilt in reverse so that elements are complete before they are hashed
+    private final Map<Class<?>, Set<Object>> staticValuesMap = new HashMap<>();
+
+    private ObjectGraphCopier() {
+    }
+
+    /**
+     * @return deep copy of the object
+     * @throws IllegalArgumentException if the graph of the object cannot be copied
+     */
+    static Object copy(Object root) {
+        ObjectGraphCopier copier = new ObjectGraphCopier();
+        Object copy = copier.discover(root, null);
+        try {
+            copier.fill();
+            copier.rebuild();
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return copy;
+    }
+
+    /**
+     * @param owner class of the object referring to the value, null for the root
+     * @return the value itself if it is shared, otherwise its copy (not filled yet if it is first discovered)
+     */
+    private Object discover(Object value, Class<?> owner) {
+        if (value == null) return null;
+        Class<?> type = value.getClass();
+        if (IMMUTABLE_TYPES.contains(type) || value instanceof Enum) return value;
+        Object copy = copies.get(value);
+        if (copy != null) return copy;
+        if (isStaticValue(value, type) || (owner != null && isStaticValue(value, owner))) return value;
+        if (Mockito.mockingDetails(value).isMock())
+            throw new IllegalArgumentException("Cannot copy mock of " + type.getName());
+        if (type.isArray()) {
+            if (type.getComponentType().isPrimitive()) copy = cloneArray(value);
+            else {
+                copy = Array.newInstance(type.getComponentType(), Array.getLength(value));
+                toFill.add(value);
+            }
+        } else if (value instanceof StringBuilder)
+            copy = new StringBuilder((StringBuilder) value);
+        else if (value instanceof StringBuffer)
+            copy = new StringBuffer((StringBuffer) value);
+        else if (type.equals(Object.class)) // e.g. locks
+            copy = new Object();
+        else if (type.equals(Date.class))
+            copy = ((Date) value).clone();
+        else if (REBUILT_TYPES.contains(type)) {
+            copy = newContainer(value);
+            toRebuild.add(value);
+            toFill.add(value);
+        } else if (isJDKType(type) || type.isSynthetic())
+            throw new IllegalArgumentException("Cannot copy object of " + type.getName());
+        else {
+            for (Class<?> superclass = type.getSuperclass(); superclass != null && !superclass.equals(Object.class); superclass = superclass.getSuperclass())
+                if (isJDKType(superclass))
+                    throw new IllegalArgumentException("Cannot copy object of " + type.getName() + " extending " + superclass.getName());
+            copy = objenesis.newInstance(type);
+            toFill.add(value);
+        }
+        copies.put(value, copy);
+        return copy;
+    }
+
+    /**
+     * Set fields / components of copies, and discover the elements of containers to rebuild
+     */
+    private void fill() throws IllegalAccessException {
+        while (!toFill.isEmpty()) {
+            Object original = toFill.poll();
+            Object copy = copies.get(original);
+            Class<?> type = original.getClass();
+            if (type.isArray()) {
+                Object[] components = (Object[]) original;
+                for (int i = 0; i < components.length; i++)
+                    Array.set(copy, i, discover(components[i], null));
+            } else if (original instanceof Collection) {
+                for (Object element : (Collection<?>) original)
+                    discover(element, null);
+            } else if (original instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet()) {
+                    discover(entry.getKey(), null);
+                    discover(entry.getValue(), null);
+                }
+            } else {
+                for (Field field : getInstanceFields(type))
+                    field.set(copy, field.getType().isPrimitive() ? field.get(original) : discover(field.get(original), type));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuild() {
+        for (int i = toRebuild.size() - 1; i >= 0; i--) {
+            Object original = toRebuild.get(i);
+            Object copy = copies.get(original);
+            if (original instanceof Collection) {
+                for (Object element : (Collection<?>) original)
+                    ((Collection<Object>) copy).add(resolve(element));
+            } else {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet())
+                    ((Map<Object, Object>) copy).put(resolve(entry.getKey()), resolve(entry.getValue()));
+            }
+        }
+    }
+
+    private Object resolve(Object value) {
+        if (value == null) return null;
+        return copies.getOrDefault(value, value); // shared if not copied
+    }
+
+    private static Object newContainer(Object original) {
+        if (original instanceof TreeMap) return new TreeMap<>(((TreeMap<?, ?>) original).comparator());
+        if (original instanceof TreeSet) return new TreeSet<>(((TreeSet<?>) original).comparator());
+        try {
+            return original.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static Object cloneArray(Object array) {
+        int length = Array.getLength(array);
+        Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    private boolean isStaticValue(Object value, Class<?> type) {
+        if (isJDKType(type)) return false;
+        return staticValuesMap.computeIfAbsent(type, ObjectGraphCopier::getStaticValues).contains(value);
+    }
+
+    /**
+     * @return values of static fields of the class and its superclasses, by identity
+     */
+    private static Set<Object> getStaticValues(Class<?> type) {
+        Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Class<?> current = type; current != null && !isJDKType(current); current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                try {
+                    field.setAccessible(true);
+                    Object value = field.get(null);
+                    if (value != null) values.add(value);
+                } catch (IllegalAccessException | RuntimeException ignored) { // e.g. inaccessible, taken as not static then
+                }
+            }
+        }
+        return values;
+    }
+
+    private static Field[] getInstanceFields(Class<?> type) {
+        return instanceFieldsMap.computeIfAbsent(type, t -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = t; current != null && !current.equals(Object.class); current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return fields.toArray(new Field[0]);
+        });
+    }
+
+    private static boolean isJDKType(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("jdk.") || name.startsWith("com.sun.");
+    }
+}
@@ -0,0 +1,102 @@
+package kwyyeung.autoboost.program.generation;
+
+import kwyyeung.autoboost.program.generation.test.TestCase;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memo of callees built for test cases, keyed by the callee var and the statements building it (see {@link TestCase#keepOnlyTargetCalleeVar}).
+ * Test cases of targets sharing a callee take a copy of the callee built for the first of them, instead of running the constructors and calls building it and its params again.
+ * Targets are generated in order of callee, hence only the latest callees are kept.
+ */
+class RecreationMemo {
+    private static final Logger logger = LogManager.getLogger(RecreationMemo.class);
+    private static final int CAPACITY = 128;
+    private final Map<String, Entry> entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    });
+    private final AtomicInteger reused = new AtomicInteger(0);
+    private final AtomicInteger built = new AtomicInteger(0);
+
+    /**
+     * Run the recreation steps recorded in the test case, taking its callee from the memo instead of running the steps building it if they are the same as those of an earlier test case
+     */
+    void recreate(TestCase testCase) {
+        List<Runnable> steps = testCase.getRecreationSteps();
+        int checkpoint = testCase.getCheckpoint();
+        int next = 0;
+        if (checkpoint > 0) {
+            String key = testCase.getCheckpointKey();
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.restore(testCase)) {
+                runSteps(steps, 0, checkpoint);
+                testCase.retainObjForVar(testCase.getCheckpointVarID());
+                if (entry == null) entries.put(key, new Entry(testCase));
+                built.incrementAndGet();
+            } else reused.incrementAndGet();
+            next = checkpoint;
+        }
+        runSteps(steps, next, steps.size());
+        testCase.clearRecreationSteps();
+    }
+
+    void logStatistics() {
+        logger.info("Callees of " + reused.get() + " test cases reused from memo, " + built.get() + " built");
+    }
+
+    private static void runSteps(List<Runnable> steps, int from, int to) {
+        for (int i = from; i < to; i++)
+            steps.get(i).run();
+    }
+
+    private static class Entry {
+        private final int varID;
+        private final boolean recreated;
+        private final boolean created; // if an object is built for the callee var
+        private final Object callee; // copy of the callee as it is built, never handed out
+        private final boolean copyable;
+
+        private Entry(TestCase testCase) {
+            this.varID = testCase.getCheckpointVarID();
+            this.recreated = testCase.isRecreated();
+            this.created = testCase.createdObjForVar(varID);
+            Object copy = null;
+            boolean copied = true;
+            if (created) {
+                try {
+                    copy = ObjectGraphCopier.copy(testCase.getObjForVar(varID));
+                } catch (RuntimeException e) {
+                    logger.debug("Callee " + varID + " cannot be copied: " + e.getMessage());
+                    copied = false;
+                }
+            }
+            this.callee = copy;
+            this.copyable = copied;
+        }
+
+        /**
+         * @return if the callee is restored into the test case, otherwise it has to be built again
+         */
+        private boolean restore(TestCase testCase) {
+            if (!copyable) return false;
+            if (created) {
+                try {
+                    testCase.addObjForVar(varID, ObjectGraphCopier.copy(callee));
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }
+            if (!recreated) testCase.setRecreated(false);
+            return true;
+        }
+    }
+}
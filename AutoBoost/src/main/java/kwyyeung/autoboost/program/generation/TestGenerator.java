@@ -5,7 +5,7 @@ import kwyyeung.autoboost.entity.METHOD_TYPE;
 import kwyyeung.autoboost.helper.Helper;
 import kwyyeung.autoboost.helper.PUTExecutor;
 import kwyyeung.autoboost.helper.Properties;
-import kwyyeung.autoboost.helper.xml.XMLParser;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
 import kwyyeung.autoboost.program.analysis.MethodDetails;
 import kwyyeung.autoboost.program.execution.ExecutionTrace;
 import kwyyeung.autoboost.program.execution.MethodExecution;
@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -35,6 +37,7 @@ public class TestGenerator {
     private static final ExecutionTrace executionTrace = ExecutionTrace.getSingleton();
     private final ExecutionProcessor executionProcessor = new ExecutionProcessor();
     private final TestSuite testSuite = new TestSuite();
+    private final RecreationMemo recreationMemo = new RecreationMemo();
 
     public TestGenerator() {
     }
@@ -45,23 +48,75 @@ public class TestGenerator {
 
     public void generateTestCases(List<MethodExecution> snapshot) {
         logger.info("Start generating test cases");
-        snapshot.stream()
-                .distinct()
-                .filter(executionProcessor::testSetUp)
-                .sorted(Comparator.comparingInt(MethodExecution::getCalleeId))
-                .map(e -> {
-                    if (executionProcessor.normalTestSetUp(e)) {
-                        return generateResultCheckingTests(e);
-                    } else if (executionProcessor.exceptionalTestSetUp(e)) {
-                        return generateExceptionTests(e);
-                    }
-                    return null;
-                })
-                .filter(Objects::nonNull)
-                .forEach(testSuite::assignTestCase);
+        int workers = Properties.getSingleton().getGenerationThreads();
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        try {
+            generateTestCases(snapshot, pool == null ? Runnable::run : pool);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        recreationMemo.logStatistics();
         PUTExecutor.getSingleton().shutdown();
     }
 
+    /**
+     * Set up and generate test cases of executions by the executor, on the current thread if there is a single worker.
+     * Test cases are assigned to the suite in the order of executions, with IDs given in that order, so that their order does not depend on scheduling or on the number of workers.
+     * With a pool of workers their content may still do, as workers log executions found while searching for constructors, and share static states of the PUT.
+     *
+     * @param snapshot executions to generate test cases for
+     * @param executor runs the set up and generation of each execution
+     */
+    private void generateTestCases(List<MethodExecution> snapshot, Executor executor) {
+        List<MethodExecution> executions = snapshot.stream().distinct().collect(Collectors.toList());
+        List<Boolean> setUp = runAll(executor, executions, executionProcessor::testSetUp);
+        List<MethodExecution> targets = IntStream.range(0, executions.size()).filter(i -> Boolean.TRUE.equals(setUp.get(i))).mapToObj(executions::get)
+                .sorted(Comparator.comparingInt(MethodExecution::getCalleeId))
+                .collect(Collectors.toList());
+        int testID = 0;
+        for (TestCase testCase : runAll(executor, targets, this::generateTestCase)) {
+            if (testCase == null) continue;
+            testCase.setID(++testID);
+            testSuite.assignTestCase(testCase);
+        }
+    }
+
+    /**
+     * @return results of applying the function to each item by the executor, in the order of items. The result is null for an item failing, so that other items are kept
+     */
+    private static <T, R> List<R> runAll(Executor executor, List<T> items, Function<T, R> function) {
+        List<FutureTask<R>> tasks = items.stream().map(item -> new FutureTask<R>(() -> {
+            try {
+                return function.apply(item);
+            } catch (RuntimeException e) {
+                logger.debug("Fail to process " + item + "\t" + e);
+                return null;
+            }
+        })).collect(Collectors.toList());
+        tasks.forEach(executor::execute);
+        List<R> results = new ArrayList<>(tasks.size());
+        try {
+            for (FutureTask<R> task : tasks)
+                results.add(task.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) { // errors only
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    private TestCase generateTestCase(MethodExecution e) {
+        if (executionProcessor.normalTestSetUp(e)) {
+            return generateResultCheckingTests(e);
+        } else if (executionProcessor.exceptionalTestSetUp(e)) {
+            return generateExceptionTests(e);
+        }
+        return null;
+    }
+
     public TestCase generateResultCheckingTests(MethodExecution e) {
 
         ValueTestCase testCase = new ValueTestCase();
@@ -73,7 +128,8 @@ public class TestGenerator {
             testCase.keepOnlyTargetCalleeVar(e.getCalleeId());
             List<Stmt> params = prepareAndGetRequiredParams(e, testCase);
             setUpMockedParamsAndCalls(e, testCase);
-            ExecutionChecker.constructObj(testCase, e, null, params.stream().map(Stmt::getResultVarDetailID).map(testCase::getObjForVar).toArray());
+            recreationMemo.recreate(testCase);
+            ExecutionChecker.constructObj(testCase, e, null, getObjs(params, testCase));
             testCase.setRecreated(executionProcessor.checkRecreationResult(testCase, e));
             if (!testCase.isRecreated()) {
 //                logger.error("Cannot recreate " + e.toSimpleString());
@@ -106,7 +162,8 @@ public class TestGenerator {
         testCase.keepOnlyTargetCalleeVar(e.getCalleeId());
         List<Stmt> params = prepareAndGetRequiredParams(e, testCase);
         setUpMockedParamsAndCalls(e, testCase);
-        testCase.setRecreated(executionProcessor.checkExceptionResult(testCase, e, testCase.getObjForVar(e.getCalleeId()), params.stream().map(Stmt::getResultVarDetailID).map(testCase::getObjForVar).toArray()));
+        recreationMemo.recreate(testCase);
+        testCase.setRecreated(executionProcessor.checkExceptionResult(testCase, e, testCase.getObjForVar(e.getCalleeId()), getObjs(params, testCase)));
         if (!testCase.isRecreated()) {
 //            logger.error("Cannot recreate " + e.toSimpleString());
             return null;
@@ -179,20 +236,21 @@ public class TestGenerator {
                             mockOccurrences.add(occurrence);
                             occurrence.addReturnVar(e.getReturnValId());
                             VarDetail returnVal = executionTrace.getVarDetailByID(e.getReturnValId());
-                            Object[] paramsForChecking = e.getParams().stream().map(executionTrace::getVarDetailByID).map(p -> {
-                                if (!isVarToMock(p))
-                                    return testCase.getObjForVar(prepareConcreteValue(p, testCase).getResultVarDetailID());
-                                else return ArgumentMatchers.any(p.getType());
-                            }).toArray();
-                            Object returnValToCheck = null;
+                            List<VarDetail> paramsToCheck = e.getParams().stream().map(executionTrace::getVarDetailByID).collect(Collectors.toList());
+                            List<Integer> concreteParamIDs = paramsToCheck.stream().map(p -> isVarToMock(p) ? null : prepareConcreteValue(p, testCase).getResultVarDetailID()).collect(Collectors.toList());
+                            int returnValToCheckID;
                             if (isVarToMock(returnVal)) {
                                 createMockVars(returnVal, testCase);
-                                returnValToCheck = testCase.getObjForVar(returnVal.getID());
+                                returnValToCheckID = returnVal.getID();
                             } else {
-                                returnValToCheck = testCase.getObjForVar(prepareConcreteValue(returnVal, testCase).getResultVarDetailID());
+                                returnValToCheckID = prepareConcreteValue(returnVal, testCase).getResultVarDetailID();
                             }
 
-                            ExecutionChecker.setMock(testCase.getObjForVar(e.getCalleeId()), e, paramsForChecking, returnValToCheck, testCase);
+                            testCase.addRecreationStep(() -> {
+                                // matchers are only taken right before mocking the call
+                                Object[] paramsForChecking = IntStream.range(0, paramsToCheck.size()).mapToObj(i -> concreteParamIDs.get(i) == null ? ArgumentMatchers.any(paramsToCheck.get(i).getType()) : testCase.getObjForVar(concreteParamIDs.get(i))).toArray();
+                                ExecutionChecker.setMock(testCase.getObjForVar(e.getCalleeId()), e, paramsForChecking, testCase.getObjForVar(returnValToCheckID), testCase);
+                            });
                         }
                         testCase.addOrUpdateMockedVar(executionTrace.getVarDetailByID(e.getResultThisId()), mockedVar);
                     } else {
@@ -214,17 +272,17 @@ public class TestGenerator {
         if (v instanceof ArrVarDetails) {
             ((ArrVarDetails) v).getComponents().stream().map(executionTrace::getVarDetailByID).forEach(p -> createMockVars(p, testCase));
 
-            ExecutionChecker.constructArr((ArrVarDetails) v, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructArr((ArrVarDetails) v, testCase));
         } else if (v instanceof MapVarDetails) {
             ((MapVarDetails) v).getKeyValuePairs().stream().flatMap(e -> Stream.of(e.getKey(), e.getValue())).map(executionTrace::getVarDetailByID).forEach(p -> createMockVars(p, testCase));
 
-            ExecutionChecker.constructMap((MapVarDetails) v, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructMap((MapVarDetails) v, testCase));
         } else {
             Class<?> valType = Helper.getAccessibleMockableSuperType(v.getType(), testCase.getPackageName());
             res = new VarStmt(valType, testCase.getNewVarID(), v.getID());
             testCase.addStmt(new AssignStmt(res, new MockInstanceInitStmt(valType)));
             testCase.addOrUpdateMockedVar(v, (VarStmt) res);
-            ExecutionChecker.constructMock(v, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructMock(v, valType, testCase));
         }
     }
 
@@ -260,11 +318,11 @@ public class TestGenerator {
             varStmt = new VarStmt(p.getType(), testCase.getNewVarID(), p.getID());
             testCase.addStmt(new AssignStmt(varStmt, new ConstructStmt(p.getID(), null, components)));
             testCase.addOrUpdateVar(p.getID(), (VarStmt) varStmt);
-            ExecutionChecker.constructMap((MapVarDetails) p, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructMap((MapVarDetails) p, testCase));
             return varStmt;
         } else if (p instanceof ArrVarDetails) {
             components = ((ArrVarDetails) p).getComponents().stream().map(e -> getCreatedOrConstantVar(executionTrace.getVarDetailByID(e), testCase)).collect(Collectors.toList());
-            ExecutionChecker.constructArr((ArrVarDetails) p, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructArr((ArrVarDetails) p, testCase));
             if (((ArrVarDetails) p).getComponents().stream().map(executionTrace::getVarDetailByID).noneMatch(c -> c.getType().isArray()) && ((ArrVarDetails) p).getComponents().size() < 25)
                 return new ConstructStmt(p.getID(), null, components);
             else {
@@ -279,7 +337,7 @@ public class TestGenerator {
 
     private String prepareAndGetCallee(MethodExecution target, TestCase testCase) {
         if (target.getCalleeId() != -1 && target.getCallee() instanceof ObjVarDetails) {
-            if(!XMLParser.getContentMapCache().containsKey(target.getCalleeId())) XMLParser.clearCache();
+            if(!SnapshotParser.isContentMapCached(target.getCalleeId())) SnapshotParser.clearCache();
             preparePUTObj((ObjVarDetails) target.getCallee(), testCase);
         }
         else if (target.getCalleeId() != -1)
@@ -288,6 +346,7 @@ public class TestGenerator {
     }
 
     private void preparePUTObj(ObjVarDetails target, TestCase testCase) {
+        int firstStep = testCase.getRecreationStepCount();
         try {
             MethodExecution defExe = executionProcessor.getExeConstructingClass(target.getType(), true);
             if (defExe == null)
@@ -304,18 +363,20 @@ public class TestGenerator {
             }
             testCase.addStmt(new AssignStmt(calleeVarStmt, invStmt));
             testCase.addOrUpdateVar(target.getID(), calleeVarStmt);
-            ExecutionChecker.constructObj(testCase, defExe, target, params.stream().map(Stmt::getResultVarDetailID).map(testCase::getObjForVar).toArray());
-            XMLParser.fromXMLtoContentMap(target, (String) target.getValue()).entrySet().stream().forEach(e -> {
+            testCase.addRecreationStep(() -> ExecutionChecker.constructObj(testCase, defExe, target, getObjs(params, testCase)));
+            SnapshotParser.toContentMap(target, target.getValue()).entrySet().stream().forEach(e -> {
                 if (!canCreateField(e.getValue()) || !canSetField(testCase, e.getValue())) return;
                 Stmt fieldVal = prepareConcreteValue(e.getValue(), testCase);
                 FieldSetStmt setStmt = new FieldSetStmt(calleeVarStmt, e.getKey().getKey(), e.getKey().getValue(), fieldVal);
                 testCase.addStmt(setStmt);
-                ExecutionChecker.setField(testCase.getObjForVar(target.getID()), e.getKey().getKey(), e.getKey().getValue(), testCase.getObjForVar(fieldVal.getResultVarDetailID()));
+                testCase.addRecreationStep(() -> ExecutionChecker.setField(testCase.getObjForVar(target.getID()), e.getKey().getKey(), e.getKey().getValue(), testCase.getObjForVar(fieldVal.getResultVarDetailID())));
             });
 
         } catch (Exception e) {
 //            logger.error(e.getMessage());
 //            e.printStackTrace();
+        } finally {
+            testCase.groupRecreationSteps(firstStep);
         }
 
     }
@@ -387,17 +448,18 @@ public class TestGenerator {
 
             testCase.addStmt(new AssignStmt(varStmt, new ConstructStmt(p.getID(), null, ((MapVarDetails) p).getKeyValuePairs().stream().map(e -> new PairStmt(prepareConcreteValue(executionTrace.getVarDetailByID(e.getKey()), testCase), prepareConcreteValue(executionTrace.getVarDetailByID(e.getValue()), testCase))).collect(Collectors.toList()))));
             testCase.addOrUpdateVar(p.getID(), (VarStmt) varStmt);
-            ExecutionChecker.constructMap((MapVarDetails) p, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructMap((MapVarDetails) p, testCase));
         } else if (p instanceof ArrVarDetails) {
             varStmt = new VarStmt(p.getType(), testCase.getNewVarID(), p.getID());
             testCase.addStmt(new AssignStmt(varStmt, new ConstructStmt(p.getID(), null, ((ArrVarDetails) p).getComponents().stream().map(e -> prepareConcreteValue(executionTrace.getVarDetailByID(e), testCase)).collect(Collectors.toList()))));
             testCase.addOrUpdateVar(p.getID(), (VarStmt) varStmt);
-            ExecutionChecker.constructArr((ArrVarDetails) p, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructArr((ArrVarDetails) p, testCase));
         } else if (p instanceof MockVarDetails) {
             varStmt = new VarStmt(p.getType(), testCase.getNewVarID(), p.getID());
             testCase.addStmt(new AssignStmt(varStmt, new MockInstanceInitStmt(p.getType())));
             testCase.addOrUpdateMockedVar(p, (VarStmt) varStmt);
-            ExecutionChecker.constructMock(p, testCase);
+            Class<?> valType = Helper.getAccessibleMockableSuperType(p.getType(), testCase.getPackageName());
+            testCase.addRecreationStep(() -> ExecutionChecker.constructMock(p, valType, testCase));
         } else logger.debug(p);
         return varStmt;
     }
@@ -502,12 +564,16 @@ public class TestGenerator {
                 }
             }
             testCase.addStmt(invStmt);
-            ExecutionChecker.constructObj(testCase, execution, executionTrace.getVarDetailByID(execution.getResultThisId()), params.stream().map(Stmt::getResultVarDetailID).map(testCase::getObjForVar).toArray());
+            testCase.addRecreationStep(() -> ExecutionChecker.constructObj(testCase, execution, executionTrace.getVarDetailByID(execution.getResultThisId()), getObjs(params, testCase)));
         }
 
 
     }
 
+    private static Object[] getObjs(List<Stmt> params, TestCase testCase) {
+        return params.stream().map(Stmt::getResultVarDetailID).map(testCase::getObjForVar).toArray();
+    }
+
     private String getCalleeVarString(MethodExecution execution, TestCase testCase) {
         switch (execution.getMethodInvoked().getType()) {
             case CONSTRUCTOR:
@@ -551,11 +617,11 @@ public class TestGenerator {
             if (components.stream().allMatch(c -> c instanceof ConstantStmt))
                 testCase.addOrUpdateVar(p.getID(), (VarStmt) varStmt);
             else testCase.addOrUpdateMockedVar(p, (VarStmt) varStmt);
-            ExecutionChecker.constructMap((MapVarDetails) p, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructMap((MapVarDetails) p, testCase));
             return varStmt;
         } else if (p instanceof ArrVarDetails) {
             components = ((ArrVarDetails) p).getComponents().stream().map(e -> prepareAndGetRequiredParam(executionTrace.getVarDetailByID(e), testCase)).collect(Collectors.toList());
-            ExecutionChecker.constructArr((ArrVarDetails) p, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructArr((ArrVarDetails) p, testCase));
             if (((ArrVarDetails) p).getComponents().stream().map(executionTrace::getVarDetailByID).noneMatch(c -> c.getType().isArray()) && ((ArrVarDetails) p).getComponents().size() < 25)
                 return new ConstructStmt(p.getID(), null, components);
             else {
@@ -606,11 +672,12 @@ public class TestGenerator {
     }
 
     private Stmt prepareAndGetConstantVar(VarDetail v, String testPackage, TestCase testCase) {
+        VarDetail constant = v;
         if (v.equals(executionTrace.getNullVar())) {
-            testCase.addObjForVar(v.getID(), null);
+            testCase.addRecreationStep(() -> testCase.addObjForVar(constant.getID(), null));
             return new ConstantStmt(v.getID());
         } else if (v instanceof PrimitiveVarDetails || v instanceof StringVarDetails || v instanceof WrapperVarDetails) {
-            ExecutionChecker.constructPrimWrapOrString(v, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructPrimWrapOrString(constant, testCase));
             return new ConstantStmt(v.getID());
         } else if (v instanceof EnumVarDetails) {
             if (v.getType().equals(Class.class)) {
@@ -626,10 +693,11 @@ public class TestGenerator {
                 }
             }
 
-            ExecutionChecker.constructEnum((EnumVarDetails) v, testCase);
+            EnumVarDetails enumVar = (EnumVarDetails) v;
+            testCase.addRecreationStep(() -> ExecutionChecker.constructEnum(enumVar, testCase));
             return new ConstantStmt(v.getID());
         } else if (v instanceof StringBVarDetails) {
-            ExecutionChecker.constructStringB((StringBVarDetails) v, testCase);
+            testCase.addRecreationStep(() -> ExecutionChecker.constructStringB((StringBVarDetails) constant, testCase));
             return new ConstructStmt(v.getID(), null, Collections.singletonList(new ConstantStmt(((StringBVarDetails) v).getStringValID())));
         }
         return null;
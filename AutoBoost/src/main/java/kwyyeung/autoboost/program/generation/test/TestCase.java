@@ -15,7 +15,7 @@ public abstract class TestCase {
     private final Logger logger = LogManager.getLogger(TestCase.class);
     private static final AtomicInteger testIDGenerator = new AtomicInteger(0);
     private final AtomicInteger varIDGenerator = new AtomicInteger(0);
-    private final int ID;
+    private int ID;
     private final Map<Integer, VarStmt> varToVarStmtMap = new HashMap<>();
     private final Map<VarDetail, VarStmt> varToMockedVarStmtMap = new HashMap<>();
     private final List<Stmt> stmtList = new ArrayList<>();
@@ -23,6 +23,10 @@ public abstract class TestCase {
     private final Map<Integer, Object> varToObjMap = new HashMap<>();
     private String packageName = "";
     private boolean recreated = true;
+    private final List<Runnable> recreationSteps = new ArrayList<>();
+    private int checkpoint = 0;
+    private int checkpointVarID = -1;
+    private String checkpointKey = null;
 
     public TestCase() {
         this.ID = testIDGenerator.incrementAndGet();
@@ -39,6 +43,13 @@ public abstract class TestCase {
         return ID;
     }
 
+    /**
+     * Renumber the test case once it is assigned to the suite, as IDs given on creation have gaps of test cases discarded
+     */
+    public void setID(int ID) {
+        this.ID = ID;
+    }
+
 
     public List<Stmt> getStmtList() {
         return stmtList;
@@ -141,9 +152,70 @@ public abstract class TestCase {
         return this.varToObjMap.containsKey(varID);
     }
 
+    /**
+     * Objects for vars are only kept for the target callee var from here, the objects are dropped when the steps recorded so far are run.
+     * The statements so far are recorded with the var as the key of the callee built by those steps
+     */
     public void keepOnlyTargetCalleeVar(int varID) {
-        this.varToObjMap.keySet().retainAll(Collections.singleton(varID));
         this.varToMockedVarStmtMap.clear();
+        this.checkpoint = this.recreationSteps.size();
+        this.checkpointVarID = varID;
+        this.checkpointKey = varID + "@" + packageName + "\n" + outputStmts("", new HashSet<>());
+    }
+
+    public void retainObjForVar(int varID) {
+        this.varToObjMap.keySet().retainAll(Collections.singleton(varID));
+    }
+
+    /**
+     * Record a step building objects for vars, run when the test case is recreated, in the order of recording
+     */
+    public void addRecreationStep(Runnable step) {
+        this.recreationSteps.add(step);
+    }
+
+    public int getRecreationStepCount() {
+        return recreationSteps.size();
+    }
+
+    /**
+     * Combine the steps recorded from the index provided into one, which stops at the first step throwing and marks the test case not recreated
+     */
+    public void groupRecreationSteps(int from) {
+        if (from >= this.recreationSteps.size()) return;
+        List<Runnable> steps = this.recreationSteps.subList(from, this.recreationSteps.size());
+        List<Runnable> group = new ArrayList<>(steps);
+        steps.clear();
+        this.recreationSteps.add(() -> {
+            try {
+                group.forEach(Runnable::run);
+            } catch (RuntimeException e) {
+                setRecreated(false);
+            }
+        });
+    }
+
+    public List<Runnable> getRecreationSteps() {
+        return recreationSteps;
+    }
+
+    public void clearRecreationSteps() {
+        this.recreationSteps.clear();
+    }
+
+    /**
+     * @return number of recreation steps recorded before {@link #keepOnlyTargetCalleeVar}
+     */
+    public int getCheckpoint() {
+        return checkpoint;
+    }
+
+    public int getCheckpointVarID() {
+        return checkpointVarID;
+    }
+
+    public String getCheckpointKey() {
+        return checkpointKey;
     }
 
     public boolean isRecreated() {
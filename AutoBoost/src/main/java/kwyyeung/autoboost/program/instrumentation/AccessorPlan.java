@@ -0,0 +1,102 @@
+package kwyyeung.autoboost.program.instrumentation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Accessors of a class built once, used when capturing its objects:
+ * getters of fields stored in snapshots (same order as InstrumentResult.getClassFields), with their symbols,
+ * and the public static fields holding objects of the class, for representing such objects as the field (artificial enum).
+ */
+public class AccessorPlan {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final List<Field> fields;
+    private final int[] fieldSymbols;
+    private final MethodHandle[] getters;
+    private final Map<Object, Integer> constantToFieldIndexMap = new IdentityHashMap<>(); // values of final constant fields, read once
+    private final List<Field> constantFields = new ArrayList<>();
+    private final List<Integer> variableConstantIndexes = new ArrayList<>(); // constant fields not final, read on every lookup
+
+    AccessorPlan(Class<?> type, List<Field> fields, int[] fieldSymbols, Set<String> publicStaticFields) {
+        this.fields = fields;
+        this.fieldSymbols = fieldSymbols;
+        this.getters = new MethodHandle[fields.size()];
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (int i = 0; i < fields.size(); i++) {
+            Field f = fields.get(i);
+            try {
+                f.setAccessible(true);
+                MethodHandle getter = lookup.unreflectGetter(f);
+                if (Modifier.isStatic(f.getModifiers())) getter = MethodHandles.dropArguments(getter, 0, Object.class);
+                getters[i] = getter.asType(GETTER_TYPE);
+            } catch (IllegalAccessException | RuntimeException e) {
+                getters[i] = null; // fall back to Field.get, which fails the same way as before
+            }
+        }
+        for (Field f : type.getDeclaredFields()) {
+            if (!f.getType().equals(type)) continue;
+            if (publicStaticFields == null ? !(Modifier.isPublic(f.getModifiers()) && Modifier.isStatic(f.getModifiers())) : !publicStaticFields.contains(f.getName()))
+                continue;
+            int index = constantFields.size();
+            if (Modifier.isStatic(f.getModifiers()) && Modifier.isFinal(f.getModifiers())) {
+                Object val;
+                try {
+                    val = f.get(null);
+                } catch (IllegalAccessException e) {
+                    continue; // never matched
+                }
+                if (val == null) continue;
+                constantToFieldIndexMap.putIfAbsent(val, index);
+            } else variableConstantIndexes.add(index);
+            constantFields.add(f);
+        }
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public int[] getFieldSymbols() {
+        return fieldSymbols;
+    }
+
+    /**
+     * @param index index of field in getFields
+     * @param obj   object to read, ignored for static fields
+     * @return value of field
+     */
+    public Object get(int index, Object obj) {
+        MethodHandle getter = getters[index];
+        try {
+            if (getter != null) return (Object) getter.invokeExact(obj);
+            return fields.get(index).get(obj);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param obj object of the class
+     * @return name of public static field of the class holding the same object, null if there is none
+     */
+    public String findConstantName(Object obj) {
+        Integer constantIndex = constantToFieldIndexMap.get(obj);
+        int limit = constantIndex == null ? constantFields.size() : constantIndex;
+        for (int index : variableConstantIndexes) { // fields declared earlier are preferred
+            if (index >= limit) break;
+            Field f = constantFields.get(index);
+            try {
+                if (f.get(obj) == obj) return f.getName();
+            } catch (IllegalAccessException e) {
+                // not accessible, skip
+            }
+        }
+        return constantIndex == null ? null : constantFields.get(constantIndex).getName();
+    }
+}
@@ -1,5 +1,6 @@
 package kwyyeung.autoboost.program.instrumentation;
 
+import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import kwyyeung.autoboost.program.analysis.ClassDetails;
 import kwyyeung.autoboost.program.analysis.MethodDetails;
@@ -15,10 +16,14 @@ import java.util.stream.Collectors;
 public class InstrumentResult {
     private static final InstrumentResult singleton = new InstrumentResult();
     private final Map<Integer, MethodDetails> methodDetailsMap = new ConcurrentHashMap<Integer, MethodDetails>();
-    private final Map<String, ClassDetails> classDetailsMap = new HashMap<>();
+    private final Map<String, ClassDetails> classDetailsMap = new ConcurrentHashMap<>();
     private final Map<String, Integer> libMethSignToMethIDMap = new ConcurrentHashMap<>();
-    private final Map<String, Set<String>> classPublicFieldsMap = new HashMap<>();
+    private final Map<String, Set<String>> classPublicFieldsMap = new ConcurrentHashMap<>();
     private final Map<String, Integer> fieldAccessToMethIDMap = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> classSuperclassesMap = new ConcurrentHashMap<>();
+    private final SymbolTable<Class<?>> classSymbols = new SymbolTable<>(); // symbols of classes stored in snapshots
+    private final SymbolTable<Field> fieldSymbols = new SymbolTable<>(); // symbols of fields stored in snapshots
+    private final Map<Class<?>, AccessorPlan> accessorPlanMap = new ConcurrentHashMap<>();
 
     public static InstrumentResult getSingleton() {
         return singleton;
@@ -59,8 +64,7 @@ public class InstrumentResult {
     }
 
     public void addClassDetails(ClassDetails classDetails) {
-        if (!this.classDetailsMap.containsKey(classDetails.getClassFullName()))
-            this.classDetailsMap.put(classDetails.getClassFullName(), classDetails);
+        this.classDetailsMap.putIfAbsent(classDetails.getClassFullName(), classDetails);
     }
 
     public void clearClassDetails() {
@@ -95,14 +99,50 @@ public class InstrumentResult {
     }
 
     public void addClassPublicFields(String className, SootClass sootClass) {
-        if (this.getClassPublicFieldsMap().containsKey(className)) return;
-        this.getClassPublicFieldsMap().put(className, sootClass.getFields().stream()
+        this.getClassPublicFieldsMap().computeIfAbsent(className, c -> sootClass.getFields().stream()
                 .filter(f -> f.isPublic() && f.isStatic())
                 .map(SootField::getName)
                 .collect(Collectors.toSet())
         );
     }
 
+    /**
+     * Store names of all superclasses of the class provided, unless its hierarchy is incomplete (e.g. with phantom superclass)
+     *
+     * @param sootClass class under instrumentation
+     */
+    public void addClassSuperclasses(SootClass sootClass) {
+        if (this.classSuperclassesMap.containsKey(sootClass.getName())) return;
+        Set<String> superclasses = new HashSet<>();
+        SootClass current = sootClass;
+        while (current.hasSuperclass()) {
+            current = current.getSuperclass();
+            superclasses.add(current.getName());
+        }
+        if (current.getName().equals(Object.class.getName()))
+            this.classSuperclassesMap.putIfAbsent(sootClass.getName(), superclasses);
+    }
+
+    /**
+     * Check class relationship using superclasses stored during instrumentation. Classes not stored are resolved once by reflection
+     *
+     * @param className      name of class under check
+     * @param superclassName name of possible superclass
+     * @return if superclassName is a superclass of className
+     */
+    public boolean isSuperclass(String className, String superclassName) {
+        Set<String> superclasses = this.classSuperclassesMap.get(className);
+        if (superclasses == null)
+            superclasses = this.classSuperclassesMap.computeIfAbsent(className, c -> {
+                try {
+                    return ClassUtils.getAllSuperclasses(Class.forName(c)).stream().map(Class::getName).collect(Collectors.toSet());
+                } catch (ClassNotFoundException e) {
+                    return new HashSet<>();
+                }
+            });
+        return superclasses.contains(superclassName);
+    }
+
     public List<Field> getClassFields(Class<?> CUC) {
 
         if (classDetailsMap.containsKey(CUC.getName())) return classDetailsMap.get(CUC.getName()).getClassFields();
@@ -114,10 +154,81 @@ public class InstrumentResult {
         return classDetailsMap.get(CUC.getName()).getClassFields();
     }
 
+    /**
+     * @param clazz class to look up
+     * @return symbol of the class, assigned if not seen before
+     */
+    public int getClassSymbol(Class<?> clazz) {
+        return classSymbols.getSymbol(clazz);
+    }
+
+    public int getClassSymbolCount() {
+        return classSymbols.size();
+    }
+
+    /**
+     * @return next class symbol, left without a class
+     */
+    public int reserveClassSymbol() {
+        return classSymbols.reserveSymbol();
+    }
+
+    public Class<?> getClassBySymbol(int symbol) {
+        return classSymbols.getItem(symbol);
+    }
+
+    /**
+     * @param CUC class to look up
+     * @return symbols of fields of the class, in the same order as getClassFields
+     */
+    public int[] getClassFieldSymbols(Class<?> CUC) {
+        return getAccessorPlan(CUC).getFieldSymbols();
+    }
+
+    /**
+     * @param CUC class to look up
+     * @return accessors of the class, built on first request
+     */
+    public AccessorPlan getAccessorPlan(Class<?> CUC) {
+        AccessorPlan plan = accessorPlanMap.get(CUC);
+        if (plan != null) return plan;
+        List<Field> fields = getClassFields(CUC);
+        plan = new AccessorPlan(CUC, fields, fields.stream().mapToInt(fieldSymbols::getSymbol).toArray(), classPublicFieldsMap.get(CUC.getName()));
+        AccessorPlan existing = accessorPlanMap.putIfAbsent(CUC, plan);
+        return existing == null ? plan : existing;
+    }
+
+    /**
+     * @param field field to look up
+     * @return symbol of the field, assigned if not seen before
+     */
+    public int getFieldSymbol(Field field) {
+        return fieldSymbols.getSymbol(field);
+    }
+
+    public int getFieldSymbolCount() {
+        return fieldSymbols.size();
+    }
+
+    /**
+     * @return next field symbol, left without a field
+     */
+    public int reserveFieldSymbol() {
+        return fieldSymbols.reserveSymbol();
+    }
+
+    public Field getFieldBySymbol(int symbol) {
+        return fieldSymbols.getItem(symbol);
+    }
+
     private String getFieldAccessMapKey(String declaringClass, String fieldName) {
         return declaringClass + "_" + fieldName;
     }
 
+    public Map<String, Set<String>> getClassSuperclassesMap() {
+        return classSuperclassesMap;
+    }
+
     public Map<String, Integer> getFieldAccessToMethIDMap() {
         return fieldAccessToMethIDMap;
     }
@@ -0,0 +1,186 @@
+package kwyyeung.autoboost.program.instrumentation;
+
+import kwyyeung.autoboost.entity.INSTRUMENT_SCOPE;
+import kwyyeung.autoboost.helper.Helper;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.analysis.ClassDetails;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.analysis.ReachabilityAnalysis;
+import kwyyeung.autoboost.program.execution.ExecutionLogger;
+import kwyyeung.autoboost.program.execution.TraceStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache of instrumented class files and instrumentation results, so that a program already instrumented before is not processed by Soot again.
+ * Entries are keyed by a hash of the class files to instrument, the PUT, the instrumenting code and the classpath the classes are resolved against
+ * (entries by path, size and modification time, as the hierarchy of library classes affects instrumentation). As classes are instrumented in place, an entry can
+ * also be found by the hash of the instrumented class files, in which case only the instrumentation results are restored.
+ * <p>
+ * Method IDs compiled into instrumented classes are shared by all classes (e.g. IDs of library methods), hence a whole set of class files is cached as a unit.
+ * Faulty methods are looked up again in each run, as they are not part of the key.
+ */
+public class InstrumentationCache {
+    private static final Logger logger = LogManager.getLogger(InstrumentationCache.class);
+    private static final String CLASSES = "classes", RESULT = "result", ALIAS_SUFFIX = ".instrumented";
+    private static final int VERSION = 2;
+    private final File cacheDir;
+    private final Path binDir;
+    private String inputKey = null;
+
+    public InstrumentationCache(File cacheDir, File binDir) {
+        this.cacheDir = cacheDir;
+        this.binDir = binDir.toPath();
+    }
+
+    /**
+     * Restore instrumented class files into the bin directory and load instrumentation results, if they are cached
+     *
+     * @return if the instrumentation is restored, false if the classes have to be instrumented (and stored afterwards)
+     */
+    public boolean restore() throws IOException {
+        inputKey = computeKey();
+        File entry = new File(cacheDir, inputKey);
+        boolean instrumented = false;
+        if (!entry.isDirectory()) {
+            File alias = new File(cacheDir, inputKey + ALIAS_SUFFIX);
+            if (!alias.isFile()) return false;
+            entry = new File(cacheDir, new String(Files.readAllBytes(alias.toPath()), StandardCharsets.UTF_8).trim());
+            if (!entry.isDirectory()) return false;
+            instrumented = true; // class files are the instrumented ones already
+        }
+        if (!instrumented)
+            copyClassFiles(new File(entry, CLASSES).toPath(), binDir);
+        TraceStore.loadInstrumentResult(new File(entry, RESULT));
+        InstrumentResult instrumentResult = InstrumentResult.getSingleton();
+        Properties properties = Properties.getSingleton();
+        properties.setFaultyFuncIds(instrumentResult.getMethodDetailsMap().values().stream()
+                .filter(m -> !m.isFieldAccess() && !instrumentResult.isLibMethod(m.getId()) && properties.getFaultyFunc().contains(m.getSignature()))
+                .map(MethodDetails::getId)
+                .sorted()
+                .collect(Collectors.toList()));
+        logger.info("Instrumentation restored from cache entry " + entry.getName());
+        return true;
+    }
+
+    /**
+     * Store the class files instrumented in the bin directory and the instrumentation results, keyed by the class files before instrumentation
+     */
+    public void store() throws IOException {
+        if (inputKey == null) throw new IllegalStateException("Key of classes before instrumentation is not computed");
+        File entry = new File(cacheDir, inputKey);
+        if (entry.isDirectory()) return;
+        File temp = new File(cacheDir, inputKey + ".tmp" + System.nanoTime());
+        copyClassFiles(binDir, new File(temp, CLASSES).toPath());
+        TraceStore.writeInstrumentResult(new File(temp, RESULT));
+        try {
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Helper.deleteRecursively(temp.toPath()); // e.g. stored by another run at the same time
+            if (!entry.isDirectory()) throw e;
+            return;
+        }
+        Files.write(new File(cacheDir, computeKey() + ALIAS_SUFFIX).toPath(), inputKey.getBytes(StandardCharsets.UTF_8));
+        logger.info("Instrumentation stored in cache entry " + entry.getName());
+    }
+
+    private String computeKey() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(Integer.toString(VERSION).getBytes(StandardCharsets.UTF_8));
+        Properties properties = Properties.getSingleton();
+        digest.update(String.valueOf(properties.getPUT()).getBytes(StandardCharsets.UTF_8));
+        digest.update(properties.getInstrumentScope().name().getBytes(StandardCharsets.UTF_8));
+        if (properties.getInstrumentScope() == INSTRUMENT_SCOPE.REACHABLE) // methods instrumented depend on the test cases
+            digest.update(String.join(",", new TreeSet<>(Arrays.asList(properties.getTestCases()))).getBytes(StandardCharsets.UTF_8));
+        for (Class<?> instrumenting : new Class<?>[]{Instrumenter.class, InstrumentResult.class, MethodDetails.class, ClassDetails.class, ExecutionLogger.class, ReachabilityAnalysis.class,
+                AccessorPlan.class, SymbolTable.class, Helper.class, TraceStore.class})
+            digest.update(readClassFile(instrumenting));
+        digest.update(System.getProperty("java.version", "").getBytes(StandardCharsets.UTF_8));
+        updateClassPath(digest);
+        for (Path file : listClassFiles(binDir)) {
+            digest.update(binDir.relativize(file).toString().replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(file));
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    /**
+     * Hash entries of the classpath of AutoBoost, which Soot resolves classes of the PUT against, excluding the bin directory hashed by content
+     */
+    private void updateClassPath(MessageDigest digest) throws IOException {
+        for (String element : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (element.isEmpty()) continue;
+            Path path = Paths.get(element).toAbsolutePath().normalize();
+            if (path.equals(binDir.toAbsolutePath().normalize())) continue;
+            digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (Files.isDirectory(path)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files)
+                    updateFileStamp(digest, path.relativize(file).toString(), file);
+            } else if (Files.isRegularFile(path))
+                updateFileStamp(digest, "", path);
+        }
+    }
+
+    private static void updateFileStamp(MessageDigest digest, String name, Path file) throws IOException {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Long.toString(Files.size(file)).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Long.toString(Files.getLastModifiedTime(file).toMillis()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static byte[] readClassFile(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            if (in == null) throw new IOException("Class file of " + clazz.getName() + " cannot be found");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                bytes.write(buffer, 0, read);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static List<Path> listClassFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(f -> Files.isRegularFile(f) && f.getFileName().toString().endsWith(".class"))
+                    .sorted(Comparator.comparing(f -> dir.relativize(f).toString()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void copyClassFiles(Path from, Path to) throws IOException {
+        for (Path file : listClassFiles(from)) {
+            Path target = to.resolve(from.relativize(file).toString());
+            Files.createDirectories(target.getParent());
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
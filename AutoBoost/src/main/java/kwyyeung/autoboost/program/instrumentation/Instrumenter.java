@@ -1,8 +1,10 @@
 package kwyyeung.autoboost.program.instrumentation;
 
+import kwyyeung.autoboost.entity.INSTRUMENT_SCOPE;
 import kwyyeung.autoboost.entity.METHOD_TYPE;
 import kwyyeung.autoboost.helper.Properties;
 import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.analysis.ReachabilityAnalysis;
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,11 +20,20 @@ import soot.toolkits.scalar.SimpleLocalUses;
 import soot.toolkits.scalar.UnitValueBoxPair;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static kwyyeung.autoboost.helper.Helper.isCannotMockType;
 
+/**
+ * Adds logging to methods of the PUT. Soot may transform bodies of different classes in parallel, hence all state shared by bodies is set up before
+ * the first body is transformed: bodies are analysed in parallel for calls and field accesses to log, then IDs are assigned in order of signatures,
+ * such that IDs compiled into the program do not depend on the order bodies are transformed in.
+ */
 public class Instrumenter extends BodyTransformer {
     private static final Logger logger = LogManager.getLogger(Instrumenter.class);
     // for information storing and retrieving
@@ -41,6 +52,7 @@ public class Instrumenter extends BodyTransformer {
 
     private static final Set<Type> notMockingTypeSet = new HashSet<>();
     private static final Map<Class<?>, Set<String>> safeJavaLibMethodMap = new HashMap<>(); // adding list of java lib methods that allow using method inputs as inputs, without declaring calling method as unmockable
+    private volatile Map<String, MethodDetails> preparedMethods = null; // details of methods to instrument by signature, read only once prepared
 
     static {
         loggerClass = Scene.v().loadClassAndSupport("kwyyeung.autoboost.program.execution.ExecutionLogger");
@@ -95,51 +107,167 @@ public class Instrumenter extends BodyTransformer {
 
     }
 
+    /**
+     * Set up all methods to instrument among the classes provided, before any of them is transformed.
+     * Class level changes and bookkeeping are done here such that they are not repeated by bodies of the same class transformed in parallel.
+     *
+     * @return details of methods to instrument by signature
+     */
+    private Map<String, MethodDetails> prepare(Collection<SootClass> classes) {
+        List<SootMethod> methods = classes.stream()
+                .filter(c -> !c.isPhantom() && c.getPackageName().startsWith(properties.getPUT()))
+                .flatMap(c -> c.getMethods().stream())
+                .filter(m -> m.isConcrete() && !m.getName().contains("$") && !m.isStaticInitializer()) // if name contains $, not written manually
+                .sorted(Comparator.comparing(SootMethod::getSignature))
+                .collect(Collectors.toList());
+        List<SootClass> declaringClasses = methods.stream().map(SootMethod::getDeclaringClass).distinct().collect(Collectors.toList());
+        declaringClasses.forEach(c -> {
+            instrumentResult.addClassPublicFields(c.getName(), c); // store set of public static fields before modifying them for storing at run time
+            instrumentResult.addClassSuperclasses(c); // store superclasses for checking nested constructors at run time
+        });
+        declaringClasses.forEach(c -> {
+            c.setModifiers(c.getModifiers() & ~Modifier.FINAL);
+            c.getFields()
+                    .forEach(f -> f.setModifiers(f.getModifiers() & ~Modifier.TRANSIENT & ~Modifier.PRIVATE & ~Modifier.FINAL & ~Modifier.PROTECTED | Modifier.PUBLIC)); // set all fields as non transient and public such that their value can be stored during runtime
+        });
+        methods.forEach(m -> m.setModifiers(m.getModifiers() & ~Modifier.FINAL));
+        if (properties.getInstrumentScope() == INSTRUMENT_SCOPE.REACHABLE)
+            methods = getReachableMethods(methods);
+//        currentSootMethod.setModifiers(currentSootMethod.getModifiers() & ~Modifier.FINAL & ~Modifier.PROTECTED &~Modifier.PRIVATE | Modifier.PUBLIC);
+
+        // find calls and field accesses to log
+        Map<String, SootMethod> libMethods = new TreeMap<>();
+        Map<String, SootField> accessedFields = new TreeMap<>();
+        for (List<Stmt> stmts : analyseAll(methods)) {
+            for (Stmt stmt : stmts) {
+                if (toLogInvoke(stmt))
+                    libMethods.putIfAbsent(stmt.getInvokeExpr().getMethod().getSignature(), stmt.getInvokeExpr().getMethod());
+                if (toLogFieldAccess(stmt))
+                    accessedFields.putIfAbsent(stmt.getFieldRef().getField().getSignature(), stmt.getFieldRef().getField());
+            }
+        }
+
+        // assign IDs in order of signatures
+        Map<String, MethodDetails> prepared = new HashMap<>();
+        for (SootMethod method : methods) {
+            MethodDetails methodDetails = new MethodDetails(method);
+            // store ID of faulty methods
+            if (properties.getFaultyFunc().contains(method.getSignature()))
+                properties.addFaultyFuncId(methodDetails.getId());
+            instrumentResult.addMethod(methodDetails);
+            prepared.put(method.getSignature(), methodDetails);
+        }
+        libMethods.values().forEach(this::getLibMethodDetails);
+        accessedFields.values().forEach(this::getFieldAccessingMethodDetails);
+        logger.info("Methods to instrument: " + prepared.size() + ", library methods to log: " + libMethods.size() + ", fields to log: " + accessedFields.size());
+        return prepared;
+    }
+
+    /**
+     * @param methods methods of the PUT in order
+     * @return methods reachable from the test cases, in the same order, or all methods provided if none of the test cases is found
+     */
+    private List<SootMethod> getReachableMethods(List<SootMethod> methods) {
+        List<SootMethod> entries = ReachabilityAnalysis.getTestEntries(properties.getTestCases());
+        if (entries.isEmpty()) {
+            logger.warn("No test cases found for reachability analysis, instrumenting all methods");
+            return methods;
+        }
+        Set<SootMethod> reachable = new ReachabilityAnalysis(c -> !c.isPhantom() && c.getPackageName().startsWith(properties.getPUT())).getReachableMethods(entries);
+        List<SootMethod> reachableMethods = methods.stream().filter(reachable::contains).collect(Collectors.toList());
+        logger.info("Methods reachable from test cases: " + reachableMethods.size() + " out of " + methods.size());
+        return reachableMethods;
+    }
+
+    /**
+     * Tag statements to log in bodies of the methods provided, by the number of threads set for instrumentation
+     *
+     * @return statements of each method that may need logging, in the order of methods
+     */
+    private List<List<Stmt>> analyseAll(List<SootMethod> methods) {
+        ExecutorService pool = Executors.newFixedThreadPool(properties.getInstrumentThreads());
+        try {
+            List<Future<List<Stmt>>> futures = methods.stream().map(m -> pool.submit(() -> analyse(m.retrieveActiveBody()))).collect(Collectors.toList());
+            List<List<Stmt>> results = new ArrayList<>(futures.size());
+            for (Future<List<Stmt>> future : futures)
+                results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Tag calls and field accesses on inputs of the body which have to be logged, touching nothing outside the body
+     *
+     * @return statements tagged
+     */
+    private List<Stmt> analyse(Body body) {
+        SimpleLocalDefs localDefs = new SimpleLocalDefs(new CompleteUnitGraph(body));
+        SimpleLocalUses localUses = new SimpleLocalUses(body, localDefs);
+        Comparator<Unit> unitComparator = (o1, o2) -> o1.equals(o2) ? 0 : 1;
+        Queue<DefinitionStmt> inputUnits = new PriorityQueue<>(unitComparator); // for tracking input arguments and this instance separately
+        for (Unit unit : body.getUnits()) {
+            if (!(unit instanceof JIdentityStmt)) continue;
+            if (((JIdentityStmt) unit).getRightOp() instanceof ParameterRef && needTrackVar(((JIdentityStmt) unit).getLeftOp().getType()))
+                inputUnits.add((DefinitionStmt) unit);
+
+//            if (((JIdentityStmt) unit).getRightOp() instanceof ThisRef) {
+//                addTagForDangerousCallsToLog(localUses, getFieldRefsOfUnit(localUses, unit, new PriorityQueue<>(unitComparator)));
+//            }
+        }
+        addTagForDangerousCallsToLog(localUses, inputUnits);
+        return body.getUnits().stream()
+                .map(u -> (Stmt) u)
+                .filter(s -> toLogInvoke(s) || toLogFieldAccess(s))
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, MethodDetails> getPreparedMethods() {
+        if (preparedMethods == null) {
+            synchronized (this) {
+                if (preparedMethods == null)
+                    preparedMethods = prepare(new ArrayList<>(Scene.v().getApplicationClasses())); // all bodies are retrieved by Soot before transforming any of them
+            }
+        }
+        return preparedMethods;
+    }
+
+    private boolean toLogInvoke(Stmt stmt) {
+        return stmt.containsInvokeExpr() && (stmt.hasTag(CUSTOM_TAGS.INV_TO_LOG_TAG.getTag().getName()) || stmt.hasTag(CUSTOM_TAGS.DAN_LIB_CALL_TO_LOG_TAG.getTag().getName()));
+    }
+
+    private boolean toLogFieldAccess(Stmt stmt) {
+        return stmt.containsFieldRef() && stmt.getFieldRef() instanceof InstanceFieldRef && stmt instanceof DefinitionStmt && stmt.hasTag(CUSTOM_TAGS.DAN_FIELD_ACCESS_TO_LOG_TAG.getTag().getName());
+    }
+
     @Override
     protected void internalTransform(Body body, String phaseName, Map<String, String> options) {
         // for iterating statements in the original program
         PatchingChain<Unit> units = body.getUnits();
         Iterator<?> stmtIt = units.snapshotIterator();
 
-        if (!body.getMethod().getDeclaringClass().getPackageName().startsWith(properties.getPUT())) return;
-
         // method info
         SootMethod currentSootMethod = body.getMethod();
-        if (currentSootMethod.getName().contains("$") || currentSootMethod.isStaticInitializer())
-            return; // if name contains $, not written manually
-        SootClass currentDeclaringClass = currentSootMethod.getDeclaringClass();
-        instrumentResult.addClassPublicFields(currentDeclaringClass.getName(), currentDeclaringClass); // store set of public static fields before modifying them for storing at run time
-        currentDeclaringClass.setModifiers(currentDeclaringClass.getModifiers() & ~Modifier.FINAL);
-        currentDeclaringClass.getFields()
-                .forEach(f -> f.setModifiers(f.getModifiers() & ~Modifier.TRANSIENT & ~Modifier.PRIVATE & ~Modifier.FINAL & ~Modifier.PROTECTED | Modifier.PUBLIC)); // set all fields as non transient and public such that their value can be stored during runtime
-        currentSootMethod.setModifiers(currentSootMethod.getModifiers() & ~Modifier.FINAL);
-        MethodDetails methodDetails = new MethodDetails(currentSootMethod);
-//        currentSootMethod.setModifiers(currentSootMethod.getModifiers() & ~Modifier.FINAL & ~Modifier.PROTECTED &~Modifier.PRIVATE | Modifier.PUBLIC);
-
-        // store ID of faulty methods
-        if (properties.getFaultyFunc().contains(currentSootMethod.getSignature()))
-            properties.addFaultyFuncId(methodDetails.getId());
+        MethodDetails methodDetails = getPreparedMethods().get(currentSootMethod.getSignature());
+        if (methodDetails == null) return; // not in PUT or not written manually
 
-        SimpleLocalDefs localDefs = new SimpleLocalDefs(new CompleteUnitGraph(body));
-        SimpleLocalUses localUses = new SimpleLocalUses(body, localDefs);
         // Prepare for statements adding
-        LocalGenerator localGenerator = new LocalGenerator(currentSootMethod.getActiveBody());
+        LocalGenerator localGenerator = new LocalGenerator(body); // confined to the body under transformation
         boolean paramLogged = false, threadRetrieved = false;
         Value exeIDLocal = localGenerator.generateLocal(IntType.v()), threadIDLocal = localGenerator.generateLocal(LongType.v());
         Local threadClassLocal = localGenerator.generateLocal(threadClass.getType());
-        Comparator<Unit> unitComparator = (o1, o2) -> o1.equals(o2) ? 0 : 1;
-        Queue<DefinitionStmt> inputUnits = new PriorityQueue<>(unitComparator); // for tracking input arguments and this instance separately
         while (stmtIt.hasNext()) {
             Stmt stmt = (Stmt) stmtIt.next();
-            if (stmt instanceof JIdentityStmt) {
-                if (((JIdentityStmt) stmt).getRightOp() instanceof ParameterRef && needTrackVar(((JIdentityStmt) stmt).getLeftOp().getType()))
-                    inputUnits.add((DefinitionStmt) stmt);
-
-//                if (((JIdentityStmt) stmt).getRightOp() instanceof ThisRef) {
-//                    addTagForDangerousCallsToLog(localUses, getFieldRefsOfUnit(localUses, stmt, new PriorityQueue<>(unitComparator)));
-//                }
+            if (stmt instanceof JIdentityStmt)
                 continue;
-            }
             // set thread id
             if (!threadRetrieved) {
                 getThreadIDRetrievalStmts(threadClassLocal, threadIDLocal)
@@ -148,7 +276,6 @@ public class Instrumenter extends BodyTransformer {
             }
             // log start of method call
             if (!paramLogged) {
-                addTagForDangerousCallsToLog(localUses, inputUnits);
                 getLogStartStmts(currentSootMethod, localGenerator, methodDetails, threadIDLocal, exeIDLocal, methodDetails.getType().equals(METHOD_TYPE.MEMBER) ? currentSootMethod.getActiveBody().getThisLocal() : NullConstant.v(), currentSootMethod.getActiveBody().getParameterLocals())
                         .forEach(s -> units.insertBeforeNoRedirect(s, stmt));
                 paramLogged = true;
@@ -162,13 +289,9 @@ public class Instrumenter extends BodyTransformer {
                 getLogEndStmts(currentSootMethod, localGenerator, methodDetails, threadIDLocal, exeIDLocal, methodDetails.getType().equals(METHOD_TYPE.CONSTRUCTOR) || methodDetails.getType().equals(METHOD_TYPE.MEMBER) ? currentSootMethod.getActiveBody().getThisLocal() : NullConstant.v(), stmt)
                         .forEach(s -> units.insertBefore(s, stmt));
             // log method invoke if they were marked
-            if (stmt.containsInvokeExpr() && (stmt.hasTag(CUSTOM_TAGS.INV_TO_LOG_TAG.getTag().getName()) || stmt.hasTag(CUSTOM_TAGS.DAN_LIB_CALL_TO_LOG_TAG.getTag().getName()))) {
+            if (toLogInvoke(stmt)) {
                 InvokeExpr invokeExpr = stmt.getInvokeExpr();
-                MethodDetails invokedMethodDetails = instrumentResult.findExistingLibMethod(invokeExpr.getMethod().getSignature());
-                if (invokedMethodDetails == null) {
-                    invokedMethodDetails = new MethodDetails(invokeExpr.getMethod());
-                    instrumentResult.addLibMethod(invokedMethodDetails);
-                }
+                MethodDetails invokedMethodDetails = getLibMethodDetails(invokeExpr.getMethod());
                 Local invokedIDLocal = localGenerator.generateLocal(IntType.v());
                 getLogStartStmts(invokeExpr.getMethod(), localGenerator, invokedMethodDetails, threadIDLocal, invokedIDLocal, invokedMethodDetails.getType().equals(METHOD_TYPE.MEMBER) && invokeExpr instanceof InstanceInvokeExpr ? ((InstanceInvokeExpr) invokeExpr).getBase() : NullConstant.v(), invokeExpr.getArgs()).forEach(s -> units.insertBefore(s, stmt));
 //
@@ -176,15 +299,14 @@ public class Instrumenter extends BodyTransformer {
             }
 
             // log field access if they were marked
-            if (stmt.containsFieldRef() && stmt.getFieldRef() instanceof InstanceFieldRef && stmt instanceof DefinitionStmt && stmt.hasTag(CUSTOM_TAGS.DAN_FIELD_ACCESS_TO_LOG_TAG.getTag().getName())) {
-                MethodDetails fieldAccessDetails = getFieldAccessingMethodDetails((InstanceFieldRef) stmt.getFieldRef());
+            if (toLogFieldAccess(stmt)) {
+                MethodDetails fieldAccessDetails = getFieldAccessingMethodDetails(stmt.getFieldRef().getField());
                 reverse(getLogFieldAccessStmts((InstanceFieldRef) stmt.getFieldRef(), ((DefinitionStmt) stmt).getLeftOp(), localGenerator, fieldAccessDetails, threadIDLocal)).forEach(s -> units.insertAfter(s, stmt));
             }
 
 //            if(stmt.containsInvokeExpr() && stmt.getInvokeExpr().getMethodRef().getDeclaringClass().getPackageName().startsWith(properties.getPUT()))
 //                addLoggingToUnmockableParamCreation(localGenerator, currentSootMethod, localUses, localDefs, units, threadIDLocal, stmt, stmt.getInvokeExpr());
         }
-        instrumentResult.addMethod(methodDetails);
     }
 
     private void addLoggingToUnmockableParamCreation(LocalGenerator localGenerator, SootMethod currentMethod, SimpleLocalUses localUses, SimpleLocalDefs localDefs, PatchingChain<Unit> units, Value threadIDLocal, Stmt stmt, InvokeExpr expr) {
@@ -195,14 +317,10 @@ public class Instrumenter extends BodyTransformer {
                 .forEach(s -> {
                     if (s.hasTag(CUSTOM_TAGS.PARAM_TRACK_TO_LOG_TAG.name())) return;
                     if (s instanceof AssignStmt && ((AssignStmt) s).getRightOp() instanceof InstanceFieldRef && s.getFieldRef() instanceof InstanceFieldRef)
-                        reverse(getLogFieldAccessStmts((InstanceFieldRef) s.getFieldRef(), ((AssignStmt) s).getLeftOp(), localGenerator, getFieldAccessingMethodDetails((InstanceFieldRef) s.getFieldRef()), threadIDLocal)).forEach(v -> units.insertAfter(v, s));
+                        reverse(getLogFieldAccessStmts((InstanceFieldRef) s.getFieldRef(), ((AssignStmt) s).getLeftOp(), localGenerator, getFieldAccessingMethodDetails(s.getFieldRef().getField()), threadIDLocal)).forEach(v -> units.insertAfter(v, s));
                     else if (s.containsInvokeExpr()) {
                         InvokeExpr invokeExpr = s.getInvokeExpr();
-                        MethodDetails invoked = instrumentResult.findExistingLibMethod(invokeExpr.getMethod().getSignature());
-                        if (invoked == null) {
-                            invoked = new MethodDetails(invokeExpr.getMethod());
-                            instrumentResult.addLibMethod(invoked);
-                        }
+                        MethodDetails invoked = getLibMethodDetails(invokeExpr.getMethod());
                         Local invokedIDLocal = localGenerator.generateLocal(IntType.v());
                         getLogStartStmts(invokeExpr.getMethod(), localGenerator, invoked, threadIDLocal, invokedIDLocal, invoked.getType().equals(METHOD_TYPE.MEMBER) && invokeExpr instanceof InstanceInvokeExpr ? ((InstanceInvokeExpr) invokeExpr).getBase() : NullConstant.v(), invokeExpr.getArgs()).forEach(v -> units.insertBefore(v, s));
 //
@@ -391,15 +509,38 @@ public class Instrumenter extends BodyTransformer {
         return toInsert;
     }
 
-    private MethodDetails getFieldAccessingMethodDetails(InstanceFieldRef fieldRef) {
-        SootClass declaringClass = fieldRef.getField().getDeclaringClass();
-        String fieldName = fieldRef.getField().getName();
+    /**
+     * Details of library methods are created while preparing, in order of signatures. Calls during transformation only look them up
+     */
+    private MethodDetails getLibMethodDetails(SootMethod method) {
+        MethodDetails result = instrumentResult.findExistingLibMethod(method.getSignature());
+        if (result != null) return result;
+        synchronized (instrumentResult) {
+            result = instrumentResult.findExistingLibMethod(method.getSignature());
+            if (result == null) {
+                result = new MethodDetails(method);
+                instrumentResult.addLibMethod(result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Details of field accesses are created while preparing, in order of field signatures. Calls during transformation only look them up
+     */
+    private MethodDetails getFieldAccessingMethodDetails(SootField field) {
+        SootClass declaringClass = field.getDeclaringClass();
+        String fieldName = field.getName();
         MethodDetails result = instrumentResult.findExistingFieldAccessMethod(declaringClass.getName(), fieldName);
-        if (result == null) {
-            result = MethodDetails.getFieldAccessingMethodDetails(declaringClass, fieldName, fieldRef.getType());
-            instrumentResult.addFieldAccessMethod(result);
+        if (result != null) return result;
+        synchronized (instrumentResult) {
+            result = instrumentResult.findExistingFieldAccessMethod(declaringClass.getName(), fieldName);
+            if (result == null) {
+                result = MethodDetails.getFieldAccessingMethodDetails(declaringClass, fieldName, field.getType());
+                instrumentResult.addFieldAccessMethod(result);
+            }
+            return result;
         }
-        return result;
     }
 
     private List<Unit> getLogFieldAccessStmts(InstanceFieldRef fieldRef, Value originalReturnVal, LocalGenerator localGenerator, MethodDetails methodDetails, Value threadIDLocal) {
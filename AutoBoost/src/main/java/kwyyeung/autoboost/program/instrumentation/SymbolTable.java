@@ -0,0 +1,64 @@
+package kwyyeung.autoboost.program.instrumentation;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assign small sequential IDs (symbols) to items, so that they can be stored as IDs and resolved from an array.
+ * Symbols are never removed, as stored IDs have to stay valid.
+ *
+ * @param <T> type of item
+ */
+class SymbolTable<T> {
+    private final Map<T, Integer> itemToSymbolMap = new ConcurrentHashMap<>();
+    private volatile Object[] items = new Object[64];
+    private int size = 0;
+
+    /**
+     * @param item item to look up
+     * @return symbol of the item, a new symbol is assigned if the item is not seen before
+     */
+    int getSymbol(T item) {
+        Integer symbol = itemToSymbolMap.get(item);
+        return symbol == null ? addSymbol(item) : symbol;
+    }
+
+    private synchronized int addSymbol(T item) {
+        Integer symbol = itemToSymbolMap.get(item);
+        if (symbol != null) return symbol;
+        Object[] current = items;
+        if (size == current.length) current = Arrays.copyOf(current, size * 2);
+        current[size] = item;
+        items = current;
+        itemToSymbolMap.put(item, size);
+        return size++;
+    }
+
+    /**
+     * Take the next symbol without an item, e.g. for an item stored before that cannot be resolved anymore, so that later symbols stay the same
+     *
+     * @return symbol taken
+     */
+    synchronized int reserveSymbol() {
+        Object[] current = items;
+        if (size == current.length) current = Arrays.copyOf(current, size * 2);
+        items = current;
+        return size++;
+    }
+
+    /**
+     * @return number of symbols assigned
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    T getItem(int symbol) {
+        Object[] current = items;
+        if (symbol < 0 || symbol >= current.length || current[symbol] == null)
+            throw new IllegalArgumentException("Symbol " + symbol + " does not exist");
+        return (T) current[symbol];
+    }
+}
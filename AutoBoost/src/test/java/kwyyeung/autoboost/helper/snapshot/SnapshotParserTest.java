@@ -0,0 +1,136 @@
+package kwyyeung.autoboost.helper.snapshot;
+
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.program.execution.ExecutionTrace;
+import kwyyeung.autoboost.program.execution.variable.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SnapshotParserTest {
+    private final SnapshotParser parser = new SnapshotParser();
+    private String put;
+
+    @Before
+    public void setUp() {
+        put = Properties.getSingleton().getPUT();
+        Properties.getSingleton().setPUT(SnapshotParserTest.class.getPackage().getName()); // classes of objects nested in snapshots are checked against the PUT
+    }
+
+    @After
+    public void tearDown() {
+        Properties.getSingleton().setPUT(put);
+    }
+
+    private ObjectSnapshot snapshot(Object obj) {
+        return (ObjectSnapshot) parser.getSnapshot(null, obj, LOG_ITEM.CALL_PARAM, 3, new HashMap<>());
+    }
+
+    @Test
+    public void varintsRoundTrip() {
+        SnapshotOutput output = new SnapshotOutput();
+        int[] ints = {0, 1, 127, 128, 300, Integer.MAX_VALUE, -1};
+        long[] signedLongs = {0, -1, 1, -64, 64, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (int value : ints)
+            output.writeVarint(value);
+        for (long value : signedLongs)
+            output.writeSignedVarlong(value);
+        output.writeVarlong(Double.doubleToRawLongBits(-0.5));
+        output.writeString("snapshot é中");
+        SnapshotInput input = new SnapshotInput(output.toSnapshot());
+        for (int value : ints)
+            assertEquals(value, input.readVarint());
+        for (long value : signedLongs)
+            assertEquals(value, input.readSignedVarlong());
+        assertEquals(-0.5, Double.longBitsToDouble(input.readVarlong()), 0);
+        assertEquals("snapshot é中", input.readString());
+    }
+
+    @Test
+    public void objectFieldsDecoded() {
+        Point point = new Point(-3, "origin");
+        ObjectSnapshot snapshot = snapshot(point);
+        assertEquals(snapshot, snapshot(new Point(-3, "origin"))); // same content, same bytes
+        assertNotEquals(snapshot, snapshot(new Point(4, "origin")));
+
+        ObjVarDetails var = new ObjVarDetails(ExecutionTrace.getNewVarID(), Point.class, snapshot);
+        Map<Map.Entry<String, String>, VarDetail> fields = SnapshotParser.toContentMap(var, snapshot);
+        VarDetail x = fields.get(new AbstractMap.SimpleEntry<>(Point.class.getName(), "x"));
+        VarDetail name = fields.get(new AbstractMap.SimpleEntry<>(Point.class.getName(), "name"));
+        assertEquals(Integer.valueOf(-3), x.getValue());
+        assertTrue(name instanceof StringVarDetails);
+        assertEquals("origin", name.getValue());
+        assertSame(var, fields.get(new AbstractMap.SimpleEntry<>(Point.class.getName(), "self"))); // back-reference to the root
+    }
+
+    @Test
+    public void componentsAndEntriesDecoded() {
+        ObjectSnapshot array = snapshot(new int[]{7, 8});
+        ArrVarDetails arrVar = new ArrVarDetails(ExecutionTrace.getNewVarID(), int[].class, null, array);
+        List<Integer> components = SnapshotParser.toVarDetailIDList(arrVar, array);
+        assertEquals(2, components.size());
+        assertEquals(Integer.valueOf(7), ExecutionTrace.getSingleton().getVarDetailByID(components.get(0)).getValue());
+        assertEquals(Integer.valueOf(8), ExecutionTrace.getSingleton().getVarDetailByID(components.get(1)).getValue());
+
+        Map<String, Long> map = new HashMap<>();
+        map.put("key", 9L);
+        ObjectSnapshot mapSnapshot = snapshot(map);
+        MapVarDetails mapVar = new MapVarDetails(ExecutionTrace.getNewVarID(), HashMap.class, null, mapSnapshot);
+        Set<Map.Entry<Integer, Integer>> pairs = SnapshotParser.toVarDetailIDMap(mapVar, mapSnapshot);
+        assertEquals(1, pairs.size());
+        Map.Entry<Integer, Integer> pair = pairs.iterator().next();
+        assertEquals("key", ExecutionTrace.getSingleton().getVarDetailByID(pair.getKey()).getValue());
+        assertEquals(Long.valueOf(9), ExecutionTrace.getSingleton().getVarDetailByID(pair.getValue()).getValue());
+    }
+
+    @Test
+    public void remappedSnapshotKeepsContent() {
+        Object[] values = {new Point(2, "b"), new int[]{1}, new ArrayList<>(Collections.singletonList("c"))};
+        for (Object value : values) {
+            ObjectSnapshot snapshot = snapshot(value);
+            assertEquals(snapshot, SnapshotParser.remap(snapshot, s -> s, s -> s, id -> id));
+        }
+
+        // symbols of another JVM, shifted by one, are mapped back to those of this JVM
+        ObjectSnapshot snapshot = snapshot(new Point(2, "b"));
+        ObjectSnapshot shifted = SnapshotParser.remap(snapshot, s -> s + 1, s -> s + 1, id -> id);
+        assertNotEquals(snapshot, shifted);
+        assertEquals(snapshot, SnapshotParser.remap(shifted, s -> s - 1, s -> s - 1, id -> id));
+
+        // IDs of VarDetails are renumbered, e.g. when merged into another trace
+        Holder holder = new Holder(new Point(5, "e"));
+        ObjectSnapshot holderSnapshot = snapshot(holder);
+        ObjVarDetails holderVar = new ObjVarDetails(ExecutionTrace.getNewVarID(), Holder.class, holderSnapshot);
+        VarDetail point = SnapshotParser.toContentMap(holderVar, holderSnapshot).get(new AbstractMap.SimpleEntry<>(Holder.class.getName(), "point"));
+        assertTrue(point instanceof ObjVarDetails);
+        int renumbered = ExecutionTrace.getNewVarID();
+        ObjectSnapshot remapped = SnapshotParser.remap(holderSnapshot, s -> s, s -> s, id -> id == point.getID() ? renumbered : id);
+        assertTrue(SnapshotParser.toXML(remapped).contains("VAR_ID=\"" + renumbered + "\""));
+        assertEquals(SnapshotParser.remap(holderSnapshot, s -> s, s -> s, id -> id == point.getID() ? renumbered : id), remapped);
+        assertEquals(holderSnapshot, SnapshotParser.remap(remapped, s -> s, s -> s, id -> id == renumbered ? point.getID() : id));
+    }
+
+    static class Point {
+        private final int x;
+        private final String name;
+        private final Point self = this;
+
+        Point(int x, String name) {
+            this.x = x;
+            this.name = name;
+        }
+    }
+
+    static class Holder {
+        private final Point point;
+
+        Holder(Point point) {
+            this.point = point;
+        }
+    }
+}
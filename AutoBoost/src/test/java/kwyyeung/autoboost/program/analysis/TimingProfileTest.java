@@ -0,0 +1,142 @@
+package kwyyeung.autoboost.program.analysis;
+
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.helper.PUTExecutor;
+import kwyyeung.autoboost.helper.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import soot.IntType;
+import soot.Modifier;
+import soot.SootClass;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TimingProfileTest {
+    private static final long MS = 1_000_000L;
+    private final Properties properties = Properties.getSingleton();
+    private final TimingProfile profile = new TimingProfile();
+    private MethodDetails method;
+    private int floor, ceiling, factor;
+
+    @Before
+    public void setUp() {
+        floor = properties.getPutTimeoutFloor();
+        ceiling = properties.getPutTimeoutCeiling();
+        factor = properties.getPutTimeoutFactor();
+        properties.setPutTimeoutFloor(100);
+        properties.setPutTimeoutCeiling(5000);
+        properties.setPutTimeoutFactor(10);
+        method = new MethodDetails(Collections.emptyList(), 0, "call", IntType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("Fixture", Modifier.PUBLIC),
+                "<Fixture: int call()>", "int call()", false);
+    }
+
+    @After
+    public void tearDown() {
+        properties.setPutTimeoutFloor(floor);
+        properties.setPutTimeoutCeiling(ceiling);
+        properties.setPutTimeoutFactor(factor);
+    }
+
+    /**
+     * @return the only bucket counting a call of the time provided
+     */
+    private static int bucketOf(long nanos) {
+        TimingProfile single = new TimingProfile();
+        single.record(nanos);
+        for (int i = 0; i < TimingProfile.BUCKETS; i++)
+            if (single.getCount(i) > 0) return i;
+        throw new AssertionError("nothing counted for " + nanos);
+    }
+
+    private static long upperBoundOf(long nanos) {
+        TimingProfile single = new TimingProfile();
+        single.record(nanos);
+        return single.getPercentile(1);
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        assertEquals(0, bucketOf(0));
+        assertEquals(0, bucketOf(1));
+        assertEquals(1, upperBoundOf(1));
+        assertEquals(2, bucketOf(2));
+        assertEquals(3, upperBoundOf(2));
+        assertEquals(3, bucketOf(3)); // 1.5 * 2^1
+        assertEquals(4, upperBoundOf(3));
+        for (int k = 2; k < 42; k++) {
+            long power = 1L << k, half = power / 2;
+            assertEquals(2 * k, bucketOf(power));
+            assertEquals(power + half, upperBoundOf(power));
+            assertEquals(2 * k, bucketOf(power + half - 1));
+            assertEquals(2 * k + 1, bucketOf(power + half));
+            assertEquals(2 * power, upperBoundOf(power + half));
+            assertEquals(2 * k + 1, bucketOf(2 * power - 1));
+        }
+    }
+
+    @Test
+    public void latenciesBeyondLastBucketCounted() {
+        assertEquals(TimingProfile.BUCKETS - 1, bucketOf(1L << 42));
+        assertEquals(TimingProfile.BUCKETS - 1, bucketOf(Long.MAX_VALUE));
+        assertEquals(1L << 42, upperBoundOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentileRankRoundedUp() {
+        profile.record(2);
+        profile.record(2);
+        profile.record(2);
+        profile.record(1000);
+        assertEquals(4, profile.getSampleCount());
+        assertEquals(3, profile.getPercentile(0.5));
+        assertEquals(3, profile.getPercentile(0.75)); // rank 3
+        assertEquals(1024, profile.getPercentile(0.76)); // rank 3.04, rounded up to 4
+        assertEquals(1024, profile.getPercentile(1));
+    }
+
+    @Test
+    public void emptyProfileHasNoPercentile() {
+        assertEquals(-1, profile.getPercentile(0.99));
+        assertEquals(Duration.ofMillis(5000), PUTExecutor.getSingleton().getBudget(method));
+    }
+
+    @Test
+    public void budgetClampedToFloorAndCeiling() {
+        method.getTimingProfile().record(1000);
+        assertEquals(Duration.ofMillis(100), PUTExecutor.getSingleton().getBudget(method));
+        method.getTimingProfile().addCount(2 * 30, 1000); // 2^30 ns, 10 times is beyond the ceiling
+        assertEquals(Duration.ofMillis(5000), PUTExecutor.getSingleton().getBudget(method));
+    }
+
+    @Test
+    public void budgetFactorOfPercentile() {
+        method.getTimingProfile().record(1L << 28);
+        assertEquals(Duration.ofNanos(10 * ((1L << 28) + (1L << 27))), PUTExecutor.getSingleton().getBudget(method));
+    }
+
+    @Test
+    public void budgetNotOverflowing() {
+        properties.setPutTimeoutCeiling(Integer.MAX_VALUE);
+        properties.setPutTimeoutFactor(Integer.MAX_VALUE);
+        method.getTimingProfile().record(1L << 41); // times the factor is beyond Long.MAX_VALUE
+        assertEquals(Duration.ofMillis(Integer.MAX_VALUE), PUTExecutor.getSingleton().getBudget(method));
+    }
+
+    @Test
+    public void timeoutGrowsNextBudget() {
+        TimingProfile timing = method.getTimingProfile();
+        timing.record(1L << 24);
+        Duration budget = PUTExecutor.getSingleton().getBudget(method);
+        assertTrue(budget.toNanos() > 100 * MS);
+        timing.recordTimeout(budget.toNanos());
+        assertEquals(1, timing.getTimeoutsInRow());
+        assertTrue(PUTExecutor.getSingleton().getBudget(method).compareTo(budget) > 0);
+        timing.recordCompleted(1L << 24);
+        assertEquals(0, timing.getTimeoutsInRow());
+    }
+}
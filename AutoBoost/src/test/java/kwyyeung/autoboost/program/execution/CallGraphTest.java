@@ -0,0 +1,65 @@
+package kwyyeung.autoboost.program.execution;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CallGraphTest {
+    private final CallGraph graph = new CallGraph();
+
+    @Test
+    public void childrenKeptInCallOrder() {
+        graph.addEdge(1, 3, 1);
+        graph.addEdge(1, 2, 0); // logged after a later call
+        graph.addEdge(1, 4, 1);
+        assertArrayEquals(new int[]{2, 3, 4}, graph.getChildIDs(1));
+        long[] edges = graph.getOutEdges(1);
+        assertEquals(0, CallGraph.orderOf(edges[0]));
+        assertEquals(2, CallGraph.childOf(edges[0]));
+        assertTrue(graph.hasEdges(4));
+        assertEquals(5, graph.getVertexLimit());
+    }
+
+    @Test
+    public void verticesAcrossPages() {
+        int far = (1 << 14) * 3 + 5;
+        graph.addEdge(far, 1, 0);
+        assertTrue(graph.containsVertex(far));
+        assertFalse(graph.containsVertex(far - 1));
+        assertFalse(graph.containsVertex(-1));
+        assertArrayEquals(new int[]{1}, graph.getChildIDs(far));
+        assertEquals(far + 1, graph.getVertexLimit());
+    }
+
+    @Test
+    public void mergedVertexEdgesMoved() {
+        // 1 calls 2 then 3, 2 calls 4, 5 calls 3
+        graph.addEdge(1, 2, 0);
+        graph.addEdge(1, 3, 1);
+        graph.addEdge(2, 4, 0);
+        graph.addEdge(5, 3, 0);
+        graph.addEdge(5, 6, 2);
+        graph.mergeVertex(2, 5);
+        assertFalse(graph.containsVertex(2));
+        assertArrayEquals(new int[]{5, 3}, graph.getChildIDs(1));
+        assertArrayEquals(new int[]{3, 4, 6}, graph.getChildIDs(5)); // merged in call order, existing edges first for the same order
+        assertTrue(graph.hasEdges(4));
+    }
+
+    @Test
+    public void edgesBetweenMergedVerticesDropped() {
+        graph.addEdge(1, 2, 0);
+        graph.addEdge(2, 3, 0);
+        graph.mergeVertex(2, 1);
+        assertArrayEquals(new int[]{3}, graph.getChildIDs(1));
+        graph.addVertex(7);
+        assertFalse(graph.hasEdges(7));
+        graph.mergeVertex(7, 1);
+        assertArrayEquals(new int[]{3}, graph.getChildIDs(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVertexRejected() {
+        graph.getChildIDs(8);
+    }
+}
@@ -0,0 +1,62 @@
+package kwyyeung.autoboost.program.execution;
+
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import org.junit.Before;
+import org.junit.Test;
+import soot.VoidType;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CallTreeSummaryTest {
+    private ExecutionTrace trace;
+    private MethodDetails method;
+
+    @Before
+    public void setUp() {
+        trace = new ExecutionTrace();
+        method = new MethodDetails(Collections.emptyList(), 0, "run", VoidType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, null, "<Foo: void run()>", "void run()", false);
+        // 1 calls 2, 2 calls 3
+        for (int i = 1; i <= 3; i++)
+            trace.addMethodExecution(execution(i));
+        trace.addMethodRelationship(1, 2, 0);
+        trace.addMethodRelationship(2, 3, 0);
+        trace.seal();
+    }
+
+    private MethodExecution execution(int ID) {
+        MethodExecution execution = new MethodExecution(ID, method);
+        trace.getExecutionRegistry().add(execution, ExecutionRegistry.FINISHED);
+        return execution;
+    }
+
+    @Test
+    public void summaryKeptWhenCallRunAgainIsMergedIntoDuplicate() {
+        // a top-level call run again for test generation, without calls logged under it
+        trace.addMethodExecution(execution(4));
+        trace.changeVertex(4, 2);
+        assertTrue(trace.isSummarized());
+        assertArrayEquals(new int[]{3}, trace.getChildIDs(2));
+    }
+
+    @Test
+    public void summaryDroppedWhenMergedExecutionBringsCalls() {
+        trace.addMethodExecution(execution(4));
+        trace.addMethodExecution(execution(5));
+        trace.addMethodRelationship(4, 5, 0);
+        assertTrue(trace.isSummarized()); // 4 is not summarized
+        trace.changeVertex(4, 3);
+        assertFalse(trace.isSummarized());
+        assertArrayEquals(new int[]{5}, trace.getChildIDs(3));
+    }
+
+    @Test
+    public void summaryDroppedWhenSummarizedExecutionMakesNewCall() {
+        trace.addMethodExecution(execution(4));
+        trace.addMethodRelationship(3, 4, 0);
+        assertFalse(trace.isSummarized());
+    }
+}
@@ -0,0 +1,52 @@
+package kwyyeung.autoboost.program.execution;
+
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import org.junit.Test;
+import soot.VoidType;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ExecutionRegistryTest {
+    private final ExecutionRegistry registry = new ExecutionRegistry();
+    private final MethodDetails method = new MethodDetails(Collections.emptyList(), 0, "run", VoidType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, null, "<Foo: void run()>", "void run()", false);
+
+    @Test
+    public void executionKeptUntilNoFlagLeft() {
+        MethodExecution execution = new MethodExecution(3, method);
+        registry.add(execution, ExecutionRegistry.IN_FLIGHT);
+        registry.add(execution, ExecutionRegistry.FINISHED);
+        registry.remove(execution, ExecutionRegistry.IN_FLIGHT);
+        assertSame(execution, registry.get(3));
+        registry.remove(execution, ExecutionRegistry.CONSTRUCTING); // not held, nothing changes
+        assertSame(execution, registry.get(3));
+        registry.remove(execution, ExecutionRegistry.FINISHED);
+        assertNull(registry.get(3));
+    }
+
+    @Test
+    public void flagRemovedFromAll() {
+        MethodExecution finished = new MethodExecution(1, method), constructing = new MethodExecution((1 << 14) + 1, method);
+        registry.add(finished, ExecutionRegistry.FINISHED);
+        registry.add(constructing, ExecutionRegistry.FINISHED);
+        registry.add(constructing, ExecutionRegistry.CONSTRUCTING);
+        registry.removeAll(ExecutionRegistry.FINISHED);
+        assertNull(registry.get(1));
+        assertSame(constructing, registry.get((1 << 14) + 1));
+    }
+
+    @Test
+    public void unknownIDsNotFound() {
+        assertNull(registry.get(-1));
+        assertNull(registry.get(5));
+        assertNull(registry.get(1 << 20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIDRejected() {
+        registry.add(new MethodExecution(-1, method), ExecutionRegistry.FINISHED);
+    }
+}
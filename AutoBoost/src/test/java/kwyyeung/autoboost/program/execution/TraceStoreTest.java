@@ -0,0 +1,176 @@
+package kwyyeung.autoboost.program.execution;
+
+import kwyyeung.autoboost.entity.ACCESS;
+import kwyyeung.autoboost.entity.LOG_ITEM;
+import kwyyeung.autoboost.entity.METHOD_TYPE;
+import kwyyeung.autoboost.helper.Properties;
+import kwyyeung.autoboost.helper.snapshot.ObjectSnapshot;
+import kwyyeung.autoboost.helper.snapshot.SnapshotParser;
+import kwyyeung.autoboost.program.analysis.MethodDetails;
+import kwyyeung.autoboost.program.execution.variable.*;
+import kwyyeung.autoboost.program.instrumentation.InstrumentResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import soot.IntType;
+import soot.Modifier;
+import soot.SootClass;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TraceStoreTest {
+    private static int nextValue = 1000; // vars of the singleton trace are kept across tests, hence each test has values of its own
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final ExecutionTrace trace = ExecutionTrace.getSingleton();
+    private MethodDetails method;
+    private VarDetail first, second, mock, text, builder;
+    private MethodExecution parent, mockChild, plainChild;
+
+    @Before
+    public void setUp() {
+        trace.clear();
+        method = new MethodDetails(Arrays.asList(IntType.v(), IntType.v()), 2, "call", IntType.v(), ACCESS.PUBLIC, METHOD_TYPE.STATIC, new SootClass("Fixture", Modifier.PUBLIC),
+                "<Fixture: int call(int,int)>", "int call(int,int)", false);
+        InstrumentResult.getSingleton().addMethod(method);
+        int value = nextValue++;
+        first = restoreVar(new PrimitiveVarDetails(ExecutionTrace.getNewVarID(), int.class, value), value);
+        second = restoreVar(new PrimitiveVarDetails(ExecutionTrace.getNewVarID(), int.class, -value), -value);
+        mock = restoreVar(new MockVarDetails(ExecutionTrace.getNewVarID(), Runnable.class, null), null);
+        text = restoreVar(new StringVarDetails(ExecutionTrace.getNewVarID(), "text" + value), "text" + value);
+        builder = restoreVar(new StringBVarDetails(ExecutionTrace.getNewVarID(), StringBuilder.class, text.getID()), text.getID());
+        // parent calls mockChild then plainChild
+        parent = restoreExecution(first, second);
+        parent.setReturnValId(first.getID());
+        mockChild = restoreExecution(first, mock);
+        plainChild = restoreExecution(second, second);
+        trace.addMethodRelationship(parent.getID(), mockChild.getID(), 0);
+        trace.addMethodRelationship(parent.getID(), plainChild.getID(), 1);
+    }
+
+    private VarDetail restoreVar(VarDetail varDetail, Object checkVal) {
+        trace.restoreVarDetail(varDetail, checkVal);
+        return varDetail;
+    }
+
+    private MethodExecution restoreExecution(VarDetail... params) {
+        MethodExecution execution = new MethodExecution(ExecutionLogger.getNewExeID(), method);
+        for (VarDetail param : params)
+            execution.addParam(param.getID());
+        trace.restoreMethodExecution(execution, false);
+        return execution;
+    }
+
+    private File write() throws IOException {
+        File dir = folder.newFolder();
+        TraceStore.write(dir);
+        trace.clear();
+        return dir;
+    }
+
+    /**
+     * @return the only execution in the trace calling others, i.e. parent merged
+     */
+    private MethodExecution findMergedParent() {
+        List<MethodExecution> merged = trace.getAllMethodExecs().values().stream().filter(e -> trace.getChildIDs(e.getID()).length > 0).collect(Collectors.toList());
+        assertEquals(1, merged.size());
+        return merged.get(0);
+    }
+
+    @Test
+    public void mergedExecutionsRenumbered() throws IOException {
+        File dir = write();
+        TraceStore.merge(dir);
+        assertEquals(3, trace.getAllMethodExecs().size());
+        MethodExecution mergedParent = findMergedParent();
+        Set<Integer> originalIDs = new HashSet<>(Arrays.asList(parent.getID(), mockChild.getID(), plainChild.getID()));
+        for (MethodExecution execution : trace.getAllMethodExecs().values()) {
+            assertFalse(originalIDs.contains(execution.getID()));
+            assertSame(method, execution.getMethodInvoked());
+        }
+        // children keep their call order under the renumbered parent
+        int[] children = trace.getChildIDs(mergedParent.getID());
+        assertEquals(2, children.length);
+        MethodExecution mergedMockChild = trace.getMethodExecutionByID(children[0]);
+        MethodExecution mergedPlainChild = trace.getMethodExecutionByID(children[1]);
+        assertTrue(trace.getVarDetailByID(mergedMockChild.getParams().get(1)) instanceof MockVarDetails);
+        assertEquals(Arrays.asList(second.getID(), second.getID()), mergedPlainChild.getParams());
+    }
+
+    @Test
+    public void mergedVarsOfSameValueShared() throws IOException {
+        long builders = trace.getAllVars().values().stream().filter(v -> v instanceof StringBVarDetails).count();
+        File dir = write();
+        TraceStore.merge(dir);
+        MethodExecution mergedParent = findMergedParent();
+        assertEquals(Arrays.asList(first.getID(), second.getID()), mergedParent.getParams());
+        assertEquals(first.getID(), mergedParent.getReturnValId());
+        // string builders refer to the string var in the trace, hence are of the same value as the existing one
+        assertEquals(builders, trace.getAllVars().values().stream().filter(v -> v instanceof StringBVarDetails).count());
+        assertEquals(text.getValue(), builder.getValue());
+    }
+
+    @Test
+    public void mergedMocksGivenNewVars() throws IOException {
+        File dir = write();
+        TraceStore.merge(dir);
+        MethodExecution mergedMockChild = trace.getMethodExecutionByID(trace.getChildIDs(findMergedParent().getID())[0]);
+        assertEquals(first.getID(), (int) mergedMockChild.getParams().get(0));
+        int mergedMock = mergedMockChild.getParams().get(1);
+        assertNotEquals(mock.getID(), mergedMock);
+        VarDetail mergedMockVar = trace.getVarDetailByID(mergedMock);
+        assertTrue(mergedMockVar instanceof MockVarDetails);
+        assertEquals(Runnable.class, mergedMockVar.getType());
+    }
+
+    @Test
+    public void executionsOfSameContentMergedAgain() throws IOException {
+        File dir = write();
+        TraceStore.merge(dir);
+        TraceStore.merge(dir);
+        assertEquals(4, trace.getAllMethodExecs().size()); // only the call with a mock, which is never of the same value, is added again
+    }
+
+    @Test
+    public void snapshotWrittenAndReadBack() throws IOException {
+        String put = Properties.getSingleton().getPUT();
+        Properties.getSingleton().setPUT(TraceStoreTest.class.getPackage().getName()); // classes of objects nested in snapshots are checked against the PUT
+        ObjectSnapshot snapshot;
+        try {
+            snapshot = (ObjectSnapshot) new SnapshotParser().getSnapshot(null, new Point(1, "a"), LOG_ITEM.CALL_PARAM, 3, new HashMap<>());
+        } finally {
+            Properties.getSingleton().setPUT(put);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes));
+        ObjectSnapshot read = ObjectSnapshot.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals(snapshot, read);
+        assertEquals(snapshot.hash64(), read.hash64());
+        assertEquals(snapshot.size(), read.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void fileOfOtherFormatRejected() throws IOException {
+        File dir = write();
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "symbols.bin"), "rw")) {
+            file.writeInt(0);
+        }
+        TraceStore.merge(dir);
+    }
+
+    static class Point {
+        private final int x;
+        private final String name;
+
+        Point(int x, String name) {
+            this.x = x;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package kwyyeung.autoboost.program.generation;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ObjectGraphCopierTest {
+    @Test
+    public void graphCopiedDeeply() {
+        Node leaf = new Node("leaf", null);
+        Node root = new Node("root", leaf);
+        root.children.add(leaf);
+        root.self = root;
+        Node copy = (Node) ObjectGraphCopier.copy(root);
+        assertNotSame(root, copy);
+        assertNotSame(leaf, copy.next);
+        assertEquals("leaf", copy.next.name);
+        assertSame(copy, copy.self); // cycles kept
+        assertSame(copy.next, copy.children.get(0)); // sharing kept
+        assertNotSame(root.children, copy.children);
+        copy.next.name = "changed";
+        assertEquals("leaf", leaf.name);
+    }
+
+    @Test
+    public void hashedContainersRebuiltAfterElements() {
+        Key key = new Key(1);
+        Map<Key, Set<Key>> map = new HashMap<>();
+        map.put(key, new HashSet<>(Collections.singleton(key)));
+        @SuppressWarnings("unchecked")
+        Map<Key, Set<Key>> copy = (Map<Key, Set<Key>>) ObjectGraphCopier.copy(map);
+        Key copiedKey = copy.keySet().iterator().next();
+        assertNotSame(key, copiedKey);
+        assertTrue(copy.containsKey(new Key(1)));
+        assertTrue(copy.get(copiedKey).contains(copiedKey));
+    }
+
+    @Test
+    public void sharedValuesNotCopied() {
+        Node node = new Node("shared", Node.DEFAULT);
+        Node copy = (Node) ObjectGraphCopier.copy(node);
+        assertSame(Node.DEFAULT, copy.next); // held by a static field
+        assertSame(node.name, copy.name);
+        int[] numbers = {1, 2};
+        int[] copiedNumbers = (int[]) ObjectGraphCopier.copy(numbers);
+        assertNotSame(numbers, copiedNumbers);
+        assertArrayEquals(numbers, copiedNumbers);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mocksNotCopied() {
+        ObjectGraphCopier.copy(new Node("mock", Mockito.mock(Node.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherJDKObjectsNotCopied() {
+        ObjectGraphCopier.copy(new Thread());
+    }
+
+    static class Node {
+        static final Node DEFAULT = new Node("default", null);
+        private final List<Node> children = new ArrayList<>();
+        private String name;
+        private final Node next;
+        private Node self;
+
+        Node(String name, Node next) {
+            this.name = name;
+            this.next = next;
+        }
+    }
+
+    static class Key {
+        private final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, System.identityHashCode(Key.class));
+        }
+    }
+}